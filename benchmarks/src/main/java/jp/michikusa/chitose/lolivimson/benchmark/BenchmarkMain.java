@@ -0,0 +1,30 @@
+package jp.michikusa.chitose.lolivimson.benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs benchmarks with the GC profiler, so allocation rates are reported with throughput and latency percentiles.
+ * Accepts the same arguments as the JMH command line, e.g. {@code -p corpus=NUMERIC_LIST DecodeBenchmark}.
+ */
+public class BenchmarkMain
+{
+    public static void main(String[] args)
+        throws Exception
+    {
+        final Options options= new OptionsBuilder()
+            .parent(new CommandLineOptions(args))
+            .addProfiler(GCProfiler.class)
+            .build();
+
+        new Runner(options).run();
+    }
+
+    private BenchmarkMain()
+    {
+        throw new AssertionError();
+    }
+}
@@ -0,0 +1,179 @@
+package jp.michikusa.chitose.lolivimson.benchmark;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Realistic documents which benchmarks run over.
+ * Every corpus is generated from a fixed seed, so runs are comparable.
+ */
+public enum Corpus
+{
+    /**
+     * Dictionaries nested 200 levels deep, with a few scalars at each level.
+     */
+    DEEP_NESTING
+    {
+        @Override
+        Object create(Random random)
+        {
+            Map<String, Object> inner= new LinkedHashMap<String, Object>();
+            for(int depth= 0; depth < 200; ++depth)
+            {
+                final Map<String, Object> outer= new LinkedHashMap<String, Object>();
+                outer.put("depth", depth);
+                outer.put("name", "level" + depth);
+                outer.put("items", list(random.nextInt(100), random.nextInt(100)));
+                outer.put("child", inner);
+                inner= outer;
+            }
+            return inner;
+        }
+    },
+
+    /**
+     * A single dictionary with 10,000 keys.
+     */
+    WIDE_DICTIONARY
+    {
+        @Override
+        Object create(Random random)
+        {
+            final Map<String, Object> m= new LinkedHashMap<String, Object>();
+            for(int i= 0; i < 10000; ++i)
+            {
+                m.put("key_" + Integer.toHexString(random.nextInt()), (i % 2 == 0) ? (Object)i : (Object)("value" + i));
+            }
+            return m;
+        }
+    },
+
+    /**
+     * 20,000 coordinates, pairs of line numbers and floats.
+     */
+    NUMERIC_LIST
+    {
+        @Override
+        Object create(Random random)
+        {
+            final List<Object> l= new ArrayList<Object>();
+            for(int i= 0; i < 20000; ++i)
+            {
+                l.add(list(random.nextInt(100000), random.nextInt(200), random.nextDouble() * 1000, (long)random.nextInt() << 16));
+            }
+            return l;
+        }
+    },
+
+    /**
+     * 16 strings of 64k characters, with quotes and newlines.
+     */
+    LONG_STRINGS
+    {
+        @Override
+        Object create(Random random)
+        {
+            final List<Object> l= new ArrayList<Object>();
+            for(int i= 0; i < 16; ++i)
+            {
+                final StringBuilder s= new StringBuilder();
+                while(s.length() < 65536)
+                {
+                    s.append(ASCII_WORDS[random.nextInt(ASCII_WORDS.length)]).append(' ');
+                    if(random.nextInt(40) == 0)
+                    {
+                        s.append("it's\n");
+                    }
+                }
+                l.add(s.toString());
+            }
+            return l;
+        }
+    },
+
+    /**
+     * 2,000 dictionaries of Japanese text.
+     */
+    NON_ASCII
+    {
+        @Override
+        Object create(Random random)
+        {
+            final List<Object> l= new ArrayList<Object>();
+            for(int i= 0; i < 2000; ++i)
+            {
+                final StringBuilder s= new StringBuilder();
+                for(int j= 0; j < 8; ++j)
+                {
+                    s.append(JAPANESE_WORDS[random.nextInt(JAPANESE_WORDS.length)]);
+                }
+
+                final Map<String, Object> m= new LinkedHashMap<String, Object>();
+                m.put("text", s.toString());
+                m.put("lnum", i);
+                l.add(m);
+            }
+            return l;
+        }
+    },
+
+    /**
+     * 5,000 completion items, as sent to complete() in vim.
+     */
+    COMPLETION_ITEMS
+    {
+        @Override
+        Object create(Random random)
+        {
+            final List<Object> l= new ArrayList<Object>();
+            for(int i= 0; i < 5000; ++i)
+            {
+                final String word= ASCII_WORDS[random.nextInt(ASCII_WORDS.length)] + i;
+                final Map<String, Object> m= new LinkedHashMap<String, Object>();
+                m.put("word", word);
+                m.put("abbr", word + "()");
+                m.put("menu", "[java]");
+                m.put("info", "public static void " + word + "(int index, String name)");
+                m.put("kind", "f");
+                m.put("icase", 1);
+                m.put("dup", 0);
+                l.add(m);
+            }
+            return l;
+        }
+    },
+    ;
+
+    /**
+     * Creates a fresh copy of this corpus.
+     */
+    public Object create()
+    {
+        return this.create(new Random(SEED));
+    }
+
+    abstract Object create(Random random);
+
+    private static List<Object> list(Object... elements)
+    {
+        final List<Object> l= new ArrayList<Object>(elements.length);
+        for(final Object e : elements)
+        {
+            l.add(e);
+        }
+        return l;
+    }
+
+    private static final long SEED= 20131221L;
+
+    private static final String[] ASCII_WORDS= {
+        "get", "set", "value", "index", "buffer", "window", "tabpage", "line", "column", "syntax",
+    };
+
+    private static final String[] JAPANESE_WORDS= {
+        "吾輩は", "猫である。", "名前は", "まだ無い。", "どこで", "生れたか", "とんと", "見当が", "つかぬ。",
+    };
+}
@@ -0,0 +1,56 @@
+package jp.michikusa.chitose.lolivimson.benchmark;
+
+import java.nio.charset.Charset;
+import java.util.List;
+import java.util.Map;
+
+import jp.michikusa.chitose.lolivimson.Vimson;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * A corpus and its encoded forms, prepared once per trial.
+ */
+@State(Scope.Benchmark)
+public class CorpusState
+{
+    @Param
+    public Corpus corpus;
+
+    public Object value;
+
+    public String vimson;
+
+    public char[] vimsonChars;
+
+    public byte[] vimsonUtf8;
+
+    public String json;
+
+    @Setup(Level.Trial)
+    public void setUp()
+    {
+        this.value= this.corpus.create();
+        this.vimson= encode(this.value).toString();
+        this.vimsonChars= this.vimson.toCharArray();
+        this.vimsonUtf8= this.vimson.getBytes(Charset.forName("UTF-8"));
+        this.json= JsonBaseline.encode(this.value);
+    }
+
+    @SuppressWarnings("unchecked")
+    static CharSequence encode(Object value)
+    {
+        if(value instanceof Map)
+        {
+            return Vimson.encode((Map<? extends CharSequence, ?>)value);
+        }
+        else
+        {
+            return Vimson.encode((List<?>)value);
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package jp.michikusa.chitose.lolivimson.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import jp.michikusa.chitose.lolivimson.Vimson;
+import jp.michikusa.chitose.lolivimson.core.VimsonParser;
+import jp.michikusa.chitose.lolivimson.core.VimsonToken;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * {@link Vimson#decode} and {@link VimsonParser} over each corpus.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations= 3, time= 1)
+@Measurement(iterations= 5, time= 1)
+@Fork(1)
+public class DecodeBenchmark
+{
+    @Benchmark
+    public Object vimsonDecode(CorpusState state)
+    {
+        return Vimson.decode(Object.class, state.vimson);
+    }
+
+    @Benchmark
+    public Object parseCharArray(CorpusState state)
+        throws IOException
+    {
+        return new VimsonParser(state.vimsonChars).parse(Object.class);
+    }
+
+    @Benchmark
+    public Object parseUtf8Stream(CorpusState state)
+        throws IOException
+    {
+        return new VimsonParser(new ByteArrayInputStream(state.vimsonUtf8)).parse(Object.class);
+    }
+
+    @Benchmark
+    public void streamTokens(CorpusState state, Blackhole bh)
+        throws IOException
+    {
+        final VimsonParser parser= new VimsonParser(state.vimsonChars);
+        VimsonToken token;
+
+        while((token= parser.nextToken()) != null)
+        {
+            switch(token)
+            {
+            case FIELD_NAME:
+            case VALUE_STRING:
+                bh.consume(parser.getText());
+                break;
+            case VALUE_NUMBER:
+            case VALUE_FLOAT:
+                bh.consume(parser.getNumberValue());
+                break;
+            default:
+                bh.consume(token);
+                break;
+            }
+        }
+    }
+}
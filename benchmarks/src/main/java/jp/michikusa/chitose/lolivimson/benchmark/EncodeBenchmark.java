@@ -0,0 +1,34 @@
+package jp.michikusa.chitose.lolivimson.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * {@link jp.michikusa.chitose.lolivimson.Vimson#encode} over each corpus, and the same data as JSON.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations= 3, time= 1)
+@Measurement(iterations= 5, time= 1)
+@Fork(1)
+public class EncodeBenchmark
+{
+    @Benchmark
+    public CharSequence vimsonEncode(CorpusState state)
+    {
+        return CorpusState.encode(state.value);
+    }
+
+    @Benchmark
+    public String jsonEncodeBaseline(CorpusState state)
+    {
+        return JsonBaseline.encode(state.value);
+    }
+}
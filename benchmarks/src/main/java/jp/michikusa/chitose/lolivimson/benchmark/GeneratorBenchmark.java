@@ -0,0 +1,120 @@
+package jp.michikusa.chitose.lolivimson.benchmark;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.concurrent.TimeUnit;
+
+import jp.michikusa.chitose.lolivimson.core.VimsonGenerator;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Raw {@link VimsonGenerator} write methods, into a stream which discards its input.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations= 3, time= 1)
+@Measurement(iterations= 5, time= 1)
+@Fork(1)
+@State(Scope.Thread)
+public class GeneratorBenchmark
+{
+    @Setup
+    public void setUp(Blackhole bh)
+    {
+        this.out= new BlackholeOutputStream(bh);
+    }
+
+    @Benchmark
+    public void writeNumbers()
+        throws IOException
+    {
+        final VimsonGenerator g= new VimsonGenerator(this.out, UTF_8);
+
+        g.writeStartList();
+        for(int i= 0; i < ELEMENTS; ++i)
+        {
+            g.writeNumber(i * 31);
+            g.writeFloat(i * 0.25);
+        }
+        g.writeEndList();
+        g.flush();
+    }
+
+    @Benchmark
+    public void writeStrings()
+        throws IOException
+    {
+        final VimsonGenerator g= new VimsonGenerator(this.out, UTF_8);
+
+        g.writeStartList();
+        for(int i= 0; i < ELEMENTS; ++i)
+        {
+            g.writeString("public static void main(String[] args)");
+            g.writeString("吾輩は猫である。");
+        }
+        g.writeEndList();
+        g.flush();
+    }
+
+    @Benchmark
+    public void writeDictionaries()
+        throws IOException
+    {
+        final VimsonGenerator g= new VimsonGenerator(this.out, UTF_8);
+
+        g.writeStartList();
+        for(int i= 0; i < ELEMENTS; ++i)
+        {
+            g.writeStartDictionary();
+            g.writeStringField("word", "getValue");
+            g.writeNumberField("lnum", i);
+            g.writeNumberField("col", 12);
+            g.writeBooleanField("icase", true);
+            g.writeEndDictionary();
+        }
+        g.writeEndList();
+        g.flush();
+    }
+
+    private static final class BlackholeOutputStream
+        extends OutputStream
+    {
+        public BlackholeOutputStream(Blackhole bh)
+        {
+            this.bh= bh;
+        }
+
+        @Override
+        public void write(int b)
+        {
+            this.bh.consume(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len)
+        {
+            this.bh.consume(b);
+            this.bh.consume(len);
+        }
+
+        private final Blackhole bh;
+    }
+
+    private static final Charset UTF_8= Charset.forName("UTF-8");
+
+    private static final int ELEMENTS= 10000;
+
+    private OutputStream out;
+}
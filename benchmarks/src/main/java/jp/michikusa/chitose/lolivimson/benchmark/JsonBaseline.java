@@ -0,0 +1,90 @@
+package jp.michikusa.chitose.lolivimson.benchmark;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A minimal JSON encoder which uses the JDK only, as a baseline for vimson encoding.
+ */
+final class JsonBaseline
+{
+    public static String encode(Object value)
+    {
+        final StringBuilder out= new StringBuilder();
+
+        write(out, value);
+
+        return out.toString();
+    }
+
+    private static void write(StringBuilder out, Object value)
+    {
+        if(value instanceof Map)
+        {
+            out.append('{');
+            boolean first= true;
+            for(final Map.Entry<?, ?> e : ((Map<?, ?>)value).entrySet())
+            {
+                if(!first)
+                {
+                    out.append(',');
+                }
+                first= false;
+                writeString(out, e.getKey().toString());
+                out.append(':');
+                write(out, e.getValue());
+            }
+            out.append('}');
+        }
+        else if(value instanceof List)
+        {
+            out.append('[');
+            boolean first= true;
+            for(final Object e : (List<?>)value)
+            {
+                if(!first)
+                {
+                    out.append(',');
+                }
+                first= false;
+                write(out, e);
+            }
+            out.append(']');
+        }
+        else if(value instanceof CharSequence)
+        {
+            writeString(out, value.toString());
+        }
+        else
+        {
+            out.append(value);
+        }
+    }
+
+    private static void writeString(StringBuilder out, String value)
+    {
+        out.append('"');
+        for(int i= 0; i < value.length(); ++i)
+        {
+            final char c= value.charAt(i);
+            if(c == '"' || c == '\\')
+            {
+                out.append('\\').append(c);
+            }
+            else if(c < 0x20)
+            {
+                out.append(String.format("\\u%04x", (int)c));
+            }
+            else
+            {
+                out.append(c);
+            }
+        }
+        out.append('"');
+    }
+
+    private JsonBaseline()
+    {
+        throw new AssertionError();
+    }
+}
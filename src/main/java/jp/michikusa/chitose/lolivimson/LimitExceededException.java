@@ -0,0 +1,47 @@
+package jp.michikusa.chitose.lolivimson;
+
+/**
+ * Thrown when an input exceeds a limit of the parser, such as nesting depth or string length.
+ */
+@SuppressWarnings("serial")
+public class LimitExceededException
+    extends VimsonException
+{
+    public LimitExceededException(String message, long offset, int line, int column)
+    {
+        super(String.format("%s at line %d, column %d", message, line, column));
+        this.offset= offset;
+        this.line= line;
+        this.column= column;
+    }
+
+    /**
+     * Returns the offset in chars from the beginning of the input.
+     */
+    public long getOffset()
+    {
+        return this.offset;
+    }
+
+    /**
+     * Returns the line number, starting from 1.
+     */
+    public int getLine()
+    {
+        return this.line;
+    }
+
+    /**
+     * Returns the column number in chars, starting from 1.
+     */
+    public int getColumn()
+    {
+        return this.column;
+    }
+
+    private final long offset;
+
+    private final int line;
+
+    private final int column;
+}
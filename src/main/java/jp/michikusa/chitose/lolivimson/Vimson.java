@@ -23,14 +23,14 @@
  */
 package jp.michikusa.chitose.lolivimson;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.math.BigDecimal;
-import java.math.BigInteger;
+import java.io.Writer;
 import java.util.List;
 import java.util.Map;
 
+import jp.michikusa.chitose.lolivimson.core.BeanCodec;
+import jp.michikusa.chitose.lolivimson.core.TypeReference;
+import jp.michikusa.chitose.lolivimson.core.VimsonFactory;
 import jp.michikusa.chitose.lolivimson.core.VimsonGenerator;
 import jp.michikusa.chitose.lolivimson.core.VimsonParser;
 
@@ -77,12 +77,34 @@ public class Vimson
         return encode((Object)value);
     }
 
+    /**
+     * Encodes a {@link Map} to vimson string, and appends it to {@code out}.
+     * @param out The destination, a {@link StringBuilder} is appended directly.
+     * @param value The value will be encoded.
+     * @return {@code out}.
+     */
+    public static <A extends Appendable> A encode(A out, Map<? extends CharSequence, ? extends Object> value)
+    {
+        return encode(out, (Object)value);
+    }
+
+    /**
+     * Encodes a {@link List} to vimson string, and appends it to {@code out}.
+     * @param out The destination, a {@link StringBuilder} is appended directly.
+     * @param value The value will be encoded.
+     * @return {@code out}.
+     */
+    public static <A extends Appendable> A encode(A out, List<? extends Object> value)
+    {
+        return encode(out, (Object)value);
+    }
+
     /**
      * Decodes a VIMSON expr to Java's instance.
      * @param type The type you expect.
      * @param expr The VIMSON string.
      * @return An instance which exactly is a type (1-st argument).
-     * @throws
+     * @throws TypeMismatchException If the value is not a type (1-st argument).
      */
     public static <T> T decode(Class<T> type, CharSequence expr)
     {
@@ -91,18 +113,14 @@ public class Vimson
 
         try
         {
-            final ByteArrayInputStream in= new ByteArrayInputStream(expr.toString().getBytes());
-            final VimsonParser parser= new VimsonParser(in);
-
-            final Object value= parser.parse();
-
-            if(type.isAssignableFrom(value.getClass()))
+            final VimsonParser parser= FACTORY.createParser(expr);
+            try
             {
-                return type.cast(value);
+                return parser.parse(type);
             }
-            else
+            finally
             {
-                throw new IllegalArgumentException();
+                parser.close();
             }
         }
         catch(IOException e)
@@ -111,18 +129,35 @@ public class Vimson
         }
     }
 
-    private static CharSequence encode(Object value)
+    /**
+     * Decodes a VIMSON expr into a generic type, e.g. a {@code List} of java beans.
+     * <pre>
+     * {@code
+     * final List<Item> items= Vimson.decode(new TypeReference<List<Item>>(){}, "[{'word':'a'}]");
+     * }
+     * </pre>
+     * @param type The type you expect.
+     * @param expr The VIMSON string.
+     * @return An instance of the type (1-st argument).
+     * @throws TypeMismatchException If the value doesn't fit the type (1-st argument).
+     * @see BeanCodec
+     */
+    public static <T> T decode(TypeReference<T> type, CharSequence expr)
     {
-        checkNotNull(value);
+        checkNotNull(type);
+        checkNotNull(expr);
 
         try
         {
-            final ByteArrayOutputStream out= new ByteArrayOutputStream();
-            final VimsonGenerator g= new VimsonGenerator(out);
-
-            write(g, value);
-
-            return out.toString();
+            final VimsonParser parser= FACTORY.createParser(expr);
+            try
+            {
+                return parser.parse(type);
+            }
+            finally
+            {
+                parser.close();
+            }
         }
         catch(IOException e)
         {
@@ -130,118 +165,50 @@ public class Vimson
         }
     }
 
-    private static void write(VimsonGenerator g, Object value)
-        throws IOException
+    /**
+     * Encodes a value to vimson string.
+     * Besides {@link Map} and {@link List}, scalars, arrays and java beans are supported.
+     * @param value The value will be encoded.
+     * @return VIMSON string.
+     * @see BeanCodec
+     */
+    public static CharSequence encode(Object value)
     {
-        if(value instanceof CharSequence)
-        {
-            write(g, (CharSequence)value);
-        }
-        else if(value instanceof Number)
-        {
-            write(g, (Number)value);
-        }
-        else if(value instanceof Map)
-        {
-            write(g, (Map<?, ?>)value);
-        }
-        else if(value instanceof List)
-        {
-            write(g, (List<?>)value);
-        }
-        else if(value instanceof Boolean)
-        {
-            write(g, (Boolean)value);
-        }
-        else if(value instanceof Character)
-        {
-            write(g, String.valueOf((Character)value));
-        }
-        else
-        {
-            throw new UnsupportedTypeException(value != null ? value.getClass() : null);
-        }
+        return encode(new StringBuilder(), value).toString();
     }
 
-    private static void write(VimsonGenerator g, Map<?, ? extends Object> value)
-        throws IOException
+    /**
+     * Encodes a value to vimson string, and appends it to {@code out}.
+     * @param out The destination, a {@link StringBuilder} is appended directly.
+     * @param value The value will be encoded.
+     * @return {@code out}.
+     * @see BeanCodec
+     */
+    public static <A extends Appendable> A encode(A out, Object value)
     {
-        g.writeStartDictionary();
-        for(final Object key : value.keySet())
-        {
-            if(!(key instanceof CharSequence))
-            {
-                throw new TypeMismatchException(CharSequence.class, key != null ? key.getClass() : null);
-            }
-
-            g.writeFieldName((CharSequence)key);
-
-            write(g, value.get(key));
-        }
-        g.writeEndDictionary();
-    }
+        checkNotNull(out);
+        checkNotNull(value);
 
-    private static void write(VimsonGenerator g, List<?> value)
-        throws IOException
-    {
-        g.writeStartList();
-        for(final Object elm : value)
+        try
         {
-            write(g, elm);
-        }
-        g.writeEndList();
-    }
+            final VimsonGenerator g= (out instanceof Writer) ? new VimsonGenerator((Writer)out) : new VimsonGenerator(out);
 
-    private static void write(VimsonGenerator g, CharSequence value)
-        throws IOException
-    {
-        g.writeString(value);
-    }
+            g.setObjectCodec(CODEC);
+            g.writeObject(value);
+            g.flush();
 
-    private static void write(VimsonGenerator g, Number value)
-        throws IOException
-    {
-        if(value instanceof Integer)
-        {
-            g.writeNumber((Integer)value);
+            return out;
         }
-        else if(value instanceof Long)
-        {
-            g.writeNumber((Long)value);
-        }
-        else if(value instanceof Double)
-        {
-            g.writeFloat((Double)value);
-        }
-        else if(value instanceof Float)
-        {
-            g.writeFloat((Float)value);
-        }
-        else if(value instanceof Byte)
-        {
-            g.writeNumber((Byte)value);
-        }
-        else if(value instanceof Short)
-        {
-            g.writeNumber((Short)value);
-        }
-        else if(value instanceof BigDecimal)
-        {
-            g.writeFloat(((BigDecimal)value).doubleValue());
-        }
-        else if(value instanceof BigInteger)
-        {
-            g.writeNumber(((BigInteger)value).longValue());
-        }
-        else
+        catch(IOException e)
         {
-            throw new UnsupportedTypeException(value != null ? value.getClass() : null);
+            throw new RuntimeException(e);
         }
     }
 
-    private static void write(VimsonGenerator g, Boolean value)
-        throws IOException
-    {
-        g.writeBoolean(value);
-    }
+    private static final BeanCodec CODEC= new BeanCodec();
+
+    /**
+     * Recycles windows of parsers.
+     */
+    private static final VimsonFactory FACTORY= new VimsonFactory();
 }
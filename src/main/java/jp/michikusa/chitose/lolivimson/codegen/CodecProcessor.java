@@ -0,0 +1,632 @@
+package jp.michikusa.chitose.lolivimson.codegen;
+
+import java.beans.Introspector;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.PrimitiveType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.type.WildcardType;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+
+/**
+ * Generates an {@link jp.michikusa.chitose.lolivimson.core.ObjectCodec} for each class annotated with {@link GenerateCodec}.
+ *
+ * <p>
+ * Properties are found by the same rules as {@link jp.michikusa.chitose.lolivimson.core.BeanCodec},
+ * so a generated codec writes the same dictionary, but calls the typed field writers directly.
+ * Properties of unknown types are delegated to a {@code BeanCodec} on writing, and skipped on reading.
+ * </p>
+ */
+@SupportedAnnotationTypes("jp.michikusa.chitose.lolivimson.codegen.GenerateCodec")
+public class CodecProcessor
+    extends AbstractProcessor
+{
+    @Override
+    public SourceVersion getSupportedSourceVersion()
+    {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv)
+    {
+        for(final Element element : roundEnv.getElementsAnnotatedWith(GenerateCodec.class))
+        {
+            if(element.getKind() != ElementKind.CLASS || element.getModifiers().contains(Modifier.PRIVATE))
+            {
+                this.processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "@GenerateCodec requires a non-private class.", element);
+                continue;
+            }
+
+            final TypeElement type= (TypeElement)element;
+            try
+            {
+                this.generate(type);
+            }
+            catch(IOException e)
+            {
+                this.processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "Cannot generate a codec: " + e, element);
+            }
+        }
+        return true;
+    }
+
+    private void generate(TypeElement type)
+        throws IOException
+    {
+        final String packageName= this.packageOf(type).getQualifiedName().toString();
+        final String codecName= this.codecName(type);
+        final String typeName= this.processingEnv.getTypeUtils().erasure(type.asType()).toString();
+        final List<Property> properties= this.introspect(type);
+
+        final StringBuilder src= new StringBuilder();
+        if(packageName.length() > 0)
+        {
+            src.append("package ").append(packageName).append(";\n\n");
+        }
+        src.append("import java.io.IOException;\n");
+        src.append("\n");
+        src.append("import jp.michikusa.chitose.lolivimson.VimsonException;\n");
+        src.append("import jp.michikusa.chitose.lolivimson.core.BeanCodec;\n");
+        src.append("import jp.michikusa.chitose.lolivimson.core.ObjectCodec;\n");
+        src.append("import jp.michikusa.chitose.lolivimson.core.SerializedName;\n");
+        src.append("import jp.michikusa.chitose.lolivimson.core.TypeReference;\n");
+        src.append("import jp.michikusa.chitose.lolivimson.core.VimsonGenerator;\n");
+        src.append("import jp.michikusa.chitose.lolivimson.core.VimsonParser;\n");
+        src.append("import jp.michikusa.chitose.lolivimson.core.VimsonToken;\n");
+        src.append("\n");
+        src.append("/**\n");
+        src.append(" * Generated by {@link ").append(CodecProcessor.class.getName()).append("} for {@link ").append(typeName).append("}, do not edit.\n");
+        src.append(" */\n");
+        src.append("public class ").append(codecName).append("\n");
+        src.append("    extends ObjectCodec\n");
+        src.append("{\n");
+        src.append("    @Override\n");
+        src.append("    public void writeValue(VimsonGenerator vgen, Object object)\n");
+        src.append("        throws IOException\n");
+        src.append("    {\n");
+        src.append("        final ").append(typeName).append(" bean= (").append(typeName).append(")object;\n\n");
+        src.append("        vgen.writeStartDictionary();\n");
+        for(final Property property : properties)
+        {
+            this.writer(src, property);
+        }
+        src.append("        vgen.writeEndDictionary();\n");
+        src.append("    }\n");
+
+        if(this.isInstantiable(type))
+        {
+            src.append("\n");
+            src.append("    @Override\n");
+            src.append("    @SuppressWarnings(\"unchecked\")\n");
+            src.append("    public ").append(typeName).append(" readValue(VimsonParser parser)\n");
+            src.append("        throws IOException\n");
+            src.append("    {\n");
+            src.append("        final VimsonToken token= parser.nextValue();\n");
+            src.append("        if(token != VimsonToken.START_DICTIONARY)\n");
+            src.append("        {\n");
+            src.append("            throw new VimsonException(\"Expected a dictionary for ").append(typeName).append(", but got \" + token);\n");
+            src.append("        }\n\n");
+            src.append("        final ").append(typeName).append(" bean= new ").append(typeName).append("();\n");
+            src.append("        while(parser.nextToken() == VimsonToken.FIELD_NAME)\n");
+            src.append("        {\n");
+            src.append("            final String name= parser.getText();\n\n");
+            src.append("            parser.nextToken();\n");
+            String keyword= "if";
+            for(final Property property : properties)
+            {
+                if(property.setter != null && this.reader(property) != null)
+                {
+                    src.append("            ").append(keyword).append("(\"").append(escape(property.name)).append("\".equals(name))\n");
+                    src.append("            {\n");
+                    src.append("                bean.").append(property.setter).append(this.reader(property)).append(property.setterSuffix).append(";\n");
+                    src.append("            }\n");
+                    keyword= "else if";
+                }
+            }
+            if(keyword.equals("if"))
+            {
+                src.append("            parser.skipChildren();\n");
+            }
+            else
+            {
+                src.append("            else\n");
+                src.append("            {\n");
+                src.append("                parser.skipChildren();\n");
+                src.append("            }\n");
+            }
+            src.append("        }\n");
+            src.append("        return bean;\n");
+            src.append("    }\n");
+        }
+
+        src.append("\n");
+        src.append("    public static final ").append(codecName).append(" INSTANCE= new ").append(codecName).append("();\n");
+        src.append("\n");
+        src.append("    private static final BeanCodec FALLBACK= new BeanCodec();\n");
+        for(final Property property : properties)
+        {
+            src.append("\n");
+            src.append("    private static final SerializedName ").append(property.constant).append("= new SerializedName(\"").append(escape(property.name)).append("\");\n");
+        }
+        for(final Property property : properties)
+        {
+            if(property.setter != null && this.shapeOf(property.setterType) == Shape.TYPED)
+            {
+                src.append("\n");
+                src.append("    private static final TypeReference<").append(property.setterType).append("> ").append(property.typeConstant)
+                    .append("= new TypeReference<").append(property.setterType).append(">(){};\n");
+            }
+        }
+        src.append("}\n");
+
+        final String qualifiedName= (packageName.length() > 0) ? packageName + "." + codecName : codecName;
+        final Writer out= this.processingEnv.getFiler().createSourceFile(qualifiedName, type).openWriter();
+        try
+        {
+            out.write(src.toString());
+        }
+        finally
+        {
+            out.close();
+        }
+    }
+
+    /**
+     * Appends statements which write a property, {@code null} values are omitted.
+     */
+    private void writer(StringBuilder src, Property property)
+    {
+        final TypeMirror type= property.getterType;
+        final String access= "bean." + property.getter;
+        final Shape shape= this.shapeOf(type);
+
+        if(type.getKind().isPrimitive())
+        {
+            src.append("        ").append(primitiveWriter(shape, property.constant, access)).append("\n");
+            return;
+        }
+
+        final String localType;
+        final String statement;
+        switch(shape)
+        {
+        case STRING:
+        case ENUM:
+        case CODEC:
+        case BOOLEAN:
+        case BYTE:
+        case SHORT:
+        case CHAR:
+        case INT:
+        case LONG:
+        case FLOAT:
+        case DOUBLE:
+            localType= this.processingEnv.getTypeUtils().erasure(type).toString();
+            break;
+        default:
+            localType= "Object";
+            break;
+        }
+        switch(shape)
+        {
+        case STRING:
+            statement= "vgen.writeStringField(" + property.constant + ", value);";
+            break;
+        case ENUM:
+            statement= "vgen.writeStringField(" + property.constant + ", value.name());";
+            break;
+        case CODEC:
+            statement= "vgen.writeFieldName(" + property.constant + ");\n"
+                + "                " + this.codecReference(type) + ".INSTANCE.writeValue(vgen, value);";
+            break;
+        case TREE:
+        case TYPED:
+        case OTHER:
+            statement= "vgen.writeFieldName(" + property.constant + ");\n"
+                + "                FALLBACK.writeValue(vgen, value);";
+            break;
+        default:
+            statement= primitiveWriter(shape, property.constant, "value");
+            break;
+        }
+
+        src.append("        {\n");
+        src.append("            final ").append(localType).append(" value= ").append(access).append(";\n");
+        src.append("            if(value != null)\n");
+        src.append("            {\n");
+        src.append("                ").append(statement).append("\n");
+        src.append("            }\n");
+        src.append("        }\n");
+    }
+
+    private static String primitiveWriter(Shape shape, String constant, String value)
+    {
+        switch(shape)
+        {
+        case BOOLEAN:
+            return "vgen.writeBooleanField(" + constant + ", " + value + ");";
+        case CHAR:
+            return "vgen.writeStringField(" + constant + ", String.valueOf(" + value + "));";
+        case FLOAT:
+        case DOUBLE:
+            return "vgen.writeFloatField(" + constant + ", " + value + ");";
+        default:
+            return "vgen.writeNumberField(" + constant + ", " + value + ");";
+        }
+    }
+
+    /**
+     * Returns an expression which reads a value of the property from {@code parser}, or {@code null} if unsupported.
+     */
+    private String reader(Property property)
+    {
+        final TypeMirror type= property.setterType;
+        // scalars are checked by the same rules as BeanCodec, see ObjectCodec#numberValue()
+        final String literal= this.processingEnv.getTypeUtils().erasure(type) + ".class";
+        switch(this.shapeOf(type))
+        {
+        case BOOLEAN:
+            return "numberValue(parser, " + literal + ").doubleValue() != 0";
+        case BYTE:
+            return "(byte)integralValue(parser, " + literal + ", Byte.MIN_VALUE, Byte.MAX_VALUE)";
+        case SHORT:
+            return "(short)integralValue(parser, " + literal + ", Short.MIN_VALUE, Short.MAX_VALUE)";
+        case CHAR:
+            return "charValue(parser, " + literal + ")";
+        case INT:
+            return "(int)integralValue(parser, " + literal + ", Integer.MIN_VALUE, Integer.MAX_VALUE)";
+        case LONG:
+            return "integralValue(parser, " + literal + ", Long.MIN_VALUE, Long.MAX_VALUE)";
+        case FLOAT:
+            return "numberValue(parser, " + literal + ").floatValue()";
+        case DOUBLE:
+            return "numberValue(parser, " + literal + ").doubleValue()";
+        case STRING:
+            return "stringValue(parser, " + literal + ")";
+        case ENUM:
+            return "enumValue(parser, " + literal + ")";
+        case CODEC:
+            return this.codecReference(type) + ".INSTANCE.readValue(parser)";
+        case TREE:
+            return "(" + type + ")parser.readValue()";
+        case TYPED:
+            // same as BeanCodec, along the type arguments
+            return "(" + type + ")FALLBACK.readValue(parser, " + property.typeConstant + ".getType())";
+        default:
+            return null;
+        }
+    }
+
+    private Shape shapeOf(TypeMirror type)
+    {
+        if(type.getKind().isPrimitive())
+        {
+            return Shape.of(type.getKind());
+        }
+        if(type.getKind() != TypeKind.DECLARED)
+        {
+            return Shape.OTHER;
+        }
+
+        try
+        {
+            final PrimitiveType unboxed= this.processingEnv.getTypeUtils().unboxedType(type);
+            return Shape.of(unboxed.getKind());
+        }
+        catch(IllegalArgumentException e)
+        {
+            // not a wrapper type
+        }
+
+        final TypeElement element= (TypeElement)((DeclaredType)type).asElement();
+        final String name= element.getQualifiedName().toString();
+        if(name.equals("java.lang.String") || name.equals("java.lang.CharSequence"))
+        {
+            return Shape.STRING;
+        }
+        if(element.getKind() == ElementKind.ENUM)
+        {
+            return Shape.ENUM;
+        }
+        if(element.getAnnotation(GenerateCodec.class) != null)
+        {
+            return Shape.CODEC;
+        }
+        if(name.equals("java.lang.Object"))
+        {
+            return Shape.TREE;
+        }
+        if(name.equals("java.util.Map") || name.equals("java.util.List") || name.equals("java.util.Collection") || name.equals("java.lang.Iterable"))
+        {
+            for(final TypeMirror argument : ((DeclaredType)type).getTypeArguments())
+            {
+                if(argument.getKind() != TypeKind.WILDCARD || ((WildcardType)argument).getExtendsBound() != null || ((WildcardType)argument).getSuperBound() != null)
+                {
+                    return Shape.TYPED;
+                }
+            }
+            return Shape.TREE;
+        }
+        return Shape.OTHER;
+    }
+
+    /**
+     * Collects properties, in order of declared fields and then in order of names.
+     */
+    private List<Property> introspect(TypeElement type)
+    {
+        final Map<String, ExecutableElement> getters= new HashMap<String, ExecutableElement>();
+        final Map<String, ExecutableElement> setters= new HashMap<String, ExecutableElement>();
+        for(final ExecutableElement method : ElementFilter.methodsIn(this.processingEnv.getElementUtils().getAllMembers(type)))
+        {
+            final Set<Modifier> modifiers= method.getModifiers();
+            if(!modifiers.contains(Modifier.PUBLIC) || modifiers.contains(Modifier.STATIC))
+            {
+                continue;
+            }
+            if(((TypeElement)method.getEnclosingElement()).getQualifiedName().contentEquals("java.lang.Object"))
+            {
+                continue;
+            }
+
+            final String name= method.getSimpleName().toString();
+            final TypeMirror returnType= method.getReturnType();
+            if(method.getParameters().isEmpty() && returnType.getKind() != TypeKind.VOID)
+            {
+                if(name.startsWith("get") && name.length() > 3)
+                {
+                    getters.put(Introspector.decapitalize(name.substring(3)), method);
+                }
+                else if(name.startsWith("is") && name.length() > 2 && this.shapeOf(returnType) == Shape.BOOLEAN)
+                {
+                    final String property= Introspector.decapitalize(name.substring(2));
+                    if(!getters.containsKey(property))
+                    {
+                        getters.put(property, method);
+                    }
+                }
+            }
+            else if(method.getParameters().size() == 1 && name.startsWith("set") && name.length() > 3)
+            {
+                setters.put(Introspector.decapitalize(name.substring(3)), method);
+            }
+        }
+
+        final Set<String> names= new LinkedHashSet<String>();
+        final Map<String, VariableElement> fields= new HashMap<String, VariableElement>();
+        for(final TypeElement c : this.hierarchy(type))
+        {
+            for(final VariableElement field : ElementFilter.fieldsIn(c.getEnclosedElements()))
+            {
+                final Set<Modifier> modifiers= field.getModifiers();
+                if(modifiers.contains(Modifier.STATIC) || modifiers.contains(Modifier.TRANSIENT))
+                {
+                    continue;
+                }
+
+                final String name= field.getSimpleName().toString();
+                names.add(name);
+                if(modifiers.contains(Modifier.PUBLIC))
+                {
+                    fields.put(name, field);
+                }
+            }
+        }
+        final List<String> rest= new ArrayList<String>(getters.keySet());
+        rest.removeAll(names);
+        Collections.sort(rest);
+        names.addAll(rest);
+
+        final List<Property> properties= new ArrayList<Property>();
+        for(final String name : names)
+        {
+            final ExecutableElement getter= getters.get(name);
+            final ExecutableElement setter= setters.get(name);
+            final VariableElement field= fields.get(name);
+
+            if(getter == null && field == null)
+            {
+                continue;
+            }
+
+            final Property property= new Property(name, properties.size());
+            if(getter != null)
+            {
+                property.getter= getter.getSimpleName() + "()";
+                property.getterType= getter.getReturnType();
+            }
+            else
+            {
+                property.getter= name;
+                property.getterType= field.asType();
+            }
+            if(setter != null)
+            {
+                property.setter= setter.getSimpleName() + "(";
+                property.setterSuffix= ")";
+                property.setterType= setter.getParameters().get(0).asType();
+            }
+            else if(field != null && !field.getModifiers().contains(Modifier.FINAL))
+            {
+                property.setter= name + "= ";
+                property.setterSuffix= "";
+                property.setterType= field.asType();
+            }
+            properties.add(property);
+        }
+        return properties;
+    }
+
+    private List<TypeElement> hierarchy(TypeElement type)
+    {
+        final List<TypeElement> classes= new ArrayList<TypeElement>();
+        for(TypeElement c= type; c != null && !c.getQualifiedName().contentEquals("java.lang.Object"); )
+        {
+            classes.add(0, c);
+
+            final TypeMirror superclass= c.getSuperclass();
+            c= (superclass.getKind() == TypeKind.DECLARED) ? (TypeElement)((DeclaredType)superclass).asElement() : null;
+        }
+        return classes;
+    }
+
+    /**
+     * Whether the generated reader can create an instance by {@code new}.
+     */
+    private boolean isInstantiable(TypeElement type)
+    {
+        if(type.getModifiers().contains(Modifier.ABSTRACT))
+        {
+            return false;
+        }
+        if(type.getNestingKind() != NestingKind.TOP_LEVEL && !type.getModifiers().contains(Modifier.STATIC))
+        {
+            return false;
+        }
+        for(final ExecutableElement constructor : ElementFilter.constructorsIn(type.getEnclosedElements()))
+        {
+            if(constructor.getParameters().isEmpty() && !constructor.getModifiers().contains(Modifier.PRIVATE))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private PackageElement packageOf(Element element)
+    {
+        return this.processingEnv.getElementUtils().getPackageOf(element);
+    }
+
+    /**
+     * Returns a simple name of the generated codec, after the binary name, e.g. {@code Outer_InnerCodec}.
+     */
+    private String codecName(TypeElement type)
+    {
+        final String binaryName= this.processingEnv.getElementUtils().getBinaryName(type).toString();
+        final String packageName= this.packageOf(type).getQualifiedName().toString();
+        final String simpleName= (packageName.length() > 0) ? binaryName.substring(packageName.length() + 1) : binaryName;
+
+        return simpleName.replace('$', '_') + "Codec";
+    }
+
+    private String codecReference(TypeMirror type)
+    {
+        final TypeElement element= (TypeElement)((DeclaredType)type).asElement();
+        final String packageName= this.packageOf(element).getQualifiedName().toString();
+        final String codecName= this.codecName(element);
+
+        return (packageName.length() > 0) ? packageName + "." + codecName : codecName;
+    }
+
+    private static String escape(String s)
+    {
+        final StringBuilder escaped= new StringBuilder(s.length());
+        for(int i= 0; i < s.length(); ++i)
+        {
+            final char c= s.charAt(i);
+            if(c == '"' || c == '\\')
+            {
+                escaped.append('\\');
+            }
+            escaped.append(c);
+        }
+        return escaped.toString();
+    }
+
+    private static enum Shape
+    {
+        BOOLEAN,
+        BYTE,
+        SHORT,
+        CHAR,
+        INT,
+        LONG,
+        FLOAT,
+        DOUBLE,
+        STRING,
+        ENUM,
+        CODEC,
+        /** Dictionaries and lists as they are read. */
+        TREE,
+        /** Containers with type arguments, which are read by {@code BeanCodec}. */
+        TYPED,
+        OTHER,
+        ;
+
+        static Shape of(TypeKind kind)
+        {
+            switch(kind)
+            {
+            case BOOLEAN:
+                return BOOLEAN;
+            case BYTE:
+                return BYTE;
+            case SHORT:
+                return SHORT;
+            case CHAR:
+                return CHAR;
+            case INT:
+                return INT;
+            case LONG:
+                return LONG;
+            case FLOAT:
+                return FLOAT;
+            case DOUBLE:
+                return DOUBLE;
+            default:
+                return OTHER;
+            }
+        }
+    }
+
+    private static final class Property
+    {
+        public Property(String name, int index)
+        {
+            this.name= name;
+            this.constant= "NAME_" + index;
+            this.typeConstant= "TYPE_" + index;
+        }
+
+        public final String name;
+
+        public final String constant;
+
+        public final String typeConstant;
+
+        public String getter;
+
+        public TypeMirror getterType;
+
+        public String setter;
+
+        public String setterSuffix;
+
+        public TypeMirror setterType;
+    }
+}
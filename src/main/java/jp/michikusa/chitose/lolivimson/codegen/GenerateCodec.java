@@ -0,0 +1,24 @@
+package jp.michikusa.chitose.lolivimson.codegen;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a class whose {@link jp.michikusa.chitose.lolivimson.core.ObjectCodec} is generated at compile time.
+ *
+ * <p>
+ * {@link CodecProcessor} generates {@code <ClassName>Codec} into the same package,
+ * nested classes are named after their binary names, e.g. {@code Outer_InnerCodec}.
+ * The generated codec writes the same dictionary as {@link jp.michikusa.chitose.lolivimson.core.BeanCodec},
+ * and reads it back if the class has a no-arg constructor.
+ * </p>
+ */
+@Documented
+@Retention(RetentionPolicy.CLASS)
+@Target(ElementType.TYPE)
+public @interface GenerateCodec
+{
+}
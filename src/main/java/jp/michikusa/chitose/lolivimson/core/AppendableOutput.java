@@ -0,0 +1,101 @@
+package jp.michikusa.chitose.lolivimson.core;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.nio.CharBuffer;
+
+import static jp.michikusa.chitose.lolivimson.util.Preconditions.checkNotNull;
+
+/**
+ * Appends directly to an {@link Appendable}, typically a {@link StringBuilder}, which is a buffer by itself.
+ */
+class AppendableOutput
+    extends VimsonOutput
+{
+    public AppendableOutput(Appendable out)
+    {
+        this.reset(out);
+    }
+
+    /**
+     * Appends to {@code out} from now on.
+     */
+    public void reset(Appendable out)
+    {
+        this.out= checkNotNull(out);
+        this.builder= (out instanceof StringBuilder) ? (StringBuilder)out : null;
+    }
+
+    @Override
+    public void write(char c)
+        throws IOException
+    {
+        if(this.builder != null)
+        {
+            this.builder.append(c);
+        }
+        else
+        {
+            this.out.append(c);
+        }
+    }
+
+    @Override
+    public void write(CharSequence s, int start, int end)
+        throws IOException
+    {
+        if(this.builder != null)
+        {
+            this.builder.append(s, start, end);
+        }
+        else
+        {
+            this.out.append(s, start, end);
+        }
+    }
+
+    @Override
+    public void write(char[] c, int offset, int length)
+        throws IOException
+    {
+        if(this.builder != null)
+        {
+            this.builder.append(c, offset, length);
+        }
+        else
+        {
+            this.out.append(CharBuffer.wrap(c, offset, length));
+        }
+    }
+
+    @Override
+    public void drain()
+    {
+    }
+
+    @Override
+    public void flush()
+        throws IOException
+    {
+        if(this.out instanceof Flushable)
+        {
+            ((Flushable)this.out).flush();
+        }
+    }
+
+    @Override
+    public void close()
+        throws IOException
+    {
+        this.flush();
+        if(this.out instanceof Closeable)
+        {
+            ((Closeable)this.out).close();
+        }
+    }
+
+    private Appendable out;
+
+    private StringBuilder builder;
+}
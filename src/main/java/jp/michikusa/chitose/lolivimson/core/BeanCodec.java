@@ -0,0 +1,534 @@
+package jp.michikusa.chitose.lolivimson.core;
+
+import java.beans.Introspector;
+import java.io.IOException;
+import java.lang.reflect.AccessibleObject;
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Type;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import jp.michikusa.chitose.lolivimson.TypeMismatchException;
+import jp.michikusa.chitose.lolivimson.UnsupportedTypeException;
+import jp.michikusa.chitose.lolivimson.VimsonException;
+
+/**
+ * An {@link ObjectCodec} which writes {@link Map}s, {@link Iterable}s, arrays, scalars and java beans.
+ *
+ * <p>
+ * A bean is written as a dictionary of its public getters and public fields, {@code null} properties are omitted.
+ * Each bean class is introspected only once, its accessors and pre-encoded field names are cached in this codec,
+ * so writing a bean does no reflective lookup.
+ * </p>
+ *
+ * <p>
+ * Reading into a type fills beans, enums, scalars, arrays and generic collections as tokens arrive,
+ * without building dictionaries and lists in between. Unknown keys of beans are skipped.
+ * </p>
+ */
+public class BeanCodec
+    extends ObjectCodec
+{
+    @Override
+    public Object readValue(VimsonParser parser, Type type)
+        throws IOException
+    {
+        return this.decoder.read(parser, type);
+    }
+
+    @Override
+    public void writeValue(VimsonGenerator vgen, Object value)
+        throws IOException
+    {
+        if(value instanceof CharSequence)
+        {
+            vgen.writeString((CharSequence)value);
+        }
+        else if(value instanceof Number)
+        {
+            this.writeNumber(vgen, (Number)value);
+        }
+        else if(value instanceof Map)
+        {
+            this.writeMap(vgen, (Map<?, ?>)value);
+        }
+        else if(value instanceof Iterable)
+        {
+            this.writeIterable(vgen, (Iterable<?>)value);
+        }
+        else if(value instanceof Boolean)
+        {
+            vgen.writeBoolean((Boolean)value);
+        }
+        else if(value instanceof Character)
+        {
+            vgen.writeString(String.valueOf((Character)value));
+        }
+        else if(value instanceof Enum)
+        {
+            vgen.writeString(((Enum<?>)value).name());
+        }
+        else if(value != null && value.getClass().isArray())
+        {
+            this.writeArray(vgen, value);
+        }
+        else if(value != null)
+        {
+            this.writeBean(vgen, value);
+        }
+        else
+        {
+            throw new UnsupportedTypeException(null);
+        }
+    }
+
+    protected void writeNumber(VimsonGenerator vgen, Number value)
+        throws IOException
+    {
+        if(value instanceof Integer)
+        {
+            vgen.writeNumber((Integer)value);
+        }
+        else if(value instanceof Long)
+        {
+            vgen.writeNumber((Long)value);
+        }
+        else if(value instanceof Double)
+        {
+            vgen.writeFloat((Double)value);
+        }
+        else if(value instanceof Float)
+        {
+            vgen.writeFloat((Float)value);
+        }
+        else if(value instanceof Byte)
+        {
+            vgen.writeNumber((Byte)value);
+        }
+        else if(value instanceof Short)
+        {
+            vgen.writeNumber((Short)value);
+        }
+        else if(value instanceof BigDecimal)
+        {
+            vgen.writeFloat(((BigDecimal)value).doubleValue());
+        }
+        else if(value instanceof BigInteger)
+        {
+            vgen.writeNumber(((BigInteger)value).longValue());
+        }
+        else
+        {
+            throw new UnsupportedTypeException(value.getClass());
+        }
+    }
+
+    protected void writeMap(VimsonGenerator vgen, Map<?, ?> value)
+        throws IOException
+    {
+        vgen.writeStartDictionary();
+        for(final Map.Entry<?, ?> entry : value.entrySet())
+        {
+            this.writeEntry(vgen, entry);
+        }
+        vgen.writeEndDictionary();
+    }
+
+    protected void writeEntry(VimsonGenerator vgen, Map.Entry<?, ?> entry)
+        throws IOException
+    {
+        final Object key= entry.getKey();
+
+        if(!(key instanceof CharSequence))
+        {
+            throw new TypeMismatchException(CharSequence.class, key != null ? key.getClass() : null);
+        }
+
+        vgen.writeFieldName((CharSequence)key);
+        this.writeValue(vgen, entry.getValue());
+    }
+
+    protected void writeIterable(VimsonGenerator vgen, Iterable<?> value)
+        throws IOException
+    {
+        vgen.writeStartList();
+        for(final Object elm : value)
+        {
+            this.writeValue(vgen, elm);
+        }
+        vgen.writeEndList();
+    }
+
+    protected void writeArray(VimsonGenerator vgen, Object array)
+        throws IOException
+    {
+        final int length= Array.getLength(array);
+
+        vgen.writeStartList();
+        for(int i= 0; i < length; ++i)
+        {
+            this.writeValue(vgen, Array.get(array, i));
+        }
+        vgen.writeEndList();
+    }
+
+    protected void writeBean(VimsonGenerator vgen, Object bean)
+        throws IOException
+    {
+        final Property[] properties= this.describe(bean.getClass());
+
+        vgen.writeStartDictionary();
+        for(final Property property : properties)
+        {
+            property.write(this, vgen, bean);
+        }
+        vgen.writeEndDictionary();
+    }
+
+    private Property[] describe(Class<?> type)
+    {
+        final Property[] cached= this.descriptions.get(type);
+
+        if(cached != null)
+        {
+            return cached;
+        }
+
+        final Property[] properties= introspect(type);
+        if(properties.length == 0)
+        {
+            throw new UnsupportedTypeException(type);
+        }
+
+        final Property[] raced= this.descriptions.putIfAbsent(type, properties);
+        return (raced != null) ? raced : properties;
+    }
+
+    /**
+     * Collects readable properties, in order of declared fields and then in order of names.
+     */
+    private static Property[] introspect(Class<?> type)
+    {
+        final Map<String, Method> getters= new HashMap<String, Method>();
+        for(final Method method : type.getMethods())
+        {
+            final String name= propertyName(method);
+            if(name != null && (!getters.containsKey(name) || method.getName().startsWith("get")))
+            {
+                getters.put(name, method);
+            }
+        }
+
+        final Set<String> names= new LinkedHashSet<String>();
+        final Map<String, Field> fields= new HashMap<String, Field>();
+        for(final Class<?> c : hierarchy(type))
+        {
+            for(final Field field : c.getDeclaredFields())
+            {
+                final int modifiers= field.getModifiers();
+                if(Modifier.isStatic(modifiers) || Modifier.isTransient(modifiers) || field.isSynthetic())
+                {
+                    continue;
+                }
+
+                names.add(field.getName());
+                if(Modifier.isPublic(modifiers))
+                {
+                    fields.put(field.getName(), field);
+                }
+            }
+        }
+        final List<String> rest= new ArrayList<String>(getters.keySet());
+        rest.removeAll(names);
+        Collections.sort(rest);
+        names.addAll(rest);
+
+        final List<Property> properties= new ArrayList<Property>();
+        for(final String name : names)
+        {
+            final Method getter= getters.get(name);
+            final Field field= fields.get(name);
+
+            if(getter != null)
+            {
+                properties.add(new GetterProperty(name, accessible(getter)));
+            }
+            else if(field != null)
+            {
+                properties.add(new FieldProperty(name, accessible(field)));
+            }
+        }
+        return properties.toArray(new Property[properties.size()]);
+    }
+
+    private static String propertyName(Method method)
+    {
+        if(Modifier.isStatic(method.getModifiers()) || method.isBridge() || method.getParameterTypes().length != 0)
+        {
+            return null;
+        }
+        if(method.getDeclaringClass() == Object.class || method.getReturnType() == void.class)
+        {
+            return null;
+        }
+
+        final String name= method.getName();
+        if(name.startsWith("get") && name.length() > 3)
+        {
+            return Introspector.decapitalize(name.substring(3));
+        }
+        if(name.startsWith("is") && name.length() > 2 && (method.getReturnType() == boolean.class || method.getReturnType() == Boolean.class))
+        {
+            return Introspector.decapitalize(name.substring(2));
+        }
+        return null;
+    }
+
+    private static List<Class<?>> hierarchy(Class<?> type)
+    {
+        final List<Class<?>> classes= new ArrayList<Class<?>>();
+        for(Class<?> c= type; c != null && c != Object.class; c= c.getSuperclass())
+        {
+            classes.add(0, c);
+        }
+        return classes;
+    }
+
+    private static <T extends AccessibleObject> T accessible(T member)
+    {
+        try
+        {
+            // public members of non-public classes are not accessible by default
+            member.setAccessible(true);
+        }
+        catch(RuntimeException e)
+        {
+            // keeps it as is, e.g. under a security manager
+        }
+        return member;
+    }
+
+    private static enum Kind
+    {
+        BOOLEAN,
+        BYTE,
+        SHORT,
+        CHAR,
+        INT,
+        LONG,
+        FLOAT,
+        DOUBLE,
+        OBJECT,
+        ;
+
+        static Kind of(Class<?> type)
+        {
+            if(type == int.class || type == Integer.class)
+            {
+                return INT;
+            }
+            if(type == long.class || type == Long.class)
+            {
+                return LONG;
+            }
+            if(type == boolean.class || type == Boolean.class)
+            {
+                return BOOLEAN;
+            }
+            if(type == double.class || type == Double.class)
+            {
+                return DOUBLE;
+            }
+            if(type == float.class || type == Float.class)
+            {
+                return FLOAT;
+            }
+            if(type == short.class || type == Short.class)
+            {
+                return SHORT;
+            }
+            if(type == byte.class || type == Byte.class)
+            {
+                return BYTE;
+            }
+            if(type == char.class || type == Character.class)
+            {
+                return CHAR;
+            }
+            return OBJECT;
+        }
+    }
+
+    private abstract static class Property
+    {
+        public Property(String name, Class<?> type)
+        {
+            this.name= new SerializedName(name);
+            this.kind= Kind.of(type);
+        }
+
+        public abstract void write(BeanCodec codec, VimsonGenerator vgen, Object bean)
+            throws IOException;
+
+        /**
+         * Writes a field with a boxed value, dispatching on the declared type.
+         */
+        protected void writeField(BeanCodec codec, VimsonGenerator vgen, Object value)
+            throws IOException
+        {
+            if(value == null)
+            {
+                return;
+            }
+
+            vgen.writeFieldName(this.name);
+            switch(this.kind)
+            {
+            case BOOLEAN:
+                vgen.writeBoolean((Boolean)value);
+                break;
+            case BYTE:
+                vgen.writeNumber((Byte)value);
+                break;
+            case SHORT:
+                vgen.writeNumber((Short)value);
+                break;
+            case CHAR:
+                vgen.writeString(String.valueOf((Character)value));
+                break;
+            case INT:
+                vgen.writeNumber((Integer)value);
+                break;
+            case LONG:
+                vgen.writeNumber((Long)value);
+                break;
+            case FLOAT:
+                vgen.writeFloat((Float)value);
+                break;
+            case DOUBLE:
+                vgen.writeFloat((Double)value);
+                break;
+            default:
+                codec.writeValue(vgen, value);
+                break;
+            }
+        }
+
+        protected final SerializedName name;
+
+        protected final Kind kind;
+    }
+
+    private static final class GetterProperty
+        extends Property
+    {
+        public GetterProperty(String name, Method getter)
+        {
+            super(name, getter.getReturnType());
+            this.getter= getter;
+        }
+
+        @Override
+        public void write(BeanCodec codec, VimsonGenerator vgen, Object bean)
+            throws IOException
+        {
+            final Object value;
+            try
+            {
+                value= this.getter.invoke(bean);
+            }
+            catch(IllegalAccessException e)
+            {
+                throw new VimsonException(e);
+            }
+            catch(InvocationTargetException e)
+            {
+                throw new VimsonException(e.getCause());
+            }
+
+            this.writeField(codec, vgen, value);
+        }
+
+        private final Method getter;
+    }
+
+    private static final class FieldProperty
+        extends Property
+    {
+        public FieldProperty(String name, Field field)
+        {
+            super(name, field.getType());
+            this.field= field;
+            this.primitive= field.getType().isPrimitive();
+        }
+
+        @Override
+        public void write(BeanCodec codec, VimsonGenerator vgen, Object bean)
+            throws IOException
+        {
+            try
+            {
+                if(!this.primitive)
+                {
+                    this.writeField(codec, vgen, this.field.get(bean));
+                    return;
+                }
+
+                // primitives are read without boxing
+                vgen.writeFieldName(this.name);
+                switch(this.kind)
+                {
+                case BOOLEAN:
+                    vgen.writeBoolean(this.field.getBoolean(bean));
+                    break;
+                case BYTE:
+                    vgen.writeNumber(this.field.getByte(bean));
+                    break;
+                case SHORT:
+                    vgen.writeNumber(this.field.getShort(bean));
+                    break;
+                case CHAR:
+                    vgen.writeString(String.valueOf(this.field.getChar(bean)));
+                    break;
+                case INT:
+                    vgen.writeNumber(this.field.getInt(bean));
+                    break;
+                case LONG:
+                    vgen.writeNumber(this.field.getLong(bean));
+                    break;
+                case FLOAT:
+                    vgen.writeFloat(this.field.getFloat(bean));
+                    break;
+                default:
+                    vgen.writeFloat(this.field.getDouble(bean));
+                    break;
+                }
+            }
+            catch(IllegalAccessException e)
+            {
+                throw new VimsonException(e);
+            }
+        }
+
+        private final Field field;
+
+        private final boolean primitive;
+    }
+
+    private final BeanDecoder decoder= new BeanDecoder();
+
+    private final ConcurrentMap<Class<?>, Property[]> descriptions= new ConcurrentHashMap<Class<?>, Property[]>();
+}
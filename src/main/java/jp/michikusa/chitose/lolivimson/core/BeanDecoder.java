@@ -0,0 +1,597 @@
+package jp.michikusa.chitose.lolivimson.core;
+
+import java.beans.Introspector;
+import java.io.IOException;
+import java.lang.reflect.AccessibleObject;
+import java.lang.reflect.Array;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.GenericArrayType;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.lang.reflect.TypeVariable;
+import java.lang.reflect.WildcardType;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import jp.michikusa.chitose.lolivimson.TypeMismatchException;
+import jp.michikusa.chitose.lolivimson.UnsupportedTypeException;
+import jp.michikusa.chitose.lolivimson.VimsonException;
+
+/**
+ * Decodes tokens straight into a target type, such as a bean, an enum, a scalar, an array or a generic collection.
+ *
+ * <p>
+ * A bean is created by its no-arg constructor, and its public setters and public fields are filled as entries arrive.
+ * Each bean class is introspected only once, its properties are looked up by name in a precomputed table,
+ * and entries of unknown names are skipped without decoding them.
+ * </p>
+ */
+class BeanDecoder
+{
+    /**
+     * Reads a value of {@code type} from the current token of {@code parser}, see {@link VimsonParser#nextValue()}.
+     */
+    public Object read(VimsonParser parser, Type type)
+        throws IOException
+    {
+        final VimsonToken token= parser.nextValue();
+        final Class<?> raw= rawClass(type);
+        if(raw == Object.class)
+        {
+            return parser.readValue();
+        }
+        if(raw.isArray())
+        {
+            return this.readArray(parser, token, raw, componentType(type));
+        }
+        if(Map.class.isAssignableFrom(raw))
+        {
+            return this.readMap(parser, token, raw, typeArgument(type, 1));
+        }
+        if(Collection.class.isAssignableFrom(raw))
+        {
+            return this.readCollection(parser, token, raw, typeArgument(type, 0));
+        }
+        if(token == VimsonToken.VALUE_STRING)
+        {
+            return this.readString(parser.getText(), raw);
+        }
+        if(token == VimsonToken.VALUE_NUMBER || token == VimsonToken.VALUE_FLOAT)
+        {
+            return this.readNumber(parser.getNumberValue(), raw);
+        }
+        if(token == VimsonToken.START_DICTIONARY && !raw.isPrimitive() && !raw.isEnum() && !raw.isInterface())
+        {
+            return this.readBean(parser, raw);
+        }
+        throw new TypeMismatchException(raw, VimsonParser.valueType(token));
+    }
+
+    static Class<?> rawClass(Type type)
+    {
+        if(type instanceof Class)
+        {
+            return (Class<?>)type;
+        }
+        if(type instanceof ParameterizedType)
+        {
+            return (Class<?>)((ParameterizedType)type).getRawType();
+        }
+        if(type instanceof GenericArrayType)
+        {
+            return Array.newInstance(rawClass(((GenericArrayType)type).getGenericComponentType()), 0).getClass();
+        }
+        if(type instanceof WildcardType)
+        {
+            return rawClass(((WildcardType)type).getUpperBounds()[0]);
+        }
+        if(type instanceof TypeVariable)
+        {
+            return rawClass(((TypeVariable<?>)type).getBounds()[0]);
+        }
+        throw new IllegalArgumentException("Unsupported type: " + type);
+    }
+
+    private Object readString(String text, Class<?> raw)
+    {
+        if(raw == String.class || raw == CharSequence.class)
+        {
+            return text;
+        }
+        if(raw.isEnum())
+        {
+            return this.enumConstant(raw, text);
+        }
+        if((raw == char.class || raw == Character.class) && text.length() == 1)
+        {
+            return text.charAt(0);
+        }
+        throw new TypeMismatchException(raw, String.class);
+    }
+
+    private Object readNumber(Number number, Class<?> raw)
+    {
+        switch(Scalar.of(raw))
+        {
+        case BOOLEAN:
+            return number.doubleValue() != 0;
+        case BYTE:
+            return (byte)integral(number, raw, Byte.MIN_VALUE, Byte.MAX_VALUE);
+        case SHORT:
+            return (short)integral(number, raw, Short.MIN_VALUE, Short.MAX_VALUE);
+        case INT:
+            return (int)integral(number, raw, Integer.MIN_VALUE, Integer.MAX_VALUE);
+        case LONG:
+            return integral(number, raw, Long.MIN_VALUE, Long.MAX_VALUE);
+        case FLOAT:
+            return number.floatValue();
+        case DOUBLE:
+            return number.doubleValue();
+        case BIG_INTEGER:
+            if(number instanceof BigInteger)
+            {
+                return number;
+            }
+            if(number instanceof Double)
+            {
+                try
+                {
+                    return BigDecimal.valueOf(number.doubleValue()).toBigIntegerExact();
+                }
+                catch(ArithmeticException e)
+                {
+                    throw new TypeMismatchException(raw, Double.class);
+                }
+            }
+            return BigInteger.valueOf(number.longValue());
+        case BIG_DECIMAL:
+            return (number instanceof Double) ? BigDecimal.valueOf(number.doubleValue()) : new BigDecimal(number.toString());
+        case NUMBER:
+            return number;
+        default:
+            throw new TypeMismatchException(raw, number.getClass());
+        }
+    }
+
+    /**
+     * Returns an integral value which fits in {@code min} to {@code max}, a whole float is accepted too.
+     * @throws TypeMismatchException If the value would be truncated.
+     */
+    static long integral(Number number, Class<?> raw, long min, long max)
+    {
+        final long value;
+        if(number instanceof Integer || number instanceof Long)
+        {
+            value= number.longValue();
+        }
+        else if(number instanceof BigInteger && ((BigInteger)number).bitLength() < 64)
+        {
+            value= number.longValue();
+        }
+        else if(number instanceof Double && number.doubleValue() == Math.rint(number.doubleValue()) && Math.abs(number.doubleValue()) < 0x1p63)
+        {
+            value= number.longValue();
+        }
+        else
+        {
+            throw new TypeMismatchException(raw, number.getClass());
+        }
+
+        if(value < min || value > max)
+        {
+            throw new TypeMismatchException(raw, number.getClass());
+        }
+        return value;
+    }
+
+    private Object readMap(VimsonParser parser, VimsonToken token, Class<?> raw, Type valueType)
+        throws IOException
+    {
+        if(token != VimsonToken.START_DICTIONARY)
+        {
+            throw new TypeMismatchException(raw, VimsonParser.valueType(token));
+        }
+
+        @SuppressWarnings("unchecked")
+        final Map<String, Object> map= (Map<String, Object>)this.newContainer(raw);
+        int size= 0;
+        while(parser.nextToken() == VimsonToken.FIELD_NAME)
+        {
+            parser.checkContainerSize(size++, true);
+
+            final String key= parser.getText();
+
+            parser.nextToken();
+            map.put(key, this.read(parser, valueType));
+        }
+        return map;
+    }
+
+    private Object readCollection(VimsonParser parser, VimsonToken token, Class<?> raw, Type elementType)
+        throws IOException
+    {
+        if(token != VimsonToken.START_LIST)
+        {
+            throw new TypeMismatchException(raw, VimsonParser.valueType(token));
+        }
+
+        @SuppressWarnings("unchecked")
+        final Collection<Object> collection= (Collection<Object>)this.newContainer(raw);
+        int size= 0;
+        while(parser.nextToken() != VimsonToken.END_LIST)
+        {
+            parser.checkContainerSize(size++, false);
+            collection.add(this.read(parser, elementType));
+        }
+        return collection;
+    }
+
+    private Object readArray(VimsonParser parser, VimsonToken token, Class<?> raw, Type componentType)
+        throws IOException
+    {
+        if(token != VimsonToken.START_LIST)
+        {
+            throw new TypeMismatchException(raw, VimsonParser.valueType(token));
+        }
+
+        final List<Object> elements= new ArrayList<Object>();
+        while(parser.nextToken() != VimsonToken.END_LIST)
+        {
+            parser.checkContainerSize(elements.size(), false);
+            elements.add(this.read(parser, componentType));
+        }
+
+        final Object array= Array.newInstance(raw.getComponentType(), elements.size());
+        for(int i= 0; i < elements.size(); ++i)
+        {
+            Array.set(array, i, elements.get(i));
+        }
+        return array;
+    }
+
+    private Object readBean(VimsonParser parser, Class<?> raw)
+        throws IOException
+    {
+        final BeanType bean= this.describe(raw);
+        final Object instance= bean.newInstance();
+
+        int size= 0;
+        while(parser.nextToken() == VimsonToken.FIELD_NAME)
+        {
+            parser.checkContainerSize(size++, true);
+
+            final Setter setter= bean.setters.get(parser.getText());
+            if(setter == null)
+            {
+                parser.skipValue();
+                continue;
+            }
+
+            parser.nextToken();
+            setter.set(instance, this.read(parser, setter.type));
+        }
+        return instance;
+    }
+
+    private Object newContainer(Class<?> raw)
+    {
+        if(!raw.isInterface() && !Modifier.isAbstract(raw.getModifiers()))
+        {
+            return this.describe(raw).newInstance();
+        }
+        if(raw.isAssignableFrom(ArrayList.class))
+        {
+            return new ArrayList<Object>();
+        }
+        if(raw.isAssignableFrom(LinkedHashSet.class))
+        {
+            return new LinkedHashSet<Object>();
+        }
+        if(raw.isAssignableFrom(TreeSet.class))
+        {
+            return new TreeSet<Object>();
+        }
+        if(raw.isAssignableFrom(LinkedHashMap.class))
+        {
+            return new LinkedHashMap<String, Object>();
+        }
+        if(raw.isAssignableFrom(TreeMap.class))
+        {
+            return new TreeMap<String, Object>();
+        }
+        throw new UnsupportedTypeException(raw);
+    }
+
+    private Object enumConstant(Class<?> raw, String name)
+    {
+        Map<String, Object> constants= this.enums.get(raw);
+        if(constants == null)
+        {
+            constants= new HashMap<String, Object>();
+            for(final Object constant : raw.getEnumConstants())
+            {
+                constants.put(((Enum<?>)constant).name(), constant);
+            }
+            this.enums.putIfAbsent(raw, constants);
+        }
+
+        final Object constant= constants.get(name);
+        if(constant == null)
+        {
+            throw new VimsonException("No enum constant " + raw.getName() + "." + name);
+        }
+        return constant;
+    }
+
+    private BeanType describe(Class<?> raw)
+    {
+        final BeanType cached= this.beans.get(raw);
+
+        if(cached != null)
+        {
+            return cached;
+        }
+
+        final BeanType bean= new BeanType(raw);
+        final BeanType raced= this.beans.putIfAbsent(raw, bean);
+        return (raced != null) ? raced : bean;
+    }
+
+    private static Type typeArgument(Type type, int index)
+    {
+        if(type instanceof ParameterizedType)
+        {
+            final Type[] arguments= ((ParameterizedType)type).getActualTypeArguments();
+            if(index < arguments.length)
+            {
+                return arguments[index];
+            }
+        }
+        // raw types and subclasses which bind arguments are read as is
+        return Object.class;
+    }
+
+    private static Type componentType(Type type)
+    {
+        if(type instanceof GenericArrayType)
+        {
+            return ((GenericArrayType)type).getGenericComponentType();
+        }
+        return rawClass(type).getComponentType();
+    }
+
+    private static <T extends AccessibleObject> T accessible(T member)
+    {
+        try
+        {
+            member.setAccessible(true);
+        }
+        catch(RuntimeException e)
+        {
+            // keeps it as is, e.g. under a security manager
+        }
+        return member;
+    }
+
+    private static enum Scalar
+    {
+        BOOLEAN,
+        BYTE,
+        SHORT,
+        INT,
+        LONG,
+        FLOAT,
+        DOUBLE,
+        BIG_INTEGER,
+        BIG_DECIMAL,
+        NUMBER,
+        OTHER,
+        ;
+
+        static Scalar of(Class<?> type)
+        {
+            if(type == int.class || type == Integer.class)
+            {
+                return INT;
+            }
+            if(type == long.class || type == Long.class)
+            {
+                return LONG;
+            }
+            if(type == double.class || type == Double.class)
+            {
+                return DOUBLE;
+            }
+            if(type == boolean.class || type == Boolean.class)
+            {
+                return BOOLEAN;
+            }
+            if(type == float.class || type == Float.class)
+            {
+                return FLOAT;
+            }
+            if(type == short.class || type == Short.class)
+            {
+                return SHORT;
+            }
+            if(type == byte.class || type == Byte.class)
+            {
+                return BYTE;
+            }
+            if(type == BigInteger.class)
+            {
+                return BIG_INTEGER;
+            }
+            if(type == BigDecimal.class)
+            {
+                return BIG_DECIMAL;
+            }
+            if(type == Number.class)
+            {
+                return NUMBER;
+            }
+            return OTHER;
+        }
+    }
+
+    /**
+     * A constructor and writable properties of a class, which are looked up once.
+     */
+    private static final class BeanType
+    {
+        public BeanType(Class<?> type)
+        {
+            this.type= type;
+
+            Constructor<?> constructor= null;
+            try
+            {
+                constructor= accessible(type.getDeclaredConstructor());
+            }
+            catch(NoSuchMethodException e)
+            {
+                // fails on creating an instance, containers may be used without it
+            }
+            this.constructor= constructor;
+
+            final Map<String, Setter> setters= new HashMap<String, Setter>();
+            for(final Field field : type.getFields())
+            {
+                final int modifiers= field.getModifiers();
+                if(!Modifier.isStatic(modifiers) && !Modifier.isFinal(modifiers) && !Modifier.isTransient(modifiers))
+                {
+                    setters.put(field.getName(), new FieldSetter(accessible(field)));
+                }
+            }
+            for(final Method method : type.getMethods())
+            {
+                final String name= method.getName();
+                if(name.length() > 3 && name.startsWith("set") && method.getParameterTypes().length == 1
+                        && !Modifier.isStatic(method.getModifiers()) && !method.isBridge())
+                {
+                    setters.put(Introspector.decapitalize(name.substring(3)), new MethodSetter(accessible(method)));
+                }
+            }
+            this.setters= setters;
+        }
+
+        public Object newInstance()
+        {
+            if(this.constructor == null)
+            {
+                throw new UnsupportedTypeException(this.type);
+            }
+
+            try
+            {
+                return this.constructor.newInstance();
+            }
+            catch(InstantiationException e)
+            {
+                throw new UnsupportedTypeException(this.type);
+            }
+            catch(IllegalAccessException e)
+            {
+                throw new VimsonException(e);
+            }
+            catch(InvocationTargetException e)
+            {
+                throw new VimsonException(e.getCause());
+            }
+        }
+
+        private final Class<?> type;
+
+        private final Constructor<?> constructor;
+
+        /**
+         * Properties by name, setters take precedence over fields.
+         */
+        private final Map<String, Setter> setters;
+    }
+
+    private abstract static class Setter
+    {
+        public Setter(Type type)
+        {
+            this.type= type;
+        }
+
+        public abstract void set(Object bean, Object value);
+
+        protected final Type type;
+    }
+
+    private static final class FieldSetter
+        extends Setter
+    {
+        public FieldSetter(Field field)
+        {
+            super(field.getGenericType());
+            this.field= field;
+        }
+
+        @Override
+        public void set(Object bean, Object value)
+        {
+            try
+            {
+                this.field.set(bean, value);
+            }
+            catch(IllegalAccessException e)
+            {
+                throw new VimsonException(e);
+            }
+        }
+
+        private final Field field;
+    }
+
+    private static final class MethodSetter
+        extends Setter
+    {
+        public MethodSetter(Method setter)
+        {
+            super(setter.getGenericParameterTypes()[0]);
+            this.setter= setter;
+        }
+
+        @Override
+        public void set(Object bean, Object value)
+        {
+            try
+            {
+                this.setter.invoke(bean, value);
+            }
+            catch(IllegalAccessException e)
+            {
+                throw new VimsonException(e);
+            }
+            catch(InvocationTargetException e)
+            {
+                throw new VimsonException(e.getCause());
+            }
+        }
+
+        private final Method setter;
+    }
+
+    private final ConcurrentMap<Class<?>, BeanType> beans= new ConcurrentHashMap<Class<?>, BeanType>();
+
+    private final ConcurrentMap<Class<?>, Map<String, Object>> enums= new ConcurrentHashMap<Class<?>, Map<String, Object>>();
+}
@@ -0,0 +1,117 @@
+package jp.michikusa.chitose.lolivimson.core;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A lock-free pool of char and byte buffers, which are {@link #BUFFER_SIZE} long.
+ *
+ * <p>
+ * Buffers are kept in slots of atomic arrays. A thread starts probing at a slot chosen by its id, so concurrent
+ * threads mostly touch different slots, and takes or puts a buffer by a single atomic operation.
+ * It doesn't depend on thread-locals, so it works for short-lived or virtual threads too.
+ * When all probed slots are empty a new buffer is allocated, when they are full a returned buffer is dropped.
+ * </p>
+ */
+final class BufferPool
+{
+    public static final int BUFFER_SIZE= 8192;
+
+    /**
+     * @param slots The maximum number of buffers of each kind, rounded up to a power of two.
+     */
+    public BufferPool(int slots)
+    {
+        int n= 1;
+        while(n < slots)
+        {
+            n<<= 1;
+        }
+        this.chars= new AtomicReferenceArray<char[]>(n);
+        this.bytes= new AtomicReferenceArray<byte[]>(n);
+        this.mask= n - 1;
+    }
+
+    public char[] acquireChars()
+    {
+        final int start= this.start();
+        for(int i= 0; i < PROBES; ++i)
+        {
+            final char[] buffer= this.chars.getAndSet((start + i) & this.mask, null);
+            if(buffer != null)
+            {
+                return buffer;
+            }
+        }
+        return new char[BUFFER_SIZE];
+    }
+
+    /**
+     * Returns a buffer, buffers of other sizes are dropped.
+     */
+    public void releaseChars(char[] buffer)
+    {
+        if(buffer.length != BUFFER_SIZE)
+        {
+            return;
+        }
+
+        final int start= this.start();
+        for(int i= 0; i < PROBES; ++i)
+        {
+            if(this.chars.compareAndSet((start + i) & this.mask, null, buffer))
+            {
+                return;
+            }
+        }
+    }
+
+    public byte[] acquireBytes()
+    {
+        final int start= this.start();
+        for(int i= 0; i < PROBES; ++i)
+        {
+            final byte[] buffer= this.bytes.getAndSet((start + i) & this.mask, null);
+            if(buffer != null)
+            {
+                return buffer;
+            }
+        }
+        return new byte[BUFFER_SIZE];
+    }
+
+    /**
+     * Returns a buffer, buffers of other sizes are dropped.
+     */
+    public void releaseBytes(byte[] buffer)
+    {
+        if(buffer.length != BUFFER_SIZE)
+        {
+            return;
+        }
+
+        final int start= this.start();
+        for(int i= 0; i < PROBES; ++i)
+        {
+            if(this.bytes.compareAndSet((start + i) & this.mask, null, buffer))
+            {
+                return;
+            }
+        }
+    }
+
+    private int start()
+    {
+        final long id= Thread.currentThread().getId();
+
+        // spreads sequential ids
+        return (int)(id * 0x9E3779B97F4A7C15L >>> 40) & this.mask;
+    }
+
+    private static final int PROBES= 4;
+
+    private final AtomicReferenceArray<char[]> chars;
+
+    private final AtomicReferenceArray<byte[]> bytes;
+
+    private final int mask;
+}
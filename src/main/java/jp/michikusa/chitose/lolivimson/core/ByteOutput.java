@@ -0,0 +1,335 @@
+package jp.michikusa.chitose.lolivimson.core;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+
+import static jp.michikusa.chitose.lolivimson.util.Preconditions.checkNotNull;
+
+/**
+ * Encodes chars into a reusable byte buffer, subclasses hand it to the target on {@link #drain()}.
+ * Implementations must make some room in the buffer on each {@link #drain()}, possibly by replacing it with a larger one.
+ */
+abstract class ByteOutput
+    extends VimsonOutput
+{
+    public ByteOutput(Charset charset)
+    {
+        this(charset, new byte[BUFFER_SIZE]);
+    }
+
+    public ByteOutput(Charset charset, byte[] buffer)
+    {
+        this.outBuffer= checkNotNull(buffer);
+        this.utf8= checkNotNull(charset).equals(UTF_8);
+        this.encoder= this.utf8 ? null : charset.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    }
+
+    /**
+     * Writes a char, a high surrogate is kept until its low surrogate arrives, since a pair can't be encoded in halves.
+     */
+    @Override
+    public void write(char c)
+        throws IOException
+    {
+        if(this.highSurrogate != 0)
+        {
+            final char high= this.highSurrogate;
+
+            this.highSurrogate= 0;
+            if(Character.isLowSurrogate(c))
+            {
+                this.encode(high, c);
+                return;
+            }
+            this.encode(high);
+        }
+
+        if(this.utf8 && c < 0x80)
+        {
+            if(this.outTail >= this.outBuffer.length)
+            {
+                this.drain();
+            }
+            this.outBuffer[this.outTail++]= (byte)c;
+        }
+        else if(Character.isHighSurrogate(c))
+        {
+            this.highSurrogate= c;
+        }
+        else
+        {
+            this.encode(c);
+        }
+    }
+
+    @Override
+    public void write(CharSequence s, int start, int end)
+        throws IOException
+    {
+        int i= start;
+
+        if(this.highSurrogate != 0 && i < end)
+        {
+            this.write(s.charAt(i++));
+        }
+        if(this.utf8)
+        {
+            this.writeUtf8(s, i, end);
+        }
+        else
+        {
+            this.writeEncoded(s, i, end);
+        }
+    }
+
+    @Override
+    public void write(char[] c, int offset, int length)
+        throws IOException
+    {
+        final int end= offset + length;
+        int i= offset;
+
+        if(this.highSurrogate != 0 && i < end)
+        {
+            this.write(c[i++]);
+        }
+        if(this.utf8)
+        {
+            // short ascii runs such as digits are stored directly
+            if(end - i > this.outBuffer.length - this.outTail)
+            {
+                this.drain();
+            }
+            final byte[] buf= this.outBuffer;
+            final int asciiEnd= Math.min(end, i + buf.length - this.outTail);
+            int tail= this.outTail;
+            while(i < asciiEnd && c[i] < 0x80)
+            {
+                buf[tail++]= (byte)c[i++];
+            }
+            this.outTail= tail;
+        }
+        if(i < end)
+        {
+            // the rest in a single pass, so that surrogate pairs are kept together
+            this.write(CharBuffer.wrap(c), i, end);
+        }
+    }
+
+    @Override
+    public void write(SerializedName name)
+        throws IOException
+    {
+        if(!this.utf8)
+        {
+            super.write(name);
+            return;
+        }
+
+        final byte[] bytes= name.asQuotedUtf8();
+        if(bytes.length > this.outBuffer.length - this.outTail)
+        {
+            this.drain();
+            if(bytes.length > this.outBuffer.length - this.outTail)
+            {
+                super.write(name);
+                return;
+            }
+        }
+        System.arraycopy(bytes, 0, this.outBuffer, this.outTail, bytes.length);
+        this.outTail+= bytes.length;
+    }
+
+    @Override
+    public void release(BufferPool pool)
+    {
+        pool.releaseBytes(this.outBuffer);
+    }
+
+    /**
+     * Writes a high surrogate which is still waiting for its low surrogate as an unpaired one, before flushing.
+     */
+    void endSurrogate()
+        throws IOException
+    {
+        if(this.highSurrogate != 0)
+        {
+            final char high= this.highSurrogate;
+
+            this.highSurrogate= 0;
+            this.encode(high);
+        }
+    }
+
+    /**
+     * Discards buffered bytes and the encoder state.
+     */
+    void discard()
+    {
+        this.outTail= 0;
+        this.highSurrogate= 0;
+        if(this.encoder != null)
+        {
+            this.encoder.reset();
+        }
+    }
+
+    /**
+     * Encodes chars straight into the output buffer, with a fast path for ASCII runs.
+     */
+    private void writeUtf8(CharSequence value, int start, int end)
+        throws IOException
+    {
+        byte[] buf= this.outBuffer;
+        int i= start;
+
+        while(i < end)
+        {
+            if(buf.length - this.outTail < 4)
+            {
+                this.drain();
+                buf= this.outBuffer;
+            }
+
+            // ascii run, bounded by the free space
+            int tail= this.outTail;
+            final int asciiEnd= Math.min(end, i + buf.length - tail);
+            char c= 0;
+            while(i < asciiEnd && (c= value.charAt(i)) < 0x80)
+            {
+                buf[tail++]= (byte)c;
+                ++i;
+            }
+            this.outTail= tail;
+
+            if(i == asciiEnd || buf.length - tail < 4)
+            {
+                continue;
+            }
+
+            ++i;
+            if(c < 0x800)
+            {
+                buf[tail++]= (byte)(0xc0 | (c >> 6));
+                buf[tail++]= (byte)(0x80 | (c & 0x3f));
+            }
+            else if(Character.isHighSurrogate(c) && i < end && Character.isLowSurrogate(value.charAt(i)))
+            {
+                final int cp= Character.toCodePoint(c, value.charAt(i++));
+                buf[tail++]= (byte)(0xf0 | (cp >> 18));
+                buf[tail++]= (byte)(0x80 | ((cp >> 12) & 0x3f));
+                buf[tail++]= (byte)(0x80 | ((cp >> 6) & 0x3f));
+                buf[tail++]= (byte)(0x80 | (cp & 0x3f));
+            }
+            else if(c >= Character.MIN_SURROGATE && c <= Character.MAX_SURROGATE)
+            {
+                // unpaired surrogate, same as String#getBytes()
+                buf[tail++]= (byte)'?';
+            }
+            else
+            {
+                buf[tail++]= (byte)(0xe0 | (c >> 12));
+                buf[tail++]= (byte)(0x80 | ((c >> 6) & 0x3f));
+                buf[tail++]= (byte)(0x80 | (c & 0x3f));
+            }
+            this.outTail= tail;
+        }
+    }
+
+    private void encode(char c)
+        throws IOException
+    {
+        this.chars.clear();
+        this.chars.put(c).flip();
+        this.write(this.chars, 0, 1);
+    }
+
+    private void encode(char high, char low)
+        throws IOException
+    {
+        this.chars.clear();
+        this.chars.put(high).put(low).flip();
+        this.write(this.chars, 0, 2);
+    }
+
+    private void writeEncoded(CharSequence value, int start, int end)
+        throws IOException
+    {
+        final CharBuffer in;
+        if(value instanceof CharBuffer)
+        {
+            // indexes are relative to the position, the caller's buffer is left as it is
+            in= ((CharBuffer)value).duplicate();
+            final int base= in.position();
+            in.limit(base + end).position(base + start);
+        }
+        else
+        {
+            in= CharBuffer.wrap(value, start, end);
+        }
+        ByteBuffer bytes= ByteBuffer.wrap(this.outBuffer, this.outTail, this.outBuffer.length - this.outTail);
+
+        for(;;)
+        {
+            final CoderResult result= this.encoder.encode(in, bytes, false);
+
+            this.outTail= bytes.position();
+            if(result.isUnderflow())
+            {
+                if(in.hasRemaining())
+                {
+                    // a high surrogate at the end is unpaired, since callers pass whole ranges
+                    this.writeReplacement();
+                }
+                return;
+            }
+            if(result.isOverflow())
+            {
+                this.drain();
+                bytes= ByteBuffer.wrap(this.outBuffer, this.outTail, this.outBuffer.length - this.outTail);
+            }
+            else
+            {
+                result.throwException();
+            }
+        }
+    }
+
+    private void writeReplacement()
+        throws IOException
+    {
+        final byte[] replacement= this.encoder.replacement();
+
+        if(replacement.length > this.outBuffer.length - this.outTail)
+        {
+            this.drain();
+        }
+        System.arraycopy(replacement, 0, this.outBuffer, this.outTail, replacement.length);
+        this.outTail+= replacement.length;
+    }
+
+    private static final Charset UTF_8= Charset.forName("UTF-8");
+
+    static final int BUFFER_SIZE= BufferPool.BUFFER_SIZE;
+
+    /** Encoded bytes which are not handed to the target yet, up to {@link #outTail}; {@link #drain()} may replace it. */
+    byte[] outBuffer;
+
+    int outTail;
+
+    private final boolean utf8;
+
+    private final CharsetEncoder encoder;
+
+    private final CharBuffer chars= CharBuffer.allocate(2);
+
+    /** A high surrogate which {@link #write(char)} keeps until the next char, or {@code 0}. */
+    private char highSurrogate;
+}
@@ -0,0 +1,219 @@
+package jp.michikusa.chitose.lolivimson.core;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+import static jp.michikusa.chitose.lolivimson.util.Preconditions.checkNotNull;
+
+/**
+ * Encodes chars into a byte buffer, and writes it to a {@link WritableByteChannel}.
+ *
+ * <p>
+ * Non-blocking channels may accept only a part of the buffer, the rest is kept and retried on the next drain.
+ * A drain never waits for such a channel, the buffer grows instead when the channel can't keep up.
+ * The caller waits for {@link java.nio.channels.SelectionKey#OP_WRITE} on its own selector,
+ * while {@link #hasPending()}, and calls {@link #tryFlush()} again.
+ * Other channels are written in a loop on {@link #flush()}.
+ * </p>
+ *
+ * <p>
+ * A heap buffer is handed to the channel by wrapping the encoding buffer.
+ * A direct buffer is borrowed from a per-thread pool and returned on {@link #close()},
+ * bytes are copied into it in bulk once, which the JDK would do anyway for a heap buffer.
+ * </p>
+ */
+class ChannelOutput
+    extends ByteOutput
+{
+    public ChannelOutput(WritableByteChannel out, Charset charset, boolean direct)
+    {
+        super(charset);
+        this.out= checkNotNull(out);
+        this.nonBlocking= (out instanceof SelectableChannel) && !((SelectableChannel)out).isBlocking();
+        this.heap= ByteBuffer.wrap(this.outBuffer);
+        if(direct)
+        {
+            this.direct= borrowDirectBuffer();
+            this.direct.clear().flip();
+        }
+        else
+        {
+            this.direct= null;
+        }
+    }
+
+    /**
+     * Returns whether some bytes are not accepted by the channel yet.
+     */
+    @Override
+    public boolean hasPending()
+    {
+        return this.outTail > this.head;
+    }
+
+    /**
+     * Writes as much as the channel accepts, without waiting for it.
+     * @return {@code true} if no bytes are pending.
+     */
+    @Override
+    public boolean tryFlush()
+        throws IOException
+    {
+        this.endSurrogate();
+        while(this.hasPending())
+        {
+            if(this.writeSome() == 0)
+            {
+                return false;
+            }
+        }
+        this.head= this.outTail= 0;
+        return true;
+    }
+
+    /**
+     * Writes all bytes to the channel.
+     * A non-blocking channel is written only as far as it accepts, see {@link #tryFlush()}.
+     */
+    @Override
+    public void flush()
+        throws IOException
+    {
+        while(!this.tryFlush() && !this.nonBlocking)
+        {
+            // the channel has no readiness to wait for
+            Thread.yield();
+        }
+    }
+
+    /**
+     * Flushes and closes the channel.
+     * @throws IOException If bytes are still pending on a non-blocking channel, the channel is closed anyway.
+     */
+    @Override
+    public void close()
+        throws IOException
+    {
+        try
+        {
+            this.flush();
+            if(this.hasPending())
+            {
+                throw new IOException((this.outTail - this.head) + " bytes are not written to the non-blocking channel");
+            }
+        }
+        finally
+        {
+            this.out.close();
+            if(this.direct != null)
+            {
+                DIRECT_BUFFERS.set(this.direct);
+            }
+        }
+    }
+
+    @Override
+    public void drain()
+        throws IOException
+    {
+        if(this.nonBlocking)
+        {
+            this.tryFlush();
+        }
+        else
+        {
+            this.flush();
+        }
+        if(this.head > 0)
+        {
+            final int pending= this.outTail - this.head;
+            System.arraycopy(this.outBuffer, this.head, this.outBuffer, 0, pending);
+            this.head= 0;
+            this.outTail= pending;
+        }
+        if(this.outTail > this.outBuffer.length / 2)
+        {
+            // the channel can't keep up, keeps the pending bytes rather than waiting for it
+            this.outBuffer= Arrays.copyOf(this.outBuffer, this.outBuffer.length * 2);
+            this.heap= ByteBuffer.wrap(this.outBuffer);
+        }
+    }
+
+    /**
+     * Makes a single write of the pending bytes.
+     * @return The number of written bytes.
+     */
+    private int writeSome()
+        throws IOException
+    {
+        final int written;
+
+        if(this.direct == null)
+        {
+            this.heap.limit(this.outTail).position(this.head);
+            written= this.out.write(this.heap);
+        }
+        else
+        {
+            this.stage();
+            written= this.out.write(this.direct);
+        }
+        this.head+= written;
+        return written;
+    }
+
+    /**
+     * Appends bytes which are not in the direct buffer yet, unwritten bytes in it are kept as they are.
+     */
+    private void stage()
+    {
+        final ByteBuffer direct= this.direct;
+        final int from= this.head + direct.remaining();
+        final int fresh= this.outTail - from;
+
+        if(fresh == 0)
+        {
+            return;
+        }
+        if(direct.capacity() - direct.limit() < fresh && direct.position() > 0)
+        {
+            direct.compact().flip();
+        }
+
+        final int position= direct.position();
+        final int length= Math.min(fresh, direct.capacity() - direct.limit());
+        direct.position(direct.limit()).limit(direct.limit() + length);
+        direct.put(this.outBuffer, from, length);
+        direct.position(position);
+    }
+
+    private static ByteBuffer borrowDirectBuffer()
+    {
+        final ByteBuffer pooled= DIRECT_BUFFERS.get();
+
+        if(pooled != null)
+        {
+            DIRECT_BUFFERS.set(null);
+            return pooled;
+        }
+        return ByteBuffer.allocateDirect(BUFFER_SIZE);
+    }
+
+    private static final ThreadLocal<ByteBuffer> DIRECT_BUFFERS= new ThreadLocal<ByteBuffer>();
+
+    private final WritableByteChannel out;
+
+    private final boolean nonBlocking;
+
+    private final ByteBuffer direct;
+
+    /** Wraps {@link #outBuffer}. */
+    private ByteBuffer heap;
+
+    /** Bytes before it are written to the channel, it's moved back to {@code 0} on drain. */
+    private int head;
+}
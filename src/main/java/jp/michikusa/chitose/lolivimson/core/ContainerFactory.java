@@ -0,0 +1,114 @@
+package jp.michikusa.chitose.lolivimson.core;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import jp.michikusa.chitose.lolivimson.util.ArrayMap;
+
+/**
+ * Creates containers for decoded dictionaries and lists.
+ * {@link VimsonParser} collects all elements of a container before creating it,
+ * so the exact number of elements is always known.
+ */
+public abstract class ContainerFactory
+{
+    /**
+     * Dictionaries up to this size are {@link ArrayMap}s in {@link #COMPACT}.
+     */
+    public static final int SMALL_DICTIONARY_SIZE= 8;
+
+    /**
+     * Memory-lean containers, it is the default.
+     * Lists are exactly sized {@link ArrayList}s, small dictionaries are {@link ArrayMap}s
+     * and larger ones are pre-sized {@link HashMap}s.
+     */
+    public static final ContainerFactory COMPACT= new ContainerFactory(){
+        @Override
+        public Map<String, Object> createDictionary(int size)
+        {
+            if(size <= SMALL_DICTIONARY_SIZE)
+            {
+                return new ArrayMap<String, Object>(size);
+            }
+            return new HashMap<String, Object>(capacity(size));
+        }
+
+        @Override
+        public List<Object> createList(int size)
+        {
+            return new ArrayList<Object>(size);
+        }
+    };
+
+    /**
+     * Pre-sized {@link HashMap}s and {@link ArrayList}s.
+     */
+    public static final ContainerFactory HASHED= new ContainerFactory(){
+        @Override
+        public Map<String, Object> createDictionary(int size)
+        {
+            return new HashMap<String, Object>(capacity(size));
+        }
+
+        @Override
+        public List<Object> createList(int size)
+        {
+            return new ArrayList<Object>(size);
+        }
+    };
+
+    /**
+     * Pre-sized {@link LinkedHashMap}s which preserve the order of keys, and {@link ArrayList}s.
+     */
+    public static final ContainerFactory ORDERED= new ContainerFactory(){
+        @Override
+        public Map<String, Object> createDictionary(int size)
+        {
+            return new LinkedHashMap<String, Object>(capacity(size));
+        }
+
+        @Override
+        public List<Object> createList(int size)
+        {
+            return new ArrayList<Object>(size);
+        }
+    };
+
+    /**
+     * {@link ArrayMap}s for all dictionaries, which preserve the order of keys, and {@link ArrayList}s.
+     */
+    public static final ContainerFactory ARRAY_BACKED= new ContainerFactory(){
+        @Override
+        public Map<String, Object> createDictionary(int size)
+        {
+            return new ArrayMap<String, Object>(size);
+        }
+
+        @Override
+        public List<Object> createList(int size)
+        {
+            return new ArrayList<Object>(size);
+        }
+    };
+
+    /**
+     * Creates an empty dictionary which will hold {@code size} entries.
+     */
+    public abstract Map<String, Object> createDictionary(int size);
+
+    /**
+     * Creates an empty list which will hold {@code size} elements.
+     */
+    public abstract List<Object> createList(int size);
+
+    /**
+     * Returns a {@link HashMap} capacity which holds {@code size} entries without rehashing.
+     */
+    protected static int capacity(int size)
+    {
+        return (int)(size / 0.75f) + 1;
+    }
+}
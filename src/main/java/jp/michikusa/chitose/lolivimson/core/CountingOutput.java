@@ -0,0 +1,103 @@
+package jp.michikusa.chitose.lolivimson.core;
+
+import java.io.IOException;
+
+import static jp.michikusa.chitose.lolivimson.util.Preconditions.checkNotNull;
+
+/**
+ * Counts chars which are written to another output, only while a {@link VimsonListener} is set.
+ */
+class CountingOutput
+    extends VimsonOutput
+{
+    public CountingOutput(VimsonOutput delegate)
+    {
+        this.delegate= checkNotNull(delegate);
+    }
+
+    @Override
+    public void write(char c)
+        throws IOException
+    {
+        ++this.count;
+        this.delegate.write(c);
+    }
+
+    @Override
+    public void write(CharSequence s, int start, int end)
+        throws IOException
+    {
+        this.count+= end - start;
+        this.delegate.write(s, start, end);
+    }
+
+    @Override
+    public void write(char[] c, int offset, int length)
+        throws IOException
+    {
+        this.count+= length;
+        this.delegate.write(c, offset, length);
+    }
+
+    @Override
+    public void write(SerializedName name)
+        throws IOException
+    {
+        this.count+= name.asQuotedChars().length;
+        this.delegate.write(name);
+    }
+
+    @Override
+    public void drain()
+        throws IOException
+    {
+        this.delegate.drain();
+    }
+
+    @Override
+    public boolean tryFlush()
+        throws IOException
+    {
+        return this.delegate.tryFlush();
+    }
+
+    @Override
+    public boolean hasPending()
+    {
+        return this.delegate.hasPending();
+    }
+
+    @Override
+    public void release(BufferPool pool)
+    {
+        this.delegate.release(pool);
+    }
+
+    @Override
+    public void flush()
+        throws IOException
+    {
+        this.delegate.flush();
+    }
+
+    @Override
+    public void close()
+        throws IOException
+    {
+        this.delegate.close();
+    }
+
+    public long getCount()
+    {
+        return this.count;
+    }
+
+    public VimsonOutput getDelegate()
+    {
+        return this.delegate;
+    }
+
+    private final VimsonOutput delegate;
+
+    private long count;
+}
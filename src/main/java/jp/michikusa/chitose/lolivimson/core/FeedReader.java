@@ -0,0 +1,128 @@
+package jp.michikusa.chitose.lolivimson.core;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+
+import static jp.michikusa.chitose.lolivimson.util.Preconditions.checkNotNull;
+import static jp.michikusa.chitose.lolivimson.util.Preconditions.checkState;
+
+/**
+ * A {@link Reader} over bytes which are pushed by {@link #feed(ByteBuffer)}.
+ * Reading beyond the fed bytes throws {@link #NEED_MORE_INPUT} instead of blocking,
+ * a multi-byte sequence which is split between feeds is kept until the rest arrives.
+ */
+class FeedReader
+    extends Reader
+{
+    public FeedReader(Charset charset)
+    {
+        this.decoder= checkNotNull(charset).newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    }
+
+    public void feed(ByteBuffer src)
+    {
+        checkState(!this.ended);
+
+        if(this.bytes.capacity() - this.bytes.limit() < src.remaining())
+        {
+            this.bytes.compact();
+            if(this.bytes.remaining() < src.remaining())
+            {
+                final ByteBuffer grown= ByteBuffer.allocate(Math.max(this.bytes.capacity() * 2, this.bytes.position() + src.remaining()));
+                this.bytes.flip();
+                grown.put(this.bytes);
+                this.bytes= grown;
+            }
+            this.bytes.put(src).flip();
+        }
+        else
+        {
+            // appends after the unread bytes
+            final int position= this.bytes.position();
+            this.bytes.position(this.bytes.limit()).limit(this.bytes.capacity());
+            this.bytes.put(src).flip().position(position);
+        }
+    }
+
+    public void end()
+    {
+        this.ended= true;
+    }
+
+    public boolean isEnded()
+    {
+        return this.ended;
+    }
+
+    @Override
+    public int read(char[] cbuf, int off, int len)
+        throws IOException
+    {
+        if(len == 0)
+        {
+            return 0;
+        }
+        if(this.flushed)
+        {
+            return -1;
+        }
+
+        final CharBuffer out= CharBuffer.wrap(cbuf, off, len);
+        final CoderResult result= this.decoder.decode(this.bytes, out, this.ended);
+        if(result.isError())
+        {
+            result.throwException();
+        }
+        if(this.ended && result.isUnderflow() && this.decoder.flush(out).isUnderflow())
+        {
+            this.flushed= true;
+        }
+
+        final int n= out.position() - off;
+        if(n > 0)
+        {
+            return n;
+        }
+        if(this.flushed)
+        {
+            return -1;
+        }
+        throw NEED_MORE_INPUT;
+    }
+
+    @Override
+    public void close()
+    {
+    }
+
+    /**
+     * Thrown when all fed bytes are consumed, it carries no stack trace since it is a signal rather than an error.
+     */
+    @SuppressWarnings("serial")
+    static final IOException NEED_MORE_INPUT= new IOException("Need more input"){
+        @Override
+        public synchronized Throwable fillInStackTrace()
+        {
+            return this;
+        }
+    };
+
+    private final CharsetDecoder decoder;
+
+    /**
+     * Fed bytes, in read mode.
+     */
+    private ByteBuffer bytes= (ByteBuffer)ByteBuffer.allocate(1024).flip();
+
+    private boolean ended;
+
+    private boolean flushed;
+}
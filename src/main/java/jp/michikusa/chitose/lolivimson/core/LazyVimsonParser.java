@@ -0,0 +1,221 @@
+package jp.michikusa.chitose.lolivimson.core;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.Arrays;
+
+import jp.michikusa.chitose.lolivimson.util.CharSequenceReader;
+
+import static jp.michikusa.chitose.lolivimson.util.Preconditions.checkNotNull;
+
+/**
+ * Parses a document into lazy, read-only {@link java.util.Map} and {@link java.util.List} views.
+ *
+ * <p>
+ * A single pass records the structure of the document into an int array, without decoding anything.
+ * Strings and numbers are decoded when they are accessed, so the cost depends on what is read, not on the document size.
+ * Brackets, separators and dictionary keys are validated by the pass, malformed numbers are detected when they are accessed.
+ * </p>
+ *
+ * <p>
+ * The views share a parser to decode values, so they must not be accessed by multiple threads at once.
+ * The document must not be modified while the views are in use.
+ * </p>
+ */
+public class LazyVimsonParser
+{
+    /**
+     * Parses a copy of {@code in}.
+     */
+    public Object parse(CharSequence in)
+        throws IOException
+    {
+        final char[] chars= new char[checkNotNull(in).length()];
+
+        CharSequenceReader.getChars(in, 0, chars.length, chars, 0);
+        return this.parse(chars);
+    }
+
+    /**
+     * Parses the array as is, it is shared with the returned views.
+     * @return A lazy view for a container, or a decoded scalar.
+     */
+    public Object parse(char[] in)
+        throws IOException
+    {
+        return new Tape(in, scan(checkNotNull(in))).value(0);
+    }
+
+    /**
+     * Records tokens of the first value of {@code chars}.
+     */
+    private static int[] scan(char[] chars)
+        throws IOException
+    {
+        int[] tape= new int[Math.max(16, chars.length / 4)];
+        int size= 0;
+        int[] open= new int[16];
+        int[] counts= new int[16];
+        int depth= 0;
+        int expect= EXPECT_VALUE;
+
+        int p= 0;
+        while(p < chars.length)
+        {
+            final char c= chars[p];
+            if(c == ' ' || c == '\t' || c == '\r' || c == '\n' || c == '\\')
+            {
+                // blanks and line continuations
+                ++p;
+                continue;
+            }
+            if(c == ',' || c == ':')
+            {
+                if(expect != ((c == ',') ? EXPECT_SEPARATOR : EXPECT_COLON))
+                {
+                    throw new IllegalArgumentException("Unexpected `" + c + "'");
+                }
+                expect= EXPECT_VALUE;
+                ++p;
+                continue;
+            }
+
+            if(size + 2 > tape.length)
+            {
+                tape= Arrays.copyOf(tape, tape.length * 2);
+            }
+
+            if(c == '}' || c == ']')
+            {
+                if(depth == 0 || expect == EXPECT_COLON)
+                {
+                    throw new IllegalArgumentException("Unexpected `" + c + "'");
+                }
+
+                final int start= open[--depth];
+                final int kind= tape[start * 2];
+                if(kind != ((c == '}') ? Tape.START_DICTIONARY : Tape.START_LIST))
+                {
+                    throw new IllegalArgumentException("Unexpected `" + c + "'");
+                }
+                if(kind == Tape.START_DICTIONARY && counts[depth] % 2 != 0)
+                {
+                    throw new IllegalArgumentException("Expected a value");
+                }
+
+                tape[start * 2 + 1]= size / 2;
+                tape[size++]= kind + 1;
+                tape[size++]= (kind == Tape.START_DICTIONARY) ? counts[depth] / 2 : counts[depth];
+                ++p;
+            }
+            else
+            {
+                if(expect != EXPECT_VALUE)
+                {
+                    throw new IllegalArgumentException((expect == EXPECT_COLON) ? "Expected `:'" : "Expected `,'");
+                }
+                if(depth > 0)
+                {
+                    if(tape[open[depth - 1] * 2] == Tape.START_DICTIONARY && counts[depth - 1] % 2 == 0 && c != '\'' && c != '"')
+                    {
+                        throw new IllegalArgumentException("Expected a key");
+                    }
+                    ++counts[depth - 1];
+                }
+
+                if(c == '{' || c == '[')
+                {
+                    if(depth == open.length)
+                    {
+                        open= Arrays.copyOf(open, depth * 2);
+                        counts= Arrays.copyOf(counts, depth * 2);
+                    }
+                    open[depth]= size / 2;
+                    counts[depth]= 0;
+                    ++depth;
+                    tape[size++]= (c == '{') ? Tape.START_DICTIONARY : Tape.START_LIST;
+                    tape[size++]= 0;
+                    ++p;
+                    continue;
+                }
+                else if(c == '\'' || c == '"')
+                {
+                    tape[size++]= Tape.STRING;
+                    tape[size++]= p;
+                    p= (c == '\'') ? endOfSingleQuoted(chars, p) : endOfDoubleQuoted(chars, p);
+                }
+                else
+                {
+                    tape[size++]= Tape.NUMBER;
+                    tape[size++]= p;
+                    p= endOfNumber(chars, p);
+                }
+            }
+
+            if(depth == 0)
+            {
+                return tape;
+            }
+            // a value has been completed, a key is followed by a colon
+            expect= (tape[open[depth - 1] * 2] == Tape.START_DICTIONARY && counts[depth - 1] % 2 != 0) ? EXPECT_COLON : EXPECT_SEPARATOR;
+        }
+        throw new EOFException();
+    }
+
+    private static int endOfSingleQuoted(char[] chars, int p)
+        throws EOFException
+    {
+        for(++p; p < chars.length; ++p)
+        {
+            if(chars[p] == '\'')
+            {
+                if(p + 1 < chars.length && chars[p + 1] == '\'')
+                {
+                    ++p;
+                    continue;
+                }
+                return p + 1;
+            }
+        }
+        throw new EOFException();
+    }
+
+    private static int endOfDoubleQuoted(char[] chars, int p)
+        throws EOFException
+    {
+        for(++p; p < chars.length; ++p)
+        {
+            if(chars[p] == '\\')
+            {
+                ++p;
+            }
+            else if(chars[p] == '"')
+            {
+                return p + 1;
+            }
+        }
+        throw new EOFException();
+    }
+
+    private static int endOfNumber(char[] chars, int p)
+    {
+        for(++p; p < chars.length; ++p)
+        {
+            final char c= chars[p];
+            if(c == ',' || c == ':' || c == ']' || c == '}' || c == ' ' || c == '\t' || c == '\r' || c == '\n')
+            {
+                break;
+            }
+        }
+        return p;
+    }
+
+    /**
+     * What the scan expects next in a container, blanks are allowed anywhere.
+     */
+    private static final int EXPECT_VALUE= 0;
+
+    private static final int EXPECT_SEPARATOR= 1;
+
+    private static final int EXPECT_COLON= 2;
+}
@@ -0,0 +1,154 @@
+package jp.michikusa.chitose.lolivimson.core;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+import static jp.michikusa.chitose.lolivimson.util.Preconditions.checkNotNull;
+
+/**
+ * A token parser which never blocks, the input is pushed by {@link #feedInput(byte[], int, int)} as it arrives.
+ *
+ * <p>
+ * {@link #nextToken()} returns {@link VimsonToken#NEED_MORE_INPUT} when the fed input ends in the middle of a token.
+ * The partial token, including a half-decoded multi-byte sequence, is kept and lexed again after the next feed.
+ * After {@link #endOfInput()}, it behaves same as {@link VimsonParser#nextToken()}.
+ * </p>
+ *
+ * <pre>
+ * parser.feedInput(bytes, 0, n);
+ * VimsonToken token;
+ * while((token= parser.nextToken()) != VimsonToken.NEED_MORE_INPUT)
+ * {
+ *     ...
+ * }
+ * </pre>
+ */
+public class NonBlockingVimsonParser
+{
+    public NonBlockingVimsonParser()
+    {
+        this(Charset.forName("UTF-8"));
+    }
+
+    public NonBlockingVimsonParser(Charset charset)
+    {
+        this.in= new FeedReader(charset);
+        this.parser= new VimsonParser(this.in);
+    }
+
+    public void feedInput(byte[] bytes, int offset, int length)
+    {
+        this.in.feed(ByteBuffer.wrap(bytes, offset, length));
+    }
+
+    /**
+     * Feeds all remaining bytes of {@code bytes}, which are copied.
+     */
+    public void feedInput(ByteBuffer bytes)
+    {
+        this.in.feed(checkNotNull(bytes));
+    }
+
+    /**
+     * Tells that no more input will be fed, so a number at the end can be completed.
+     */
+    public void endOfInput()
+    {
+        this.in.end();
+    }
+
+    /**
+     * Reads the next token.
+     * @return The next token, {@link VimsonToken#NEED_MORE_INPUT} if the fed input is not enough,
+     *         or {@code null} if the top-level value has been read.
+     * @see VimsonParser#nextToken()
+     */
+    public VimsonToken nextToken()
+        throws IOException
+    {
+        this.parser.mark();
+        try
+        {
+            return this.parser.nextToken();
+        }
+        catch(IOException e)
+        {
+            if(e != FeedReader.NEED_MORE_INPUT)
+            {
+                throw e;
+            }
+            this.parser.resetToMark();
+            return VimsonToken.NEED_MORE_INPUT;
+        }
+        finally
+        {
+            this.parser.unmark();
+        }
+    }
+
+    /**
+     * Skips all children of the current container, see {@link VimsonParser#skipChildren()}.
+     * @return {@code false} if the fed input is not enough, call it again after feeding.
+     */
+    public boolean skipChildren()
+        throws IOException
+    {
+        this.parser.mark();
+        try
+        {
+            this.parser.skipChildren();
+            return true;
+        }
+        catch(IOException e)
+        {
+            if(e != FeedReader.NEED_MORE_INPUT)
+            {
+                throw e;
+            }
+            this.parser.resetToMark();
+            return false;
+        }
+        finally
+        {
+            this.parser.unmark();
+        }
+    }
+
+    /**
+     * Returns the last token other than {@link VimsonToken#NEED_MORE_INPUT}.
+     */
+    public VimsonToken getCurrentToken()
+    {
+        return this.parser.getCurrentToken();
+    }
+
+    public String getText()
+    {
+        return this.parser.getText();
+    }
+
+    public Number getNumberValue()
+    {
+        return this.parser.getNumberValue();
+    }
+
+    public int getDepth()
+    {
+        return this.parser.getDepth();
+    }
+
+    public void setSymbolTable(SymbolTable symbols)
+    {
+        this.parser.setSymbolTable(symbols);
+    }
+
+    public SymbolTable getSymbolTable()
+    {
+        return this.parser.getSymbolTable();
+    }
+
+    private final FeedReader in;
+
+    private final VimsonParser parser;
+}
@@ -0,0 +1,238 @@
+package jp.michikusa.chitose.lolivimson.core;
+
+import jp.michikusa.chitose.lolivimson.VimsonException;
+
+/**
+ * Formats numbers into a caller's char array, from its tail, without intermediate objects.
+ *
+ * <p>
+ * A double is written with the fewest fraction digits which read back to the same value. A candidate {@code m / 10^k}
+ * is computed exactly by a single correctly rounded division while {@code |m| < 2^53} and {@code k <= 22},
+ * which is the same value as parsing its decimal form. Other doubles fall back to {@link Double#toString(double)}.
+ * Floats are written in vim's syntax, which needs a fraction before an exponent, e.g. {@code 1.0e10}.
+ * Vim has no literal for NaN and infinities, they are rejected rather than written as something vim can't read.
+ * </p>
+ */
+final class NumberFormatter
+{
+    /**
+     * The length of an array which any number fits in.
+     */
+    public static final int BUFFER_SIZE= 32;
+
+    /**
+     * Formats {@code value} into the tail of {@code buf}.
+     * @return The offset where the formatted number begins.
+     */
+    public static int format(long value, char[] buf)
+    {
+        return format(value, buf, buf.length);
+    }
+
+    /**
+     * Formats {@code value} into the tail of {@code buf}.
+     * @return The offset where the formatted number begins.
+     * @throws VimsonException If {@code value} is NaN or infinite.
+     */
+    public static int format(double value, char[] buf)
+    {
+        return format(value, buf, false);
+    }
+
+    /**
+     * Formats {@code value} with the fewest digits which read back to the same float.
+     * @return The offset where the formatted number begins.
+     * @throws VimsonException If {@code value} is NaN or infinite.
+     */
+    public static int format(float value, char[] buf)
+    {
+        return format(value, buf, true);
+    }
+
+    private NumberFormatter()
+    {
+        throw new AssertionError();
+    }
+
+    private static int format(double value, char[] buf, boolean single)
+    {
+        if(Double.isNaN(value) || Double.isInfinite(value))
+        {
+            throw new VimsonException("Not a finite number: " + value);
+        }
+        if(value == 0)
+        {
+            return copy((Double.doubleToRawLongBits(value) < 0) ? "-0.0" : "0.0", buf);
+        }
+
+        final boolean negative= value < 0;
+        final double abs= Math.abs(value);
+        for(int k= 0; k < POWERS_OF_TEN.length; ++k)
+        {
+            final double scaled= abs * POWERS_OF_TEN[k];
+            if(scaled >= MAX_EXACT)
+            {
+                break;
+            }
+
+            long m= (long)Math.floor(scaled + 0.5);
+            if(m != 0 && readsBack(m, k, abs, single))
+            {
+                int exponent= -k;
+                while(m % 10 == 0)
+                {
+                    m/= 10;
+                    ++exponent;
+                }
+                return decimal(negative, m, exponent, buf);
+            }
+        }
+
+        // rare, correct but allocates
+        final String s= single ? Float.toString((float)value) : Double.toString(value);
+        final int start= copy(s, buf);
+        for(int i= start; i < buf.length; ++i)
+        {
+            if(buf[i] == 'E')
+            {
+                buf[i]= 'e';
+            }
+        }
+        return start;
+    }
+
+    private static boolean readsBack(long m, int k, double abs, boolean single)
+    {
+        final double parsed= m / POWERS_OF_TEN[k];
+
+        return single ? (float)parsed == (float)abs : parsed == abs;
+    }
+
+    /**
+     * Writes {@code m * 10^exponent}, in the plain form if it is moderately sized, otherwise in the scientific form.
+     */
+    private static int decimal(boolean negative, long m, int exponent, char[] buf)
+    {
+        final int ndigits= countDigits(m);
+        // exponent of the leading digit
+        final int scientific= ndigits - 1 + exponent;
+        int p= buf.length;
+
+        if(scientific < -3 || scientific >= 7)
+        {
+            // d.ddde-x
+            p= format(Math.abs(scientific), buf, p);
+            if(scientific < 0)
+            {
+                buf[--p]= '-';
+            }
+            buf[--p]= 'e';
+            if(ndigits == 1)
+            {
+                buf[--p]= '0';
+                buf[--p]= '.';
+                buf[--p]= (char)('0' + m);
+            }
+            else
+            {
+                p= format(m, buf, p);
+                buf[p - 1]= buf[p];
+                buf[p]= '.';
+                --p;
+            }
+        }
+        else if(exponent >= 0)
+        {
+            // an integer, ddd00.0
+            buf[--p]= '0';
+            buf[--p]= '.';
+            for(int i= 0; i < exponent; ++i)
+            {
+                buf[--p]= '0';
+            }
+            p= format(m, buf, p);
+        }
+        else if(scientific >= 0)
+        {
+            // ddd.ddd, shifts the integer part to make room for a point
+            p= format(m, buf, p);
+            final int intDigits= ndigits + exponent;
+            System.arraycopy(buf, p, buf, p - 1, intDigits);
+            buf[p - 1 + intDigits]= '.';
+            --p;
+        }
+        else
+        {
+            // 0.00ddd
+            p= format(m, buf, p);
+            for(int i= 0; i < -scientific - 1; ++i)
+            {
+                buf[--p]= '0';
+            }
+            buf[--p]= '.';
+            buf[--p]= '0';
+        }
+
+        if(negative)
+        {
+            buf[--p]= '-';
+        }
+        return p;
+    }
+
+    private static int countDigits(long m)
+    {
+        int n= 1;
+        while(m >= 10)
+        {
+            m/= 10;
+            ++n;
+        }
+        return n;
+    }
+
+    /**
+     * Formats {@code value} so that it ends at {@code end}.
+     */
+    private static int format(long value, char[] buf, int end)
+    {
+        int p= end;
+        // works on negative values, so that the minimum value has no overflow
+        long n= (value < 0) ? value : -value;
+
+        do
+        {
+            final long q= n / 10;
+            buf[--p]= (char)('0' + (q * 10 - n));
+            n= q;
+        }
+        while(n != 0);
+
+        if(value < 0)
+        {
+            buf[--p]= '-';
+        }
+        return p;
+    }
+
+    private static int copy(String s, char[] buf)
+    {
+        final int start= buf.length - s.length();
+
+        s.getChars(0, s.length(), buf, start);
+        return start;
+    }
+
+    /**
+     * {@code 2^53}, integers below it are exact in double.
+     */
+    private static final double MAX_EXACT= 9007199254740992.0;
+
+    /**
+     * Powers of ten which are exact in double.
+     */
+    private static final double[] POWERS_OF_TEN= {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+        1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22,
+    };
+}
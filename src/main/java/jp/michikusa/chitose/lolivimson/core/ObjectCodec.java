@@ -1,9 +1,114 @@
 package jp.michikusa.chitose.lolivimson.core;
 
 import java.io.IOException;
+import java.lang.reflect.Type;
+
+import jp.michikusa.chitose.lolivimson.TypeMismatchException;
+import jp.michikusa.chitose.lolivimson.VimsonException;
 
 public abstract class ObjectCodec
 {
     public abstract void writeValue(VimsonGenerator vgen, Object value)
         throws IOException;
+
+    /**
+     * Reads a value from the current token of {@code parser}, or from the next token if there is no current value.
+     * The default implementation reads it into dictionaries and lists, same as {@link VimsonParser#readValue()}.
+     */
+    public Object readValue(VimsonParser parser)
+        throws IOException
+    {
+        return parser.readValue();
+    }
+
+    /**
+     * Reads a value of {@code type} from the current token of {@code parser}, see {@link VimsonParser#parse(TypeReference)}.
+     * The default implementation reads it by {@link #readValue(VimsonParser)}, and checks it against the raw type.
+     * @throws TypeMismatchException If the value is not a {@code type}.
+     */
+    public Object readValue(VimsonParser parser, Type type)
+        throws IOException
+    {
+        final Class<?> expected= BeanDecoder.rawClass(type);
+        final Object value= this.readValue(parser);
+
+        if(!expected.isInstance(value))
+        {
+            throw new TypeMismatchException(expected, value.getClass());
+        }
+        return value;
+    }
+
+    /**
+     * Returns the current number of {@code parser}, for codecs which decode scalars into a {@code type} by themselves.
+     * @throws TypeMismatchException If the current token is not a number.
+     */
+    protected static Number numberValue(VimsonParser parser, Class<?> type)
+    {
+        final VimsonToken token= parser.getCurrentToken();
+
+        if(token != VimsonToken.VALUE_NUMBER && token != VimsonToken.VALUE_FLOAT)
+        {
+            throw new TypeMismatchException(type, VimsonParser.valueType(token));
+        }
+        return parser.getNumberValue();
+    }
+
+    /**
+     * Returns the current number of {@code parser} if it fits in {@code min} to {@code max} without truncation,
+     * checked the same way as {@link BeanCodec} does.
+     * @throws TypeMismatchException If the current token is not such a number.
+     */
+    protected static long integralValue(VimsonParser parser, Class<?> type, long min, long max)
+    {
+        return BeanDecoder.integral(numberValue(parser, type), type, min, max);
+    }
+
+    /**
+     * Returns the current string of {@code parser}.
+     * @throws TypeMismatchException If the current token is not a string.
+     */
+    protected static String stringValue(VimsonParser parser, Class<?> type)
+    {
+        final VimsonToken token= parser.getCurrentToken();
+
+        if(token != VimsonToken.VALUE_STRING)
+        {
+            throw new TypeMismatchException(type, VimsonParser.valueType(token));
+        }
+        return parser.getText();
+    }
+
+    /**
+     * Returns the constant of {@code type} which the current string of {@code parser} names.
+     * @throws VimsonException If {@code type} has no such constant, same as {@link BeanCodec}.
+     */
+    protected static <E extends Enum<E>> E enumValue(VimsonParser parser, Class<E> type)
+    {
+        final String name= stringValue(parser, type);
+
+        try
+        {
+            return Enum.valueOf(type, name);
+        }
+        catch(IllegalArgumentException e)
+        {
+            throw new VimsonException("No enum constant " + type.getName() + "." + name);
+        }
+    }
+
+    /**
+     * Returns the current string of {@code parser} as a char.
+     * @throws TypeMismatchException If the current token is not a string of exactly one char.
+     */
+    protected static char charValue(VimsonParser parser, Class<?> type)
+    {
+        final String text= stringValue(parser, type);
+
+        if(text.length() != 1)
+        {
+            throw new TypeMismatchException(type, String.class);
+        }
+        return text.charAt(0);
+    }
 }
@@ -0,0 +1,242 @@
+package jp.michikusa.chitose.lolivimson.core;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.lang.reflect.Array;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+
+import static jp.michikusa.chitose.lolivimson.util.Preconditions.checkNotNull;
+
+/**
+ * A {@link BeanCodec} which encodes large lists, arrays and dictionaries in parallel.
+ *
+ * <p>
+ * Elements are split into chunks, each chunk is encoded into its own buffer on {@code executor},
+ * and the buffers are written in order, so the output is identical to {@link BeanCodec}'s.
+ * Only the outermost large containers are split, nested ones are encoded by the worker which encodes the chunk.
+ * Any {@link ExecutorService} works, e.g. a {@code ForkJoinPool} on java 7 or later.
+ * </p>
+ *
+ * <p>
+ * The calling thread never waits for a chunk which no worker has started, it encodes such a chunk by itself.
+ * So it may be called from a worker of the same executor, even of a bounded or a saturated one, without a deadlock.
+ * </p>
+ */
+public class ParallelBeanCodec
+    extends BeanCodec
+{
+    public ParallelBeanCodec(ExecutorService executor)
+    {
+        this(executor, DEFAULT_THRESHOLD);
+    }
+
+    /**
+     * @param threshold The minimum number of elements which are encoded in parallel.
+     */
+    public ParallelBeanCodec(ExecutorService executor, int threshold)
+    {
+        this.executor= checkNotNull(executor);
+        this.threshold= Math.max(threshold, 1);
+    }
+
+    @Override
+    protected void writeIterable(VimsonGenerator vgen, Iterable<?> value)
+        throws IOException
+    {
+        if(!(value instanceof List) || !(value instanceof RandomAccess) || !this.isSplittable(((List<?>)value).size()))
+        {
+            super.writeIterable(vgen, value);
+            return;
+        }
+
+        final List<?> list= (List<?>)value;
+        vgen.writeStartList();
+        this.writeChunks(vgen, false, list.size(), new Slice(){
+            @Override
+            public void write(VimsonGenerator chunk, int from, int to)
+                throws IOException
+            {
+                for(int i= from; i < to; ++i)
+                {
+                    ParallelBeanCodec.this.writeValue(chunk, list.get(i));
+                }
+            }
+        });
+        vgen.writeEndList();
+    }
+
+    @Override
+    protected void writeArray(VimsonGenerator vgen, final Object array)
+        throws IOException
+    {
+        if(!this.isSplittable(Array.getLength(array)))
+        {
+            super.writeArray(vgen, array);
+            return;
+        }
+
+        vgen.writeStartList();
+        this.writeChunks(vgen, false, Array.getLength(array), new Slice(){
+            @Override
+            public void write(VimsonGenerator chunk, int from, int to)
+                throws IOException
+            {
+                for(int i= from; i < to; ++i)
+                {
+                    ParallelBeanCodec.this.writeValue(chunk, Array.get(array, i));
+                }
+            }
+        });
+        vgen.writeEndList();
+    }
+
+    @Override
+    protected void writeMap(VimsonGenerator vgen, Map<?, ?> value)
+        throws IOException
+    {
+        if(!this.isSplittable(value.size()))
+        {
+            super.writeMap(vgen, value);
+            return;
+        }
+
+        // snapshots the iteration order, so that chunks can be indexed
+        final Object[] entries= value.entrySet().toArray();
+        vgen.writeStartDictionary();
+        this.writeChunks(vgen, true, entries.length, new Slice(){
+            @Override
+            public void write(VimsonGenerator chunk, int from, int to)
+                throws IOException
+            {
+                for(int i= from; i < to; ++i)
+                {
+                    ParallelBeanCodec.this.writeEntry(chunk, (Map.Entry<?, ?>)entries[i]);
+                }
+            }
+        });
+        vgen.writeEndDictionary();
+    }
+
+    private boolean isSplittable(int size)
+    {
+        return size >= this.threshold && IN_CHUNK.get() == null;
+    }
+
+    /**
+     * Encodes chunks concurrently and writes them in order, at most {@code 2 * processors} chunks are in flight.
+     * A chunk which is still queued when its turn comes is run on the calling thread, see {@link FutureTask#run()}.
+     */
+    private void writeChunks(VimsonGenerator vgen, final boolean dictionary, int size, final Slice slice)
+        throws IOException
+    {
+        final int processors= Runtime.getRuntime().availableProcessors();
+        final int chunkSize= Math.max(Math.max(this.threshold / 4, 1), (size + processors * 4 - 1) / (processors * 4));
+        final Deque<FutureTask<CharSequence>> inFlight= new ArrayDeque<FutureTask<CharSequence>>();
+
+        try
+        {
+            int from= 0;
+            while(from < size || !inFlight.isEmpty())
+            {
+                while(from < size && inFlight.size() < processors * 2)
+                {
+                    final int begin= from;
+                    final int end= Math.min(size, from + chunkSize);
+
+                    final FutureTask<CharSequence> task= new FutureTask<CharSequence>(new Callable<CharSequence>(){
+                        @Override
+                        public CharSequence call()
+                            throws IOException
+                        {
+                            IN_CHUNK.set(Boolean.TRUE);
+                            try
+                            {
+                                final StringBuilder buffer= new StringBuilder((end - begin) * 16);
+                                final VimsonGenerator chunk= new VimsonGenerator(buffer);
+
+                                chunk.setObjectCodec(ParallelBeanCodec.this);
+                                chunk.enterContainer(dictionary);
+                                slice.write(chunk, begin, end);
+                                return buffer;
+                            }
+                            finally
+                            {
+                                IN_CHUNK.remove();
+                            }
+                        }
+                    });
+                    inFlight.add(task);
+                    try
+                    {
+                        this.executor.execute(task);
+                    }
+                    catch(RejectedExecutionException e)
+                    {
+                        // runs on this thread when its turn comes
+                    }
+                    from= end;
+                }
+
+                final FutureTask<CharSequence> next= inFlight.poll();
+                // does nothing if a worker has started it already
+                next.run();
+                vgen.writeRaw(next.get());
+            }
+        }
+        catch(InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+        catch(ExecutionException e)
+        {
+            final Throwable cause= e.getCause();
+            if(cause instanceof IOException)
+            {
+                throw (IOException)cause;
+            }
+            if(cause instanceof RuntimeException)
+            {
+                throw (RuntimeException)cause;
+            }
+            if(cause instanceof Error)
+            {
+                throw (Error)cause;
+            }
+            throw new IOException(cause);
+        }
+        finally
+        {
+            for(final FutureTask<CharSequence> future : inFlight)
+            {
+                future.cancel(true);
+            }
+        }
+    }
+
+    private static interface Slice
+    {
+        void write(VimsonGenerator chunk, int from, int to)
+            throws IOException;
+    }
+
+    private static final int DEFAULT_THRESHOLD= 8192;
+
+    /**
+     * Set while a worker encodes a chunk, nested containers are not split again to avoid waiting in workers.
+     */
+    private static final ThreadLocal<Boolean> IN_CHUNK= new ThreadLocal<Boolean>();
+
+    private final ExecutorService executor;
+
+    private final int threshold;
+}
@@ -0,0 +1,587 @@
+package jp.michikusa.chitose.lolivimson.core;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import jp.michikusa.chitose.lolivimson.LimitExceededException;
+import jp.michikusa.chitose.lolivimson.TypeMismatchException;
+import jp.michikusa.chitose.lolivimson.util.CharSequenceReader;
+import jp.michikusa.chitose.lolivimson.util.MappedFileReader;
+
+import static jp.michikusa.chitose.lolivimson.util.Preconditions.checkNotNull;
+
+/**
+ * Parses a huge top-level list with several threads.
+ *
+ * <p>
+ * The input is pre-scanned for commas of the top-level list, only quotes and brackets are tracked.
+ * Then runs of elements are parsed concurrently by separate {@link VimsonParser}s on {@code executor},
+ * and assembled in order. Lists with fewer elements than the threshold are parsed on the calling thread.
+ * Any {@link ExecutorService} works, e.g. a {@code ForkJoinPool} on java 7 or later.
+ * </p>
+ */
+public class ParallelVimsonParser
+{
+    public ParallelVimsonParser(ExecutorService executor)
+    {
+        this(executor, DEFAULT_THRESHOLD);
+    }
+
+    /**
+     * @param threshold The minimum number of elements which are parsed in parallel.
+     */
+    public ParallelVimsonParser(ExecutorService executor, int threshold)
+    {
+        this.executor= checkNotNull(executor);
+        this.threshold= Math.max(threshold, 1);
+    }
+
+    public List<Object> parseList(final char[] in)
+        throws IOException
+    {
+        return this.parse(new Source(){
+            @Override
+            public void scan(Boundaries boundaries)
+            {
+                for(int i= 0; i < in.length; ++i)
+                {
+                    if(!boundaries.feed(in[i], i))
+                    {
+                        break;
+                    }
+                }
+            }
+
+            @Override
+            public VimsonParser open(long start, long end)
+            {
+                return new VimsonParser(in, (int)start, (int)(end - start));
+            }
+        });
+    }
+
+    public List<Object> parseList(final CharSequence in)
+        throws IOException
+    {
+        return this.parse(new Source(){
+            @Override
+            public void scan(Boundaries boundaries)
+            {
+                final int length= in.length();
+                for(int i= 0; i < length; ++i)
+                {
+                    if(!boundaries.feed(in.charAt(i), i))
+                    {
+                        break;
+                    }
+                }
+            }
+
+            @Override
+            public VimsonParser open(long start, long end)
+            {
+                return new VimsonParser(new CharSequenceReader(in, (int)start, (int)end));
+            }
+        });
+    }
+
+    /**
+     * Parses a UTF-8 file through memory mappings, see {@link MappedFileReader}.
+     * Offsets are found on the raw bytes, since bytes of multi-byte sequences never look like ASCII,
+     * so the document length and offsets of errors are counted in bytes.
+     */
+    public List<Object> parseList(final FileChannel in)
+        throws IOException
+    {
+        return this.parse(new Source(){
+            @Override
+            public void scan(Boundaries boundaries)
+                throws IOException
+            {
+                final long size= in.size();
+                for(long position= 0; position < size; position+= SEGMENT_SIZE)
+                {
+                    final MappedByteBuffer segment= in.map(FileChannel.MapMode.READ_ONLY, position, Math.min(SEGMENT_SIZE, size - position));
+                    final int limit= segment.limit();
+                    for(int i= 0; i < limit; ++i)
+                    {
+                        if(!boundaries.feed(segment.get(i), position + i))
+                        {
+                            return;
+                        }
+                    }
+                }
+            }
+
+            @Override
+            public VimsonParser open(long start, long end)
+                throws IOException
+            {
+                return new VimsonParser(new MappedFileReader(in, start, end - start));
+            }
+        });
+    }
+
+    /**
+     * Sets a factory for containers which the parsers create, see {@link VimsonParser#setContainerFactory(ContainerFactory)}.
+     */
+    public void setContainerFactory(ContainerFactory containerFactory)
+    {
+        this.containerFactory= checkNotNull(containerFactory);
+    }
+
+    public ContainerFactory getContainerFactory()
+    {
+        return this.containerFactory;
+    }
+
+    /**
+     * Sets a table for dictionary keys which the parsers share, see {@link VimsonParser#setSymbolTable(SymbolTable)}.
+     */
+    public void setSymbolTable(SymbolTable symbols)
+    {
+        this.symbols= symbols;
+    }
+
+    public SymbolTable getSymbolTable()
+    {
+        return this.symbols;
+    }
+
+    /**
+     * Sets limits, see {@link VimsonParser#setLimits(VimsonLimits)}.
+     * The document length and the size of the top-level list are checked by the scan, others by the parsers.
+     */
+    public void setLimits(VimsonLimits limits)
+    {
+        this.limits= checkNotNull(limits);
+    }
+
+    public VimsonLimits getLimits()
+    {
+        return this.limits;
+    }
+
+    /**
+     * Sets a listener which is told about each list, see {@link VimsonParser#setListener(VimsonListener)}.
+     */
+    public void setListener(VimsonListener listener)
+    {
+        this.listener= listener;
+    }
+
+    public VimsonListener getListener()
+    {
+        return this.listener;
+    }
+
+    private List<Object> parse(Source source)
+        throws IOException
+    {
+        final VimsonListener listener= this.listener;
+        final long start= System.nanoTime();
+        final Progress progress= new Progress();
+        final Boundaries boundaries= new Boundaries(this.limits, progress);
+        try
+        {
+            source.scan(boundaries);
+
+            final List<Object> list= this.parseElements(boundaries.finish(), source, progress);
+            if(listener != null)
+            {
+                listener.documentParsed(boundaries.length(), progress.tokens + 2, Math.max(progress.maxDepth, 1), System.nanoTime() - start);
+            }
+            return list;
+        }
+        catch(IOException e)
+        {
+            if(listener != null)
+            {
+                listener.documentFailed(e, progress.failedAt.get());
+            }
+            throw e;
+        }
+        catch(RuntimeException e)
+        {
+            if(listener != null)
+            {
+                listener.documentFailed(e, progress.failedAt.get());
+            }
+            throw e;
+        }
+    }
+
+    private List<Object> parseElements(final long[] ranges, final Source source, final Progress progress)
+        throws IOException
+    {
+        final int n= ranges.length / 2;
+
+        if(n < this.threshold)
+        {
+            return this.toList(n, Collections.singletonList(this.parseChunk(source, ranges, 0, n, progress)));
+        }
+
+        final int processors= Runtime.getRuntime().availableProcessors();
+        final int chunkSize= Math.max(MIN_CHUNK_SIZE, (n + processors * 4 - 1) / (processors * 4));
+        final List<Future<Object[]>> chunks= new ArrayList<Future<Object[]>>();
+        try
+        {
+            for(int from= 0; from < n; from+= chunkSize)
+            {
+                final int begin= from;
+                final int end= Math.min(n, from + chunkSize);
+
+                chunks.add(this.executor.submit(new Callable<Object[]>(){
+                    @Override
+                    public Object[] call()
+                        throws IOException
+                    {
+                        return ParallelVimsonParser.this.parseChunk(source, ranges, begin, end, progress);
+                    }
+                }));
+            }
+
+            final List<Object[]> values= new ArrayList<Object[]>(chunks.size());
+            for(final Future<Object[]> chunk : chunks)
+            {
+                values.add(chunk.get());
+            }
+            return this.toList(n, values);
+        }
+        catch(InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+        catch(ExecutionException e)
+        {
+            final Throwable cause= e.getCause();
+            if(cause instanceof IOException)
+            {
+                throw (IOException)cause;
+            }
+            if(cause instanceof RuntimeException)
+            {
+                throw (RuntimeException)cause;
+            }
+            if(cause instanceof Error)
+            {
+                throw (Error)cause;
+            }
+            throw new IOException(cause);
+        }
+        finally
+        {
+            for(final Future<Object[]> chunk : chunks)
+            {
+                chunk.cancel(true);
+            }
+        }
+    }
+
+    /**
+     * Parses elements from {@code begin} to {@code end} with a single parser, which spans their ranges.
+     * Only blanks may follow the last element, the scan doesn't see what is between commas.
+     */
+    private Object[] parseChunk(Source source, long[] ranges, int begin, int end, Progress progress)
+        throws IOException
+    {
+        final Object[] values= new Object[end - begin];
+        if(values.length == 0)
+        {
+            return values;
+        }
+
+        final long start= ranges[begin * 2];
+        final VimsonParser parser= source.open(start, ranges[end * 2 - 1]);
+        parser.setContainerFactory(this.containerFactory);
+        parser.setSymbolTable(this.symbols);
+        parser.setLimits(this.limits);
+        parser.enterList();
+        try
+        {
+            for(int i= 0; i < values.length; ++i)
+            {
+                parser.nextToken();
+                values[i]= parser.readValue();
+            }
+            if(!parser.atEnd())
+            {
+                throw new IllegalArgumentException("Expected `,' or `]'");
+            }
+        }
+        catch(IOException e)
+        {
+            progress.failedAt.compareAndSet(-1, start + parser.offset());
+            throw e;
+        }
+        catch(RuntimeException e)
+        {
+            progress.failedAt.compareAndSet(-1, start + parser.offset());
+            throw e;
+        }
+        progress.add(parser.tokenCount(), parser.maxDepth());
+        return values;
+    }
+
+    private List<Object> toList(int n, List<Object[]> chunks)
+    {
+        final List<Object> list= this.containerFactory.createList(n);
+
+        for(final Object[] chunk : chunks)
+        {
+            list.addAll(Arrays.asList(chunk));
+        }
+        return list;
+    }
+
+    private static interface Source
+    {
+        /**
+         * Feeds the input to {@code boundaries} until the top-level list is closed.
+         */
+        void scan(Boundaries boundaries)
+            throws IOException;
+
+        /**
+         * Opens a parser over the input from {@code start} (inclusive) to {@code end} (exclusive).
+         */
+        VimsonParser open(long start, long end)
+            throws IOException;
+    }
+
+    /**
+     * Statistics of a list, which are gathered from parsers of chunks.
+     */
+    private static final class Progress
+    {
+        public synchronized void add(int tokens, int maxDepth)
+        {
+            this.tokens+= tokens;
+            this.maxDepth= Math.max(this.maxDepth, maxDepth);
+        }
+
+        /**
+         * An offset where parsing failed first, or {@code -1} if the input ended before the list.
+         */
+        private final AtomicLong failedAt= new AtomicLong(-1);
+
+        private int tokens;
+
+        private int maxDepth;
+    }
+
+    /**
+     * Finds ranges of the top-level list elements, tracking only quotes and brackets.
+     * A doubled quote in a single-quoted string is seen as two adjacent strings, which is the same structurally.
+     * The document length and the size of the list are limited here, since no parser sees the whole list.
+     */
+    private static final class Boundaries
+    {
+        public Boundaries(VimsonLimits limits, Progress progress)
+        {
+            this.documentLengthLimit= limits.getMaxDocumentLength();
+            this.containerSizeLimit= limits.getMaxContainerSize();
+            this.progress= progress;
+        }
+
+        /**
+         * @return {@code false} if the top-level list has been closed.
+         */
+        public boolean feed(int c, long offset)
+        {
+            if(offset >= this.documentLengthLimit)
+            {
+                throw this.limitExceeded("Document length exceeds " + this.documentLengthLimit, offset);
+            }
+
+            if(this.quote != 0)
+            {
+                if(this.escaped)
+                {
+                    this.escaped= false;
+                }
+                else if(c == '\\' && this.quote == '"')
+                {
+                    this.escaped= true;
+                }
+                else if(c == this.quote)
+                {
+                    this.quote= 0;
+                }
+                return true;
+            }
+
+            if(c == ' ' || c == '\t' || c == '\r' || c == '\n' || c == '\\')
+            {
+                // blanks and line continuations
+                if(c == '\n')
+                {
+                    ++this.lines;
+                    this.lineStart= offset + 1;
+                }
+                return true;
+            }
+
+            if(this.depth == 0)
+            {
+                if(c != '[')
+                {
+                    this.progress.failedAt.set(offset);
+                    throw new TypeMismatchException(List.class, (c == '{') ? Map.class : (c == '\'' || c == '"') ? String.class : Number.class);
+                }
+                this.depth= 1;
+                this.start= offset + 1;
+                return true;
+            }
+
+            switch(c)
+            {
+            case '\'':
+            case '"':
+                this.quote= c;
+                break;
+            case '[':
+            case '{':
+                ++this.depth;
+                break;
+            case ']':
+            case '}':
+                if(--this.depth == 0)
+                {
+                    this.endElement(offset);
+                    this.closed= true;
+                    this.end= offset + 1;
+                    return false;
+                }
+                break;
+            case ',':
+                if(this.depth == 1)
+                {
+                    if(!this.hasValue)
+                    {
+                        this.progress.failedAt.set(offset);
+                        throw new IllegalArgumentException("Unexpected `,'");
+                    }
+                    this.endElement(offset);
+                    this.start= offset + 1;
+                    return true;
+                }
+                break;
+            default:
+                break;
+            }
+            this.hasValue= true;
+            return true;
+        }
+
+        /**
+         * Returns start and end offsets of elements, interleaved.
+         */
+        public long[] finish()
+            throws EOFException
+        {
+            if(!this.closed)
+            {
+                throw new EOFException();
+            }
+            return Arrays.copyOf(this.ranges, this.size);
+        }
+
+        /**
+         * Returns the length of the input up to the closer of the list.
+         */
+        public long length()
+        {
+            return this.end;
+        }
+
+        private void endElement(long offset)
+        {
+            if(!this.hasValue)
+            {
+                // after a trailing comma
+                return;
+            }
+            if(this.size / 2 >= this.containerSizeLimit)
+            {
+                throw this.limitExceeded("List size exceeds " + this.containerSizeLimit, offset);
+            }
+            if(this.size + 2 > this.ranges.length)
+            {
+                this.ranges= Arrays.copyOf(this.ranges, this.ranges.length * 2);
+            }
+            this.ranges[this.size++]= this.start;
+            this.ranges[this.size++]= offset;
+            this.hasValue= false;
+        }
+
+        private LimitExceededException limitExceeded(String message, long offset)
+        {
+            this.progress.failedAt.set(offset);
+            return new LimitExceededException(message, offset, this.lines + 1, (int)Math.min(offset - this.lineStart + 1, Integer.MAX_VALUE));
+        }
+
+        private final long documentLengthLimit;
+
+        private final int containerSizeLimit;
+
+        private final Progress progress;
+
+        private long[] ranges= new long[64];
+
+        private int size;
+
+        private int depth;
+
+        private int quote;
+
+        private boolean escaped;
+
+        private boolean hasValue;
+
+        private boolean closed;
+
+        private long start;
+
+        private long end;
+
+        /**
+         * Line breaks outside of strings, for positions of errors.
+         */
+        private int lines;
+
+        private long lineStart;
+    }
+
+    private static final int DEFAULT_THRESHOLD= 4096;
+
+    private static final int MIN_CHUNK_SIZE= 256;
+
+    private static final long SEGMENT_SIZE= 1L << 30;
+
+    private final ExecutorService executor;
+
+    private final int threshold;
+
+    private ContainerFactory containerFactory= ContainerFactory.COMPACT;
+
+    private SymbolTable symbols= SymbolTable.getDefault();
+
+    private VimsonLimits limits= VimsonLimits.DEFAULT;
+
+    private VimsonListener listener;
+}
@@ -0,0 +1,66 @@
+package jp.michikusa.chitose.lolivimson.core;
+
+import java.util.List;
+
+import static jp.michikusa.chitose.lolivimson.util.Preconditions.checkNotNull;
+
+/**
+ * Selects values by their paths for {@link VimsonParser#parse(PathFilter)}.
+ * A path is a list of dictionary keys ({@link String}) and list indexes ({@link Integer}) from the top-level value,
+ * the top-level value itself has an empty path.
+ */
+public abstract class PathFilter
+{
+    /**
+     * Returns a filter which includes a value if any of {@code filters} includes it.
+     */
+    public static PathFilter anyOf(final PathFilter... filters)
+    {
+        for(final PathFilter filter : filters)
+        {
+            checkNotNull(filter);
+        }
+
+        return new PathFilter(){
+            @Override
+            public boolean includes(List<?> path)
+            {
+                for(final PathFilter filter : filters)
+                {
+                    if(filter.includes(path))
+                    {
+                        return true;
+                    }
+                }
+                return false;
+            }
+
+            @Override
+            public boolean includesDescendants(List<?> path)
+            {
+                for(final PathFilter filter : filters)
+                {
+                    if(filter.includesDescendants(path))
+                    {
+                        return true;
+                    }
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Whether the value at {@code path} is included as a whole.
+     */
+    public abstract boolean includes(List<?> path);
+
+    /**
+     * Whether some value below {@code path} may be included, the value at {@code path} is skipped if not.
+     * Returns {@code true} by default, which visits every value.
+     */
+    public boolean includesDescendants(List<?> path)
+    {
+        return true;
+    }
+}
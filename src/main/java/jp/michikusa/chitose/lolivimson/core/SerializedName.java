@@ -0,0 +1,70 @@
+package jp.michikusa.chitose.lolivimson.core;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+
+import jp.michikusa.chitose.lolivimson.VimsonException;
+
+import static jp.michikusa.chitose.lolivimson.util.Preconditions.checkNotNull;
+
+/**
+ * A field name which is quoted and encoded once, and written many times.
+ * {@link VimsonGenerator#writeFieldName(SerializedName)} copies it to the output as is.
+ */
+public final class SerializedName
+{
+    public SerializedName(CharSequence name)
+    {
+        this.value= checkNotNull(name).toString();
+
+        final StringBuilder quoted= new StringBuilder(this.value.length() + 3);
+        try
+        {
+            StringEscaper.writeQuoted(new AppendableOutput(quoted), this.value);
+        }
+        catch(IOException e)
+        {
+            // never happens, appending to a StringBuilder
+            throw new VimsonException(e);
+        }
+        quoted.append(':');
+
+        this.chars= quoted.toString().toCharArray();
+        this.utf8= quoted.toString().getBytes(UTF_8);
+    }
+
+    public String getValue()
+    {
+        return this.value;
+    }
+
+    @Override
+    public String toString()
+    {
+        return this.value;
+    }
+
+    /**
+     * The quoted name followed by a colon.
+     */
+    char[] asQuotedChars()
+    {
+        return this.chars;
+    }
+
+    /**
+     * {@link #asQuotedChars()} encoded in UTF-8.
+     */
+    byte[] asQuotedUtf8()
+    {
+        return this.utf8;
+    }
+
+    private static final Charset UTF_8= Charset.forName("UTF-8");
+
+    private final String value;
+
+    private final char[] chars;
+
+    private final byte[] utf8;
+}
@@ -0,0 +1,65 @@
+package jp.michikusa.chitose.lolivimson.core;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+
+import static jp.michikusa.chitose.lolivimson.util.Preconditions.checkNotNull;
+
+/**
+ * Encodes chars into a reusable byte buffer, and writes it to an {@link OutputStream} in chunks.
+ */
+class StreamOutput
+    extends ByteOutput
+{
+    public StreamOutput(OutputStream out, Charset charset)
+    {
+        super(charset);
+        this.out= checkNotNull(out);
+    }
+
+    public StreamOutput(OutputStream out, Charset charset, byte[] buffer)
+    {
+        super(charset, buffer);
+        this.out= checkNotNull(out);
+    }
+
+    /**
+     * Discards buffered bytes, and writes to {@code out} from now on.
+     */
+    public void reset(OutputStream out)
+    {
+        this.discard();
+        this.out= checkNotNull(out);
+    }
+
+    @Override
+    public void flush()
+        throws IOException
+    {
+        this.endSurrogate();
+        this.drain();
+        this.out.flush();
+    }
+
+    @Override
+    public void close()
+        throws IOException
+    {
+        this.flush();
+        this.out.close();
+    }
+
+    @Override
+    public void drain()
+        throws IOException
+    {
+        if(this.outTail > 0)
+        {
+            this.out.write(this.outBuffer, 0, this.outTail);
+            this.outTail= 0;
+        }
+    }
+
+    private OutputStream out;
+}
@@ -0,0 +1,160 @@
+package jp.michikusa.chitose.lolivimson.core;
+
+import java.io.IOException;
+
+/**
+ * Quotes strings, choosing the single-quoted or double-quoted form by a lookup table of ASCII characters.
+ *
+ * <p>
+ * The single-quoted form doubles {@code '} and can't hold control characters, the double-quoted form escapes
+ * {@code "}, {@code \} and control characters. The shorter valid form is written, the single-quoted one on a tie.
+ * The leading run of characters, which are same in both forms, is scanned once and copied in bulk,
+ * only a string with special characters is scanned again from its first special character to decide the form.
+ * </p>
+ */
+final class StringEscaper
+{
+    public static void writeQuoted(VimsonOutput out, CharSequence value)
+        throws IOException
+    {
+        final int length= value.length();
+        final byte[] classes= CLASSES;
+
+        int first= 0;
+        char c;
+        while(first < length && ((c= value.charAt(first)) >= 0x80 || classes[c] == SAFE))
+        {
+            ++first;
+        }
+
+        if(first == length)
+        {
+            out.write('\'');
+            out.write(value, 0, length);
+            out.write('\'');
+            return;
+        }
+
+        int singleCost= 0;
+        int doubleCost= 0;
+        boolean control= false;
+        for(int i= first; i < length; ++i)
+        {
+            c= value.charAt(i);
+            if(c >= 0x80)
+            {
+                continue;
+            }
+            switch(classes[c])
+            {
+            case SINGLE_QUOTE:
+                ++singleCost;
+                break;
+            case DOUBLE_SPECIAL:
+                ++doubleCost;
+                break;
+            case CONTROL:
+                // never valid in the single-quoted form
+                control= true;
+                doubleCost+= ESCAPES[c].length() - 1;
+                break;
+            default:
+                break;
+            }
+        }
+
+        if(!control && singleCost <= doubleCost)
+        {
+            writeSingleQuoted(out, value, first);
+        }
+        else
+        {
+            writeDoubleQuoted(out, value, first);
+        }
+    }
+
+    private StringEscaper()
+    {
+        throw new AssertionError();
+    }
+
+    private static void writeSingleQuoted(VimsonOutput out, CharSequence value, int first)
+        throws IOException
+    {
+        final int length= value.length();
+
+        out.write('\'');
+        int start= 0;
+        for(int i= first; i < length; ++i)
+        {
+            if(value.charAt(i) == '\'')
+            {
+                // the quote is written twice, once in the run
+                out.write(value, start, i + 1);
+                start= i;
+            }
+        }
+        out.write(value, start, length);
+        out.write('\'');
+    }
+
+    private static void writeDoubleQuoted(VimsonOutput out, CharSequence value, int first)
+        throws IOException
+    {
+        final int length= value.length();
+        final byte[] classes= CLASSES;
+
+        out.write('"');
+        int start= 0;
+        for(int i= first; i < length; ++i)
+        {
+            final char c= value.charAt(i);
+            if(c < 0x80 && classes[c] >= DOUBLE_SPECIAL)
+            {
+                out.write(value, start, i);
+                final String escape= ESCAPES[c];
+                out.write(escape, 0, escape.length());
+                start= i + 1;
+            }
+        }
+        out.write(value, start, length);
+        out.write('"');
+    }
+
+    private static final byte SAFE= 0;
+
+    private static final byte SINGLE_QUOTE= 1;
+
+    private static final byte DOUBLE_SPECIAL= 2;
+
+    private static final byte CONTROL= 3;
+
+    private static final byte[] CLASSES= new byte[0x80];
+
+    /**
+     * Escape sequences in the double-quoted form.
+     */
+    private static final String[] ESCAPES= new String[0x80];
+
+    static
+    {
+        final char[] hex= "0123456789abcdef".toCharArray();
+        for(int c= 0; c < 0x20; ++c)
+        {
+            CLASSES[c]= CONTROL;
+            ESCAPES[c]= "\\x" + hex[c >> 4] + hex[c & 0xf];
+        }
+        ESCAPES['\b']= "\\b";
+        ESCAPES['\t']= "\\t";
+        ESCAPES['\n']= "\\n";
+        ESCAPES['\f']= "\\f";
+        ESCAPES['\r']= "\\r";
+        ESCAPES[27]= "\\e";
+
+        CLASSES['\'']= SINGLE_QUOTE;
+        CLASSES['"']= DOUBLE_SPECIAL;
+        CLASSES['\\']= DOUBLE_SPECIAL;
+        ESCAPES['"']= "\\\"";
+        ESCAPES['\\']= "\\\\";
+    }
+}
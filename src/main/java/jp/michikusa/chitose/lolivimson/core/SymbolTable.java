@@ -0,0 +1,133 @@
+package jp.michikusa.chitose.lolivimson.core;
+
+/**
+ * A bounded, thread-safe table which canonicalizes dictionary keys and short string values.
+ * Parsers which share a table return the same {@link String} instance for the same characters,
+ * so repetitive documents retain one copy of each key.
+ *
+ * <p>
+ * The table is a direct-mapped cache, a colliding string replaces the older one.
+ * Slots are read and written without locking, it is safe because {@link String} is immutable.
+ * </p>
+ */
+public class SymbolTable
+{
+    public SymbolTable()
+    {
+        this(DEFAULT_CAPACITY, 0);
+    }
+
+    /**
+     * @param capacity The number of slots, rounded up to a power of two.
+     * @param maxValueLength String values up to this length are also canonicalized, {@code 0} disables it.
+     */
+    public SymbolTable(int capacity, int maxValueLength)
+    {
+        if(capacity <= 0 || maxValueLength < 0)
+        {
+            throw new IllegalArgumentException();
+        }
+
+        int size= 1;
+        while(size < capacity)
+        {
+            size<<= 1;
+        }
+        this.table= new String[size];
+        this.mask= size - 1;
+        this.maxValueLength= maxValueLength;
+    }
+
+    /**
+     * Returns the table which parsers use by default.
+     */
+    public static SymbolTable getDefault()
+    {
+        return DEFAULT;
+    }
+
+    public int getMaxValueLength()
+    {
+        return this.maxValueLength;
+    }
+
+    /**
+     * Returns the canonical string of {@code buf[offset, offset + length)}.
+     * @param hash The hash of the characters, same as {@link String#hashCode()}.
+     */
+    public String lookup(char[] buf, int offset, int length, int hash)
+    {
+        if(length > MAX_SYMBOL_LENGTH)
+        {
+            return new String(buf, offset, length);
+        }
+
+        final String[] table= this.table;
+        final int index= (hash ^ (hash >>> 16)) & this.mask;
+        final String symbol= table[index];
+
+        if(symbol != null && symbol.hashCode() == hash && symbol.length() == length)
+        {
+            int i= 0;
+            while(i < length && symbol.charAt(i) == buf[offset + i])
+            {
+                ++i;
+            }
+            if(i == length)
+            {
+                return symbol;
+            }
+        }
+
+        final String created= new String(buf, offset, length);
+        table[index]= created;
+        return created;
+    }
+
+    /**
+     * Returns the canonical string of {@code chars}.
+     */
+    public String lookup(CharSequence chars)
+    {
+        final int length= chars.length();
+
+        if(length > MAX_SYMBOL_LENGTH)
+        {
+            return chars.toString();
+        }
+
+        int hash= 0;
+        for(int i= 0; i < length; ++i)
+        {
+            hash= 31 * hash + chars.charAt(i);
+        }
+
+        final String[] table= this.table;
+        final int index= (hash ^ (hash >>> 16)) & this.mask;
+        final String symbol= table[index];
+
+        if(symbol != null && symbol.hashCode() == hash && symbol.contentEquals(chars))
+        {
+            return symbol;
+        }
+
+        final String created= chars.toString();
+        table[index]= created;
+        return created;
+    }
+
+    /**
+     * Longer strings are never stored.
+     */
+    private static final int MAX_SYMBOL_LENGTH= 256;
+
+    private static final int DEFAULT_CAPACITY= 4096;
+
+    private static final SymbolTable DEFAULT= new SymbolTable();
+
+    private final String[] table;
+
+    private final int mask;
+
+    private final int maxValueLength;
+}
@@ -0,0 +1,353 @@
+package jp.michikusa.chitose.lolivimson.core;
+
+import java.io.IOException;
+import java.util.AbstractList;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.RandomAccess;
+import java.util.Set;
+
+import jp.michikusa.chitose.lolivimson.VimsonException;
+
+/**
+ * A structural index of a document, each token is recorded as a pair of ints.
+ *
+ * <p>
+ * A start token records the index of its end token, an end token records the number of values in the container,
+ * and a scalar records its offset in the document. Scalars are decoded when they are accessed through
+ * the views, which {@link #value(int)} returns, and cached in the views.
+ * </p>
+ */
+class Tape
+{
+    static final int START_DICTIONARY= 1;
+
+    static final int END_DICTIONARY= 2;
+
+    static final int START_LIST= 3;
+
+    static final int END_LIST= 4;
+
+    static final int STRING= 5;
+
+    static final int NUMBER= 6;
+
+    public Tape(char[] chars, int[] entries)
+    {
+        this.chars= chars;
+        this.entries= entries;
+        this.parser= new VimsonParser(chars);
+        this.parser.setSymbolTable(null);
+    }
+
+    int kind(int entry)
+    {
+        return this.entries[entry * 2];
+    }
+
+    int operand(int entry)
+    {
+        return this.entries[entry * 2 + 1];
+    }
+
+    /**
+     * Returns the entry next to the value at {@code entry}, skipping its children.
+     */
+    int next(int entry)
+    {
+        final int kind= this.kind(entry);
+
+        return (kind == START_DICTIONARY || kind == START_LIST) ? this.operand(entry) + 1 : entry + 1;
+    }
+
+    /**
+     * Returns a lazy view for a container, or a decoded scalar.
+     */
+    Object value(int entry)
+    {
+        switch(this.kind(entry))
+        {
+        case START_DICTIONARY:
+            return new TapeMap(this, entry);
+        case START_LIST:
+            return new TapeList(this, entry);
+        default:
+            return this.scalar(entry);
+        }
+    }
+
+    private Object scalar(int entry)
+    {
+        try
+        {
+            this.parser.seek(this.operand(entry));
+            return this.parser.readValue();
+        }
+        catch(IOException e)
+        {
+            // never happens, reading from an array
+            throw new VimsonException(e);
+        }
+    }
+
+    /**
+     * Compares a string without decoding it, unless it has escapes.
+     */
+    boolean stringEquals(int entry, String s)
+    {
+        final char[] chars= this.chars;
+        final int start= this.operand(entry);
+        final char quote= chars[start];
+        final int length= s.length();
+
+        // the closing quote was found by the scan, so the loop ends in the array
+        for(int i= 0, p= start + 1; ; ++i, ++p)
+        {
+            final char c= chars[p];
+            if(c == quote || (c == '\\' && quote == '"'))
+            {
+                if(c == quote && !(quote == '\'' && p + 1 < chars.length && chars[p + 1] == quote))
+                {
+                    return i == length;
+                }
+                // an escape, raw characters before it were same
+                return s.equals(this.scalar(entry));
+            }
+            if(i == length || c != s.charAt(i))
+            {
+                return false;
+            }
+        }
+    }
+
+    private static final class TapeMap
+        extends AbstractMap<String, Object>
+    {
+        public TapeMap(Tape tape, int start)
+        {
+            this.tape= tape;
+            this.start= start;
+            this.size= tape.operand(tape.operand(start));
+        }
+
+        @Override
+        public int size()
+        {
+            return this.size;
+        }
+
+        @Override
+        public boolean containsKey(Object key)
+        {
+            return this.indexOf(key) >= 0;
+        }
+
+        @Override
+        public Object get(Object key)
+        {
+            final int i= this.indexOf(key);
+
+            return (i >= 0) ? this.value(i) : null;
+        }
+
+        @Override
+        public Set<Map.Entry<String, Object>> entrySet()
+        {
+            return new AbstractSet<Map.Entry<String, Object>>(){
+                @Override
+                public int size()
+                {
+                    return TapeMap.this.size;
+                }
+
+                @Override
+                public Iterator<Map.Entry<String, Object>> iterator()
+                {
+                    return new Iterator<Map.Entry<String, Object>>(){
+                        @Override
+                        public boolean hasNext()
+                        {
+                            return this.i < TapeMap.this.size;
+                        }
+
+                        @Override
+                        public Map.Entry<String, Object> next()
+                        {
+                            if(!this.hasNext())
+                            {
+                                throw new NoSuchElementException();
+                            }
+                            final int i= this.i++;
+                            return new SimpleImmutableEntry<String, Object>(TapeMap.this.key(i), TapeMap.this.value(i));
+                        }
+
+                        @Override
+                        public void remove()
+                        {
+                            throw new UnsupportedOperationException();
+                        }
+
+                        private int i;
+                    };
+                }
+            };
+        }
+
+        private int indexOf(Object key)
+        {
+            if(!(key instanceof String))
+            {
+                return -1;
+            }
+
+            final String s= (String)key;
+            final int[] index= this.index();
+            // the last one wins on duplicates, same as parsing into a map
+            for(int i= this.size - 1; i >= 0; --i)
+            {
+                if(this.keys != null && this.keys[i] != null ? s.equals(this.keys[i]) : this.tape.stringEquals(index[i], s))
+                {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        private String key(int i)
+        {
+            if(this.keys == null)
+            {
+                this.keys= new String[this.size];
+            }
+            if(this.keys[i] == null)
+            {
+                this.keys[i]= (String)this.tape.scalar(this.index()[i]);
+            }
+            return this.keys[i];
+        }
+
+        private Object value(int i)
+        {
+            if(this.values == null)
+            {
+                this.values= new Object[this.size];
+                Arrays.fill(this.values, UNDECODED);
+            }
+            if(this.values[i] == UNDECODED)
+            {
+                this.values[i]= this.tape.value(this.index()[i] + 1);
+            }
+            return this.values[i];
+        }
+
+        /**
+         * Returns entries of keys, each value is next to its key.
+         */
+        private int[] index()
+        {
+            if(this.index == null)
+            {
+                final int[] index= new int[this.size];
+                int entry= this.start + 1;
+                for(int i= 0; i < index.length; ++i)
+                {
+                    index[i]= entry;
+                    entry= this.tape.next(entry + 1);
+                }
+                this.index= index;
+            }
+            return this.index;
+        }
+
+        private final Tape tape;
+
+        private final int start;
+
+        private final int size;
+
+        private int[] index;
+
+        private String[] keys;
+
+        private Object[] values;
+    }
+
+    private static final class TapeList
+        extends AbstractList<Object>
+        implements RandomAccess
+    {
+        public TapeList(Tape tape, int start)
+        {
+            this.tape= tape;
+            this.start= start;
+            this.size= tape.operand(tape.operand(start));
+        }
+
+        @Override
+        public int size()
+        {
+            return this.size;
+        }
+
+        @Override
+        public Object get(int i)
+        {
+            if(i < 0 || i >= this.size)
+            {
+                throw new IndexOutOfBoundsException("Index: " + i + ", Size: " + this.size);
+            }
+
+            if(this.values == null)
+            {
+                this.values= new Object[this.size];
+                Arrays.fill(this.values, UNDECODED);
+            }
+            if(this.values[i] == UNDECODED)
+            {
+                this.values[i]= this.tape.value(this.index()[i]);
+            }
+            return this.values[i];
+        }
+
+        private int[] index()
+        {
+            if(this.index == null)
+            {
+                final int[] index= new int[this.size];
+                int entry= this.start + 1;
+                for(int i= 0; i < index.length; ++i)
+                {
+                    index[i]= entry;
+                    entry= this.tape.next(entry);
+                }
+                this.index= index;
+            }
+            return this.index;
+        }
+
+        private final Tape tape;
+
+        private final int start;
+
+        private final int size;
+
+        private int[] index;
+
+        private Object[] values;
+    }
+
+    private static final Object UNDECODED= new Object();
+
+    private final char[] chars;
+
+    private final int[] entries;
+
+    /**
+     * Decodes scalars, which makes the views thread-unsafe.
+     */
+    private final VimsonParser parser;
+}
@@ -0,0 +1,38 @@
+package jp.michikusa.chitose.lolivimson.core;
+
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+
+/**
+ * Captures a generic type for decoding, by subclassing it anonymously.
+ *
+ * <pre>
+ * final List&lt;Item&gt; items= parser.parse(new TypeReference&lt;List&lt;Item&gt;&gt;(){});
+ * </pre>
+ */
+public abstract class TypeReference<T>
+{
+    protected TypeReference()
+    {
+        final Type superclass= this.getClass().getGenericSuperclass();
+
+        if(!(superclass instanceof ParameterizedType))
+        {
+            throw new IllegalStateException("Type argument is missing: " + superclass);
+        }
+        this.type= ((ParameterizedType)superclass).getActualTypeArguments()[0];
+    }
+
+    public Type getType()
+    {
+        return this.type;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "TypeReference<" + this.type + ">";
+    }
+
+    private final Type type;
+}
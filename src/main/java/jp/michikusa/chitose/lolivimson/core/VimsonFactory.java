@@ -0,0 +1,195 @@
+package jp.michikusa.chitose.lolivimson.core;
+
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.Charset;
+
+import static jp.michikusa.chitose.lolivimson.util.Preconditions.checkNotNull;
+
+/**
+ * Creates parsers and generators which share a configuration and recycle their buffers.
+ *
+ * <p>
+ * Windows of parsers and output buffers of generators are borrowed from a lock-free pool,
+ * and returned when the parser or the generator is closed. A factory is thread-safe once it is configured,
+ * so configure it before sharing it among threads. Each parser and generator is still for a single thread,
+ * and can be reused across messages by {@code reset(...)}.
+ * </p>
+ *
+ * <pre>
+ * final VimsonParser parser= factory.createParser(message);
+ * try
+ * {
+ *     return parser.parse(Map.class);
+ * }
+ * finally
+ * {
+ *     parser.close();
+ * }
+ * </pre>
+ */
+public class VimsonFactory
+{
+    public VimsonFactory()
+    {
+        this(Runtime.getRuntime().availableProcessors() * 4);
+    }
+
+    /**
+     * @param poolSize The maximum number of pooled buffers of each kind.
+     */
+    public VimsonFactory(int poolSize)
+    {
+        this.pool= new BufferPool(Math.max(poolSize, 1));
+    }
+
+    /**
+     * Creates a parser which decodes with the factory's charset.
+     */
+    public VimsonParser createParser(InputStream in)
+    {
+        return this.createParser(new InputStreamReader(checkNotNull(in), this.charset));
+    }
+
+    public VimsonParser createParser(Reader in)
+    {
+        return this.configure(new VimsonParser(this.pool)).reset(in);
+    }
+
+    /**
+     * Creates a parser, an input which fits in the window is copied into it without allocating.
+     */
+    public VimsonParser createParser(CharSequence in)
+    {
+        return this.configure(new VimsonParser(this.pool)).reset(in);
+    }
+
+    /**
+     * Creates a generator which encodes with the factory's charset.
+     */
+    public VimsonGenerator createGenerator(OutputStream out)
+    {
+        return this.configure(new VimsonGenerator(new StreamOutput(out, this.charset, this.pool.acquireBytes()), this.pool));
+    }
+
+    public VimsonGenerator createGenerator(Writer out)
+    {
+        return this.configure(new VimsonGenerator(new WriterOutput(out, this.pool.acquireChars()), this.pool));
+    }
+
+    public VimsonGenerator createGenerator(Appendable out)
+    {
+        return this.configure(new VimsonGenerator(new AppendableOutput(out), this.pool));
+    }
+
+    /**
+     * Sets a charset of byte streams, UTF-8 by default.
+     */
+    public void setCharset(Charset charset)
+    {
+        this.charset= checkNotNull(charset);
+    }
+
+    public Charset getCharset()
+    {
+        return this.charset;
+    }
+
+    public void setContainerFactory(ContainerFactory containerFactory)
+    {
+        this.containerFactory= checkNotNull(containerFactory);
+    }
+
+    public ContainerFactory getContainerFactory()
+    {
+        return this.containerFactory;
+    }
+
+    public void setSymbolTable(SymbolTable symbols)
+    {
+        this.symbols= symbols;
+    }
+
+    public SymbolTable getSymbolTable()
+    {
+        return this.symbols;
+    }
+
+    /**
+     * Sets a codec which generators use for {@link VimsonGenerator#writeObject(Object)},
+     * and parsers use for {@link VimsonParser#parse(TypeReference)}.
+     */
+    public void setObjectCodec(ObjectCodec codec)
+    {
+        this.codec= codec;
+    }
+
+    public ObjectCodec getObjectCodec()
+    {
+        return this.codec;
+    }
+
+    /**
+     * Sets limits which parsers enforce, {@link VimsonLimits#DEFAULT} by default.
+     */
+    public void setLimits(VimsonLimits limits)
+    {
+        this.limits= checkNotNull(limits);
+    }
+
+    public VimsonLimits getLimits()
+    {
+        return this.limits;
+    }
+
+    /**
+     * Sets a listener which parsers and generators report to, or {@code null} to disable it.
+     * @see VimsonMetrics
+     */
+    public void setListener(VimsonListener listener)
+    {
+        this.listener= listener;
+    }
+
+    public VimsonListener getListener()
+    {
+        return this.listener;
+    }
+
+    private VimsonParser configure(VimsonParser parser)
+    {
+        parser.setContainerFactory(this.containerFactory);
+        parser.setSymbolTable(this.symbols);
+        if(this.codec != null)
+        {
+            parser.setObjectCodec(this.codec);
+        }
+        parser.setListener(this.listener);
+        parser.setLimits(this.limits);
+        return parser;
+    }
+
+    private VimsonGenerator configure(VimsonGenerator generator)
+    {
+        generator.setObjectCodec(this.codec);
+        generator.setListener(this.listener);
+        return generator;
+    }
+
+    private final BufferPool pool;
+
+    private volatile Charset charset= Charset.forName("UTF-8");
+
+    private volatile ContainerFactory containerFactory= ContainerFactory.COMPACT;
+
+    private volatile SymbolTable symbols= SymbolTable.getDefault();
+
+    private volatile ObjectCodec codec= new BeanCodec();
+
+    private volatile VimsonListener listener;
+
+    private volatile VimsonLimits limits= VimsonLimits.DEFAULT;
+}
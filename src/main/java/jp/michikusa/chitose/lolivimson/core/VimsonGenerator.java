@@ -4,10 +4,14 @@ import java.io.Closeable;
 import java.io.Flushable;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.channels.WritableByteChannel;
 import java.nio.charset.Charset;
 import java.util.ArrayDeque;
 import java.util.Deque;
 
+import jp.michikusa.chitose.lolivimson.VimsonException;
+
 import static jp.michikusa.chitose.lolivimson.util.Preconditions.checkNotNull;
 import static jp.michikusa.chitose.lolivimson.util.Preconditions.checkState;
 
@@ -20,97 +24,179 @@ public class VimsonGenerator
     }
 
     public VimsonGenerator(OutputStream out, Charset charset)
+    {
+        this(new StreamOutput(out, (charset != null) ? charset : Charset.defaultCharset()));
+    }
+
+    /**
+     * Creates a generator which writes UTF-8 to a channel, see {@link #VimsonGenerator(WritableByteChannel, Charset, boolean)}.
+     */
+    public VimsonGenerator(WritableByteChannel out)
+    {
+        this(out, null, false);
+    }
+
+    /**
+     * Creates a generator which encodes into a byte buffer and writes it to a channel without an intermediate stream.
+     * Non-blocking channels are never waited for, unwritten bytes are kept and retried,
+     * and {@link #flush()} writes only what the channel accepts; see {@link #tryFlush()} and {@link #hasPendingOutput()}.
+     * @param charset The charset, {@code null} for UTF-8.
+     * @param direct Whether to encode through a pooled direct buffer.
+     */
+    public VimsonGenerator(WritableByteChannel out, Charset charset, boolean direct)
+    {
+        this(new ChannelOutput(out, (charset != null) ? charset : Charset.forName("UTF-8"), direct));
+    }
+
+    /**
+     * Creates a generator which writes chars to a {@link Writer} without encoding them.
+     */
+    public VimsonGenerator(Writer out)
+    {
+        this(new WriterOutput(out));
+    }
+
+    /**
+     * Creates a generator which appends directly to an {@link Appendable}, such as {@link StringBuilder}.
+     */
+    public VimsonGenerator(Appendable out)
+    {
+        this(new AppendableOutput(out));
+    }
+
+    VimsonGenerator(VimsonOutput out)
+    {
+        this(out, null);
+    }
+
+    /**
+     * @param pool The pool which buffers of {@code out} are returned to on {@link #close()}, or {@code null}.
+     */
+    VimsonGenerator(VimsonOutput out, BufferPool pool)
     {
         this.out= checkNotNull(out);
-        this.charset= (charset != null) ? charset : Charset.defaultCharset();
+        this.pool= pool;
     }
 
+    /**
+     * Discards all state and unwritten output, and writes to {@code out} from now on,
+     * so that a generator can be reused across messages. The previous stream is not closed.
+     * @throws IllegalStateException If this generator doesn't write to an {@link OutputStream}.
+     */
+    public VimsonGenerator reset(OutputStream out)
+    {
+        checkState(!this.released && this.target() instanceof StreamOutput);
+
+        ((StreamOutput)this.target()).reset(out);
+        this.resetState();
+        return this;
+    }
+
+    /**
+     * Discards all state and unwritten output, and writes to {@code out} from now on, see {@link #reset(OutputStream)}.
+     * @throws IllegalStateException If this generator doesn't write to a {@link Writer}.
+     */
+    public VimsonGenerator reset(Writer out)
+    {
+        checkState(!this.released && this.target() instanceof WriterOutput);
+
+        ((WriterOutput)this.target()).reset(out);
+        this.resetState();
+        return this;
+    }
+
+    /**
+     * Discards all state, and appends to {@code out} from now on, see {@link #reset(OutputStream)}.
+     * @throws IllegalStateException If this generator doesn't write to an {@link Appendable}.
+     */
+    public VimsonGenerator reset(Appendable out)
+    {
+        checkState(!this.released && this.target() instanceof AppendableOutput);
+
+        ((AppendableOutput)this.target()).reset(out);
+        this.resetState();
+        return this;
+    }
+
+    /**
+     * Writes a quoted string, in the shorter of the single-quoted and the double-quoted forms.
+     * Control characters are always written in the double-quoted form.
+     */
     public void writeString(CharSequence value)
         throws IOException
     {
-        this.write("'");
-        this.write(value);
-        this.write("'");
-        if(this.shouldWriteComma())
-        {
-            this.write(",");
-        }
+        StringEscaper.writeQuoted(this.out, (value != null) ? value : "");
+        this.endValue();
     }
 
     public void writeRaw(CharSequence value)
         throws IOException
     {
         this.write(value);
+        if(this.context.isEmpty())
+        {
+            this.out.drain();
+        }
     }
 
     public void writeBoolean(boolean value)
         throws IOException
     {
-        this.write(value ? "1" : "0");
-        if(this.shouldWriteComma())
-        {
-            this.write(",");
-        }
+        this.write(value ? '1' : '0');
+        this.endValue();
     }
 
+    /**
+     * Writes a float with the fewest digits which read back to the same float, e.g. {@code 0.1} or {@code 1.0e10}.
+     * @throws VimsonException If {@code value} is NaN or infinite, which vim has no literal for.
+     */
     public void writeFloat(float value)
         throws IOException
     {
-        this.write("" + value);
-        if(this.shouldWriteComma())
-        {
-            this.write(",");
-        }
+        final int start= NumberFormatter.format(value, this.numberBuffer);
+
+        this.out.write(this.numberBuffer, start, this.numberBuffer.length - start);
+        this.endValue();
     }
 
+    /**
+     * Writes a double with the fewest digits which read back to the same double, e.g. {@code 0.1} or {@code 1.0e10}.
+     * @throws VimsonException If {@code value} is NaN or infinite, which vim has no literal for.
+     */
     public void writeFloat(double value)
         throws IOException
     {
-        this.write("" + value);
-        if(this.shouldWriteComma())
-        {
-            this.write(",");
-        }
+        final int start= NumberFormatter.format(value, this.numberBuffer);
+
+        this.out.write(this.numberBuffer, start, this.numberBuffer.length - start);
+        this.endValue();
     }
 
     public void writeNumber(byte value)
         throws IOException
     {
-        this.write("" + value);
-        if(this.shouldWriteComma())
-        {
-            this.write(",");
-        }
+        this.writeNumber((long)value);
     }
 
     public void writeNumber(short value)
         throws IOException
     {
-        this.write("" + value);
-        if(this.shouldWriteComma())
-        {
-            this.write(",");
-        }
+        this.writeNumber((long)value);
     }
 
     public void writeNumber(int value)
         throws IOException
     {
-        this.write("" + value);
-        if(this.shouldWriteComma())
-        {
-            this.write(",");
-        }
+        this.writeNumber((long)value);
     }
 
     public void writeNumber(long value)
         throws IOException
     {
-        this.write("" + value);
-        if(this.shouldWriteComma())
-        {
-            this.write(",");
-        }
+        final int start= NumberFormatter.format(value, this.numberBuffer);
+
+        this.out.write(this.numberBuffer, start, this.numberBuffer.length - start);
+        this.endValue();
     }
 
     public void writeObject(Object value)
@@ -192,8 +278,94 @@ public class VimsonGenerator
     public void writeFieldName(CharSequence fieldName)
         throws IOException
     {
-        this.write("'" + fieldName + "'");
-        this.write(":");
+        StringEscaper.writeQuoted(this.out, fieldName);
+        this.write(':');
+    }
+
+    /**
+     * Writes a field name which was quoted and encoded in advance.
+     */
+    public void writeFieldName(SerializedName fieldName)
+        throws IOException
+    {
+        this.out.write(fieldName);
+    }
+
+    public void writeObjectField(SerializedName fieldName, Object value)
+        throws IOException
+    {
+        this.writeFieldName(fieldName);
+        this.writeObject(value);
+    }
+
+    public void writeStringField(SerializedName fieldName, CharSequence value)
+        throws IOException
+    {
+        this.writeFieldName(fieldName);
+        this.writeString(value);
+    }
+
+    public void writeFloatField(SerializedName fieldName, float value)
+        throws IOException
+    {
+        this.writeFieldName(fieldName);
+        this.writeFloat(value);
+    }
+
+    public void writeFloatField(SerializedName fieldName, double value)
+        throws IOException
+    {
+        this.writeFieldName(fieldName);
+        this.writeFloat(value);
+    }
+
+    public void writeNumberField(SerializedName fieldName, byte value)
+        throws IOException
+    {
+        this.writeFieldName(fieldName);
+        this.writeNumber(value);
+    }
+
+    public void writeNumberField(SerializedName fieldName, short value)
+        throws IOException
+    {
+        this.writeFieldName(fieldName);
+        this.writeNumber(value);
+    }
+
+    public void writeNumberField(SerializedName fieldName, int value)
+        throws IOException
+    {
+        this.writeFieldName(fieldName);
+        this.writeNumber(value);
+    }
+
+    public void writeNumberField(SerializedName fieldName, long value)
+        throws IOException
+    {
+        this.writeFieldName(fieldName);
+        this.writeNumber(value);
+    }
+
+    public void writeBooleanField(SerializedName fieldName, boolean value)
+        throws IOException
+    {
+        this.writeFieldName(fieldName);
+        this.writeBoolean(value);
+    }
+
+    public void writeDictionaryFieldStart(SerializedName fieldName)
+        throws IOException
+    {
+        this.writeFieldName(fieldName);
+        this.writeStartDictionary();
+    }
+
+    public void writeListFieldStart(SerializedName fieldName)
+        throws IOException
+    {
+        this.writeFieldName(fieldName);
+        this.writeStartList();
     }
 
     public void writeDictionaryFieldStart(CharSequence fieldName)
@@ -206,21 +378,19 @@ public class VimsonGenerator
     public void writeStartDictionary()
         throws IOException
     {
-        this.write("{");
+        this.startContainer();
+        this.write('{');
         this.context.push(Context.DICTIONARY);
     }
 
     public void writeEndDictionary()
         throws IOException
     {
-        this.write("}");
+        this.write('}');
 
         checkState(this.context.pop() == Context.DICTIONARY);
 
-        if(this.shouldWriteComma())
-        {
-            this.write(",");
-        }
+        this.endValue();
     }
 
     public void writeListFieldStart(CharSequence fieldName)
@@ -233,21 +403,27 @@ public class VimsonGenerator
     public void writeStartList()
         throws IOException
     {
-        this.write("[");
+        this.startContainer();
+        this.write('[');
         this.context.push(Context.LIST);
     }
 
     public void writeEndList()
         throws IOException
     {
-        this.write("]");
+        this.write(']');
 
         checkState(this.context.pop() == Context.LIST);
 
-        if(this.shouldWriteComma())
-        {
-            this.write(",");
-        }
+        this.endValue();
+    }
+
+    /**
+     * Enters a list or a dictionary without writing its opener, so that a part of its elements can be written separately.
+     */
+    void enterContainer(boolean dictionary)
+    {
+        this.context.push(dictionary ? Context.DICTIONARY : Context.LIST);
     }
 
     public void setObjectCodec(ObjectCodec codec)
@@ -260,6 +436,32 @@ public class VimsonGenerator
         return this.codec;
     }
 
+    /**
+     * Sets a listener which is told about each top-level value, or {@code null} to disable it.
+     * Written chars are counted only while a listener is set.
+     */
+    public void setListener(VimsonListener listener)
+    {
+        if(listener != null && !(this.out instanceof CountingOutput))
+        {
+            this.out= new CountingOutput(this.out);
+        }
+        else if(listener == null)
+        {
+            this.out= this.target();
+        }
+        this.listener= listener;
+        this.resetStatistics();
+    }
+
+    public VimsonListener getListener()
+    {
+        return this.listener;
+    }
+
+    /**
+     * Writes buffered output to the underlying stream, and flushes it.
+     */
     @Override
     public void flush()
         throws IOException
@@ -267,12 +469,45 @@ public class VimsonGenerator
         this.out.flush();
     }
 
+    /**
+     * Writes buffered output as far as the target accepts it without waiting.
+     * For a non-blocking channel, wait for {@link java.nio.channels.SelectionKey#OP_WRITE} and call it again while it returns {@code false}.
+     * @return {@code true} if all output reached the target.
+     */
+    public boolean tryFlush()
+        throws IOException
+    {
+        return this.out.tryFlush();
+    }
+
+    /**
+     * Returns whether some output is kept because a non-blocking channel didn't accept it yet, see {@link #tryFlush()}.
+     */
+    public boolean hasPendingOutput()
+    {
+        return this.out.hasPending();
+    }
+
+    /**
+     * Flushes and closes the target, and returns buffers to the pool which they were borrowed from.
+     */
     @Override
     public void close()
         throws IOException
     {
-        this.out.flush();
-        this.out.close();
+        try
+        {
+            this.out.close();
+        }
+        finally
+        {
+            if(this.pool != null)
+            {
+                this.out.release(this.pool);
+                this.pool= null;
+                this.released= true;
+            }
+        }
     }
 
     private static enum Context
@@ -282,10 +517,86 @@ public class VimsonGenerator
         ;
     }
 
+    /**
+     * Returns the output under the counter.
+     */
+    private VimsonOutput target()
+    {
+        return (this.out instanceof CountingOutput) ? ((CountingOutput)this.out).getDelegate() : this.out;
+    }
+
+    private void resetState()
+    {
+        this.context.clear();
+        this.resetStatistics();
+    }
+
+    private void resetStatistics()
+    {
+        this.maxDepth= 0;
+        this.documentStart= 0;
+        this.documentChars= (this.out instanceof CountingOutput) ? ((CountingOutput)this.out).getCount() : 0;
+    }
+
+    private void startContainer()
+    {
+        if(this.context.isEmpty())
+        {
+            if(this.listener != null)
+            {
+                this.documentStart= System.nanoTime();
+            }
+        }
+        this.maxDepth= Math.max(this.maxDepth, this.context.size() + 1);
+    }
+
+    /**
+     * Reports a completed top-level value.
+     */
+    private void documentGenerated()
+    {
+        final long chars= ((CountingOutput)this.out).getCount();
+        final long nanos= (this.documentStart != 0) ? System.nanoTime() - this.documentStart : 0;
+
+        this.listener.documentGenerated(chars - this.documentChars, this.maxDepth, nanos);
+        this.documentChars= chars;
+        this.documentStart= 0;
+        this.maxDepth= 0;
+    }
+
     private void write(CharSequence value)
         throws IOException
     {
-        this.out.write((value != null ? value : "").toString().getBytes(this.charset));
+        if(value != null)
+        {
+            this.out.write(value, 0, value.length());
+        }
+    }
+
+    private void write(char c)
+        throws IOException
+    {
+        this.out.write(c);
+    }
+
+    /**
+     * Writes a separator after a value, or hands a completed top-level value to the stream.
+     */
+    private void endValue()
+        throws IOException
+    {
+        if(this.context.isEmpty())
+        {
+            if(this.listener != null)
+            {
+                this.documentGenerated();
+            }
+            this.out.drain();
+        }
+        else if(this.shouldWriteComma())
+        {
+            this.write(',');
+        }
     }
 
     private boolean shouldWriteComma()
@@ -297,11 +608,32 @@ public class VimsonGenerator
         return this.context.peekLast().equals(Context.LIST) || this.context.peekLast().equals(Context.DICTIONARY);
     }
 
-    private final OutputStream out;
-
-    private final Charset charset;
+    private VimsonOutput out;
 
     private final Deque<Context> context = new ArrayDeque<Context>();
 
     private ObjectCodec codec;
+
+    private BufferPool pool;
+
+    private VimsonListener listener;
+
+    /**
+     * Statistics of the current top-level value, which are reported to {@code listener}.
+     */
+    private int maxDepth;
+
+    private long documentStart;
+
+    private long documentChars;
+
+    /**
+     * Whether buffers were returned to the pool, the generator can't be reset then.
+     */
+    private boolean released;
+
+    /**
+     * Digits are formatted here, then copied to the output.
+     */
+    private final char[] numberBuffer= new char[NumberFormatter.BUFFER_SIZE];
 }
@@ -0,0 +1,113 @@
+package jp.michikusa.chitose.lolivimson.core;
+
+/**
+ * Limits which a {@link VimsonParser} enforces while lexing, so that a hostile input can't exhaust the stack or the heap.
+ * Exceeding one raises a {@link jp.michikusa.chitose.lolivimson.LimitExceededException}.
+ * Instances are immutable, {@code with...} methods return modified copies.
+ *
+ * <pre>
+ * parser.setLimits(VimsonLimits.DEFAULT.withMaxStringLength(1 &lt;&lt; 20).withMaxDocumentLength(16 &lt;&lt; 20));
+ * </pre>
+ */
+public final class VimsonLimits
+{
+    /**
+     * No limits at all, deep inputs may overflow the stack.
+     */
+    public static final VimsonLimits UNLIMITED= new VimsonLimits(Integer.MAX_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE, Long.MAX_VALUE);
+
+    /**
+     * The default, which only limits nesting depth to {@value #DEFAULT_MAX_DEPTH}.
+     */
+    public static final VimsonLimits DEFAULT= UNLIMITED.withMaxDepth(VimsonLimits.DEFAULT_MAX_DEPTH);
+
+    public static final int DEFAULT_MAX_DEPTH= 1000;
+
+    /**
+     * @param maxDepth The maximum nesting of dictionaries and lists.
+     */
+    public VimsonLimits withMaxDepth(int maxDepth)
+    {
+        return new VimsonLimits(positive(maxDepth), this.maxStringLength, this.maxContainerSize, this.maxDocumentLength);
+    }
+
+    /**
+     * @param maxStringLength The maximum length of a decoded string or dictionary key.
+     */
+    public VimsonLimits withMaxStringLength(int maxStringLength)
+    {
+        return new VimsonLimits(this.maxDepth, positive(maxStringLength), this.maxContainerSize, this.maxDocumentLength);
+    }
+
+    /**
+     * @param maxContainerSize The maximum number of elements of a decoded list or entries of a decoded dictionary.
+     */
+    public VimsonLimits withMaxContainerSize(int maxContainerSize)
+    {
+        return new VimsonLimits(this.maxDepth, this.maxStringLength, positive(maxContainerSize), this.maxDocumentLength);
+    }
+
+    /**
+     * @param maxDocumentLength The maximum number of chars of a single document, which are counted as they are consumed.
+     */
+    public VimsonLimits withMaxDocumentLength(long maxDocumentLength)
+    {
+        if(maxDocumentLength <= 0)
+        {
+            throw new IllegalArgumentException("Must be positive: " + maxDocumentLength);
+        }
+        return new VimsonLimits(this.maxDepth, this.maxStringLength, this.maxContainerSize, maxDocumentLength);
+    }
+
+    public int getMaxDepth()
+    {
+        return this.maxDepth;
+    }
+
+    public int getMaxStringLength()
+    {
+        return this.maxStringLength;
+    }
+
+    public int getMaxContainerSize()
+    {
+        return this.maxContainerSize;
+    }
+
+    public long getMaxDocumentLength()
+    {
+        return this.maxDocumentLength;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "VimsonLimits[maxDepth=" + this.maxDepth + ", maxStringLength=" + this.maxStringLength
+            + ", maxContainerSize=" + this.maxContainerSize + ", maxDocumentLength=" + this.maxDocumentLength + "]";
+    }
+
+    private VimsonLimits(int maxDepth, int maxStringLength, int maxContainerSize, long maxDocumentLength)
+    {
+        this.maxDepth= maxDepth;
+        this.maxStringLength= maxStringLength;
+        this.maxContainerSize= maxContainerSize;
+        this.maxDocumentLength= maxDocumentLength;
+    }
+
+    private static int positive(int value)
+    {
+        if(value <= 0)
+        {
+            throw new IllegalArgumentException("Must be positive: " + value);
+        }
+        return value;
+    }
+
+    private final int maxDepth;
+
+    private final int maxStringLength;
+
+    private final int maxContainerSize;
+
+    private final long maxDocumentLength;
+}
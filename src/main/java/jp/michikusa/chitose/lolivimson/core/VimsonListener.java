@@ -0,0 +1,39 @@
+package jp.michikusa.chitose.lolivimson.core;
+
+/**
+ * Receives statistics of each document which a {@link VimsonParser} or a {@link VimsonGenerator} processes.
+ * Methods are called on the parsing or generating thread, so implementations must be quick and thread-safe.
+ * Without a listener, parsers and generators only keep a few counters.
+ * @see VimsonMetrics
+ */
+public abstract class VimsonListener
+{
+    /**
+     * A top-level value was parsed by a {@link VimsonParser}, when its last token was read.
+     * @param chars The number of chars which were consumed.
+     * @param tokens The number of tokens which were read.
+     * @param maxDepth The deepest nesting of containers.
+     * @param nanos The elapsed time.
+     */
+    public void documentParsed(long chars, int tokens, int maxDepth, long nanos)
+    {
+    }
+
+    /**
+     * Parsing a top-level value failed.
+     * @param offset The offset in chars where it failed.
+     */
+    public void documentFailed(Throwable error, long offset)
+    {
+    }
+
+    /**
+     * A top-level value was written by a {@link VimsonGenerator}.
+     * @param chars The number of chars which were written.
+     * @param maxDepth The deepest nesting of containers.
+     * @param nanos The elapsed time from its opener, {@code 0} for a scalar.
+     */
+    public void documentGenerated(long chars, int maxDepth, long nanos)
+    {
+    }
+}
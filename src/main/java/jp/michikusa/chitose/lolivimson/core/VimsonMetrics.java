@@ -0,0 +1,232 @@
+package jp.michikusa.chitose.lolivimson.core;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * A listener which accumulates counters, and exposes them as a JMX MBean.
+ *
+ * <p>
+ * A document which takes {@link #getSlowNanos()} or longer, or is {@link #getLargeChars()} or larger, is an outlier.
+ * Outliers are counted and passed to {@link #outlier(String, long, int, long)}, which records the last one.
+ * Override it to forward outliers to a tracing or event system, e.g. flight recorder events on java 11 or later.
+ * </p>
+ *
+ * <pre>
+ * final VimsonMetrics metrics= new VimsonMetrics();
+ * metrics.register("jp.michikusa.chitose.lolivimson:type=VimsonMetrics");
+ * factory.setListener(metrics);
+ * </pre>
+ */
+public class VimsonMetrics
+    extends VimsonListener
+    implements VimsonMetricsMBean
+{
+    /**
+     * Registers this to the platform MBean server.
+     */
+    public ObjectName register(String name)
+        throws JMException
+    {
+        final ObjectName objectName= new ObjectName(name);
+
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+        return objectName;
+    }
+
+    @Override
+    public void documentParsed(long chars, int tokens, int maxDepth, long nanos)
+    {
+        this.documentsParsed.incrementAndGet();
+        this.charsParsed.addAndGet(chars);
+        this.tokensParsed.addAndGet(tokens);
+        this.parseNanos.addAndGet(nanos);
+        this.updateMaxDepth(maxDepth);
+        if(nanos >= this.slowNanos || chars >= this.largeChars)
+        {
+            this.outliers.incrementAndGet();
+            this.outlier("parse", chars, maxDepth, nanos);
+        }
+    }
+
+    @Override
+    public void documentFailed(Throwable error, long offset)
+    {
+        this.errors.incrementAndGet();
+    }
+
+    @Override
+    public void documentGenerated(long chars, int maxDepth, long nanos)
+    {
+        this.documentsGenerated.incrementAndGet();
+        this.charsGenerated.addAndGet(chars);
+        this.generateNanos.addAndGet(nanos);
+        this.updateMaxDepth(maxDepth);
+        if(nanos >= this.slowNanos || chars >= this.largeChars)
+        {
+            this.outliers.incrementAndGet();
+            this.outlier("generate", chars, maxDepth, nanos);
+        }
+    }
+
+    @Override
+    public long getDocumentsParsed()
+    {
+        return this.documentsParsed.get();
+    }
+
+    @Override
+    public long getDocumentsGenerated()
+    {
+        return this.documentsGenerated.get();
+    }
+
+    @Override
+    public long getCharsParsed()
+    {
+        return this.charsParsed.get();
+    }
+
+    @Override
+    public long getCharsGenerated()
+    {
+        return this.charsGenerated.get();
+    }
+
+    @Override
+    public long getTokensParsed()
+    {
+        return this.tokensParsed.get();
+    }
+
+    @Override
+    public long getErrors()
+    {
+        return this.errors.get();
+    }
+
+    @Override
+    public int getMaxDepth()
+    {
+        return this.maxDepth.get();
+    }
+
+    @Override
+    public long getParseNanos()
+    {
+        return this.parseNanos.get();
+    }
+
+    @Override
+    public long getGenerateNanos()
+    {
+        return this.generateNanos.get();
+    }
+
+    @Override
+    public long getOutliers()
+    {
+        return this.outliers.get();
+    }
+
+    @Override
+    public String getLastOutlier()
+    {
+        return this.lastOutlier;
+    }
+
+    @Override
+    public long getSlowNanos()
+    {
+        return this.slowNanos;
+    }
+
+    @Override
+    public void setSlowNanos(long slowNanos)
+    {
+        this.slowNanos= slowNanos;
+    }
+
+    @Override
+    public long getLargeChars()
+    {
+        return this.largeChars;
+    }
+
+    @Override
+    public void setLargeChars(long largeChars)
+    {
+        this.largeChars= largeChars;
+    }
+
+    @Override
+    public void reset()
+    {
+        this.documentsParsed.set(0);
+        this.documentsGenerated.set(0);
+        this.charsParsed.set(0);
+        this.charsGenerated.set(0);
+        this.tokensParsed.set(0);
+        this.errors.set(0);
+        this.maxDepth.set(0);
+        this.parseNanos.set(0);
+        this.generateNanos.set(0);
+        this.outliers.set(0);
+        this.lastOutlier= null;
+    }
+
+    /**
+     * Called for a slow or large document, records it as the last outlier.
+     * @param operation {@code "parse"} or {@code "generate"}.
+     */
+    protected void outlier(String operation, long chars, int maxDepth, long nanos)
+    {
+        this.lastOutlier= operation + ": " + chars + " chars, depth " + maxDepth + ", " + (nanos / 1000) + " us";
+    }
+
+    private void updateMaxDepth(int depth)
+    {
+        int current;
+        while(depth > (current= this.maxDepth.get()))
+        {
+            if(this.maxDepth.compareAndSet(current, depth))
+            {
+                return;
+            }
+        }
+    }
+
+    private static final long DEFAULT_SLOW_NANOS= 100L * 1000 * 1000;
+
+    private static final long DEFAULT_LARGE_CHARS= 1L << 20;
+
+    private final AtomicLong documentsParsed= new AtomicLong();
+
+    private final AtomicLong documentsGenerated= new AtomicLong();
+
+    private final AtomicLong charsParsed= new AtomicLong();
+
+    private final AtomicLong charsGenerated= new AtomicLong();
+
+    private final AtomicLong tokensParsed= new AtomicLong();
+
+    private final AtomicLong errors= new AtomicLong();
+
+    private final AtomicInteger maxDepth= new AtomicInteger();
+
+    private final AtomicLong parseNanos= new AtomicLong();
+
+    private final AtomicLong generateNanos= new AtomicLong();
+
+    private final AtomicLong outliers= new AtomicLong();
+
+    private volatile String lastOutlier;
+
+    private volatile long slowNanos= DEFAULT_SLOW_NANOS;
+
+    private volatile long largeChars= DEFAULT_LARGE_CHARS;
+}
@@ -0,0 +1,42 @@
+package jp.michikusa.chitose.lolivimson.core;
+
+/**
+ * The JMX interface of {@link VimsonMetrics}.
+ */
+public interface VimsonMetricsMBean
+{
+    long getDocumentsParsed();
+
+    long getDocumentsGenerated();
+
+    long getCharsParsed();
+
+    long getCharsGenerated();
+
+    long getTokensParsed();
+
+    long getErrors();
+
+    int getMaxDepth();
+
+    long getParseNanos();
+
+    long getGenerateNanos();
+
+    long getOutliers();
+
+    String getLastOutlier();
+
+    long getSlowNanos();
+
+    void setSlowNanos(long slowNanos);
+
+    long getLargeChars();
+
+    void setLargeChars(long largeChars);
+
+    /**
+     * Clears all counters.
+     */
+    void reset();
+}
@@ -0,0 +1,65 @@
+package jp.michikusa.chitose.lolivimson.core;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+
+/**
+ * A character sink which {@link VimsonGenerator} writes to.
+ * Implementations may buffer, buffered output reaches the target on {@link #drain()}.
+ */
+abstract class VimsonOutput
+    implements Closeable, Flushable
+{
+    public abstract void write(char c)
+        throws IOException;
+
+    public abstract void write(CharSequence s, int start, int end)
+        throws IOException;
+
+    public abstract void write(char[] c, int offset, int length)
+        throws IOException;
+
+    /**
+     * Writes a pre-quoted field name, implementations may copy its encoded form.
+     */
+    public void write(SerializedName name)
+        throws IOException
+    {
+        final char[] chars= name.asQuotedChars();
+
+        this.write(chars, 0, chars.length);
+    }
+
+    /**
+     * Hands buffered output to the target, without flushing the target itself.
+     */
+    public abstract void drain()
+        throws IOException;
+
+    /**
+     * Hands buffered output to the target as far as it accepts without waiting, and flushes the target if all of it was handed.
+     * @return {@code false} if some output is still pending, see {@link #hasPending()}.
+     */
+    public boolean tryFlush()
+        throws IOException
+    {
+        this.flush();
+        return true;
+    }
+
+    /**
+     * Returns whether some output is kept because the target didn't accept it yet.
+     */
+    public boolean hasPending()
+    {
+        return false;
+    }
+
+    /**
+     * Returns buffers to {@code pool}, the output must not be used after this.
+     */
+    public void release(BufferPool pool)
+    {
+    }
+}
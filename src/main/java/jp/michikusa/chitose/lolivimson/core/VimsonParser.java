@@ -1,468 +1,2164 @@
 package jp.michikusa.chitose.lolivimson.core;
 
+import java.io.Closeable;
 import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.Reader;
+import java.lang.reflect.Type;
+import java.math.BigInteger;
+import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
-import java.util.HashMap;
-import java.util.LinkedList;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 
+import jp.michikusa.chitose.lolivimson.LimitExceededException;
+import jp.michikusa.chitose.lolivimson.TypeMismatchException;
+import jp.michikusa.chitose.lolivimson.util.CharSequenceReader;
+import jp.michikusa.chitose.lolivimson.util.MappedFileReader;
+
+import static jp.michikusa.chitose.lolivimson.util.Preconditions.checkNotNull;
+import static jp.michikusa.chitose.lolivimson.util.Preconditions.checkState;
+
 public class VimsonParser
+    implements Closeable
 {
     public VimsonParser(InputStream in)
     {
-        this.in= new InputStreamReader(in, Charset.forName("UTF-8"));
-        this.offset= 0;
-        try
+        this(new InputStreamReader(checkNotNull(in), Charset.forName("UTF-8")));
+    }
+
+    public VimsonParser(Reader in)
+    {
+        this.in= checkNotNull(in);
+        this.buffer= new char[BUFFER_SIZE];
+        this.pos= 0;
+        this.end= 0;
+        this.bufferOffset= 0;
+    }
+
+    /**
+     * Creates a parser which reads a UTF-8 file through a memory mapping, see {@link MappedFileReader}.
+     * The file is not copied onto the heap, and the channel may be closed after this returns.
+     */
+    public VimsonParser(FileChannel in)
+        throws IOException
+    {
+        this(new MappedFileReader(in));
+    }
+
+    /**
+     * Creates a parser which reads from a {@link CharSequence} without encoding it to bytes.
+     * Short inputs are lexed in a single window, longer ones are copied in window-sized chunks.
+     */
+    public VimsonParser(CharSequence in)
+    {
+        final int length= checkNotNull(in).length();
+
+        if(length <= BUFFER_SIZE)
         {
-            this.c= (char) this.in.read();
-            this.c2= (char)this.in.read();
+            this.in= null;
+            this.buffer= new char[length];
+            CharSequenceReader.getChars(in, 0, length, this.buffer, 0);
+            this.end= length;
         }
-        catch(IOException e)
+        else
         {
-            throw new RuntimeException(e);
+            this.in= new CharSequenceReader(in);
+            this.buffer= new char[BUFFER_SIZE];
+            this.end= 0;
         }
+        this.pos= 0;
+        this.bufferOffset= 0;
     }
 
-    public <T> T parse(T...type)
-        throws IOException
+    public VimsonParser(char[] in)
+    {
+        this(in, 0, checkNotNull(in).length);
+    }
+
+    /**
+     * Creates a parser which reads directly from the given array.
+     * The array is used as the lexer window as is, so it must not be modified while parsing.
+     */
+    public VimsonParser(char[] in, int offset, int length)
     {
-        if(this.c == EOF)
+        checkNotNull(in);
+        if(offset < 0 || length < 0 || offset + length > in.length)
         {
-            throw new EOFException();
+            throw new IndexOutOfBoundsException();
         }
 
-        this.skip();
-        final Object value= this.value();
+        this.in= null;
+        this.buffer= in;
+        this.sharedBuffer= true;
+        this.pos= offset;
+        this.end= offset + length;
+        this.bufferOffset= -offset;
+    }
+
+    /**
+     * Creates a parser without input, whose window is borrowed from {@code pool} and returned on {@link #close()}.
+     */
+    VimsonParser(BufferPool pool)
+    {
+        this.pool= checkNotNull(pool);
+        this.in= null;
+        this.buffer= pool.acquireChars();
+        this.pos= 0;
+        this.end= 0;
+        this.bufferOffset= 0;
+    }
+
+    /**
+     * Discards all state and starts parsing {@code in}, so that a parser can be reused across messages.
+     * The window is kept, the previous input is not closed.
+     */
+    public VimsonParser reset(Reader in)
+    {
+        checkNotNull(in);
+
+        this.resetState();
+        this.in= in;
+        this.end= 0;
+        return this;
+    }
+
+    /**
+     * Discards all state and starts parsing {@code in}, see {@link #reset(Reader)}.
+     * An input which fits in the window is copied into it.
+     */
+    public VimsonParser reset(CharSequence in)
+    {
+        final int length= checkNotNull(in).length();
 
-        if(type.getClass().getComponentType().isAssignableFrom(value.getClass()))
+        this.resetState();
+        if(length <= this.buffer.length)
         {
-            @SuppressWarnings("unchecked")
-            final T ret= (T) value;
-            return ret;
+            this.in= null;
+            CharSequenceReader.getChars(in, 0, length, this.buffer, 0);
+            this.end= length;
         }
         else
         {
-            throw new IllegalArgumentException();
+            this.in= new CharSequenceReader(in);
+            this.end= 0;
         }
+        return this;
     }
 
-    private static boolean isOctDigit(char c)
+    /**
+     * Closes the input, and returns the window to the pool which it was borrowed from.
+     * The parser can be used again after {@link #reset(Reader)}.
+     */
+    @Override
+    public void close()
+        throws IOException
     {
-        return c >= '0' && c <= '7';
+        final Reader in= this.in;
+
+        this.in= null;
+        this.pos= 0;
+        this.end= 0;
+        if(this.pool != null && !this.sharedBuffer)
+        {
+            this.pool.releaseChars(this.buffer);
+            this.buffer= EMPTY_BUFFER;
+        }
+        if(in != null)
+        {
+            in.close();
+        }
     }
 
-    private static boolean isHexDigit(char c)
+    public <T> T parse(T...type)
+        throws IOException
     {
-        return isDigit(c) || (c >= 'a' && c <= 'f') || (c >= 'A' && c <= 'F');
+        @SuppressWarnings("unchecked")
+        final Class<T> expected= (Class<T>)type.getClass().getComponentType();
+
+        return this.parse(expected);
     }
 
-    private static boolean isDigit(char c)
+    /**
+     * Parses a value which is expected to be a {@code type}.
+     * Dictionaries, lists and scalars are type-checked as soon as the first token is read,
+     * so a mismatch fails before the whole value is parsed.
+     * Other types, such as beans, enums and arrays, are read by the codec, see {@link #setObjectCodec(ObjectCodec)}.
+     * @throws TypeMismatchException If the value is not a {@code type}.
+     */
+    public <T> T parse(Class<T> type)
+        throws IOException
     {
-        return c >= '0' && c <= '9';
+        checkNotNull(type);
+
+        @SuppressWarnings("unchecked")
+        final T value= (T)this.parseDocument(type);
+        return value;
+    }
+
+    /**
+     * Parses a value into a generic type, e.g. {@code List<Item>} or {@code Map<String, Item>}, by the codec.
+     * @throws TypeMismatchException If the value doesn't fit the type.
+     * @see #parse(Class)
+     */
+    public <T> T parse(TypeReference<T> type)
+        throws IOException
+    {
+        checkNotNull(type);
+
+        @SuppressWarnings("unchecked")
+        final T value= (T)this.parseDocument(type.getType());
+        return value;
     }
 
-    private CharSequence key()
+    private Object parseDocument(Type type)
         throws IOException
     {
-        if(this.c == '\'')
+        if(this.listener == null)
         {
-            return this.singleQuotedString();
+            return this.parseAs(type);
         }
-        else if(this.c == '"')
+
+        // tokens report the document, errors of the codec or the filter are reported here
+        try
         {
-            return this.doubleQuotedString();
+            return this.parseAs(type);
         }
-        else
+        catch(IOException e)
         {
-            throw new IllegalArgumentException();
+            this.documentFailed(e);
+            throw e;
+        }
+        catch(RuntimeException e)
+        {
+            this.documentFailed(e);
+            throw e;
+        }
+    }
+
+    private Object parseAs(Type type)
+        throws IOException
+    {
+        final VimsonToken token= this.nextToken();
+
+        if(token == null)
+        {
+            throw new EOFException();
+        }
+        if(!(type instanceof Class) || !isTreeType((Class<?>)type))
+        {
+            return this.codec.readValue(this, type);
+        }
+
+        final Class<?> expected= (Class<?>)type;
+        final Class<?> kind= valueType(token);
+        if(!expected.isAssignableFrom(kind) && !kind.isAssignableFrom(expected))
+        {
+            throw new TypeMismatchException(expected, kind);
         }
+
+        final Object value= this.readValue(token);
+
+        if(!expected.isInstance(value))
+        {
+            throw new TypeMismatchException(expected, value.getClass());
+        }
+        return value;
+    }
+
+    /**
+     * Tests whether {@code type} holds any value of a kind, e.g. {@link Object}, {@link Map} or {@link Number},
+     * which are read as is rather than by the codec.
+     */
+    private static boolean isTreeType(Class<?> type)
+    {
+        return type.isAssignableFrom(Map.class) || type.isAssignableFrom(List.class)
+            || type.isAssignableFrom(String.class) || type.isAssignableFrom(Number.class);
+    }
+
+    /**
+     * Reads the value at the current token into dictionaries and lists, see {@link #nextValue()}.
+     * After returning, the current token is the last token of the value.
+     */
+    public Object readValue()
+        throws IOException
+    {
+        return this.readValue(this.nextValue());
     }
 
-    private Object value()
+    /**
+     * Parses only the values on the paths which {@code filter} includes, other values are skipped without decoding.
+     * The result keeps the shape of the document, dictionaries and lists hold only what leads to the included values.
+     * @return The pruned value, or {@code null} if nothing is included.
+     * @see VimsonPath
+     */
+    public Object parse(PathFilter filter)
         throws IOException
     {
-        if(this.c == '{')
+        checkNotNull(filter);
+
+        if(this.listener == null)
         {
-            return this.dictionary();
+            return this.parseProjected(filter);
         }
-        else if(this.c == '[')
+
+        // tokens report the document, errors of the codec or the filter are reported here
+        try
         {
-            return this.list();
+            return this.parseProjected(filter);
         }
-        else if(this.c == '\'')
+        catch(IOException e)
         {
-            return this.singleQuotedString();
+            this.documentFailed(e);
+            throw e;
         }
-        else if(this.c == '"')
+        catch(RuntimeException e)
         {
-            return this.doubleQuotedString();
+            this.documentFailed(e);
+            throw e;
         }
-        else
+    }
+
+    private Object parseProjected(PathFilter filter)
+        throws IOException
+    {
+        final List<Object> path= new ArrayList<Object>();
+        final VimsonToken token= this.nextToken();
+        if(token == null)
         {
-            return this.numberOrFloat();
+            throw new EOFException();
         }
+
+        final Object value= this.project(filter, path, token);
+        return (value != NOTHING) ? value : null;
     }
 
-    private Map<String, Object> dictionary()
+    /**
+     * Moves onto the first token of a value.
+     * Does nothing if the current token is a value already,
+     * otherwise (i.e. before the first token, on a {@link VimsonToken#FIELD_NAME} or on an end token) reads the next token.
+     * @return The current token.
+     * @throws EOFException If there is no more value.
+     */
+    public VimsonToken nextValue()
         throws IOException
     {
-        this.match('{');
-        this.consume();
+        final VimsonToken token= this.token;
 
-        final Map<String, Object> map= new HashMap<String, Object>();
-        while(this.c != EOF)
+        if(token != null && token != VimsonToken.FIELD_NAME && token != VimsonToken.END_DICTIONARY && token != VimsonToken.END_LIST)
         {
-            if(this.c == '}')
-            {
-                break;
-            }
+            return token;
+        }
 
-            this.skip();
-            final String key= this.key().toString();
+        final VimsonToken next= this.nextToken();
+        if(next == null)
+        {
+            throw new EOFException();
+        }
+        return next;
+    }
 
-            this.skip();
-            this.match(':');
-            this.consume();
+    /**
+     * Sets a factory which creates dictionaries and lists for {@link #parse(Class)}.
+     * The default is {@link ContainerFactory#COMPACT}.
+     */
+    public void setContainerFactory(ContainerFactory containerFactory)
+    {
+        this.containerFactory= checkNotNull(containerFactory);
+    }
 
-            this.skip();
-            final Object value= this.value();
+    public ContainerFactory getContainerFactory()
+    {
+        return this.containerFactory;
+    }
 
-            map.put(key, value);
+    /**
+     * Sets a table which canonicalizes dictionary keys, {@code null} disables it.
+     * The default is {@link SymbolTable#getDefault()}, which is shared by all parsers.
+     */
+    public void setSymbolTable(SymbolTable symbols)
+    {
+        this.symbols= symbols;
+    }
 
-            this.skip();
-            if(this.c == ',')
-            {
-                this.consume();
-                this.skip();
-            }
-            if(this.c == '}')
-            {
-                break;
-            }
-        }
+    public SymbolTable getSymbolTable()
+    {
+        return this.symbols;
+    }
 
-        this.match('}');
-        this.consume();
+    /**
+     * Sets limits which are checked while lexing, {@link VimsonLimits#DEFAULT} by default.
+     */
+    public void setLimits(VimsonLimits limits)
+    {
+        this.limits= checkNotNull(limits);
+        this.depthLimit= limits.getMaxDepth();
+        this.stringLengthLimit= limits.getMaxStringLength();
+        this.containerSizeLimit= limits.getMaxContainerSize();
+        this.documentLengthLimit= limits.getMaxDocumentLength();
+    }
 
-        return map;
+    public VimsonLimits getLimits()
+    {
+        return this.limits;
     }
 
-    private List<Object> list()
-        throws IOException
+    /**
+     * Sets a codec which {@link #parse(Class)} and {@link #parse(TypeReference)} read into other than dictionaries, lists and scalars.
+     * The default is a {@link BeanCodec}.
+     */
+    public void setObjectCodec(ObjectCodec codec)
     {
-        this.match('[');
-        this.consume();
+        this.codec= checkNotNull(codec);
+    }
 
-        final List<Object> list= new LinkedList<Object>();
-        while(this.c != EOF)
-        {
-            if(this.c == ']')
-            {
-                break;
-            }
+    public ObjectCodec getObjectCodec()
+    {
+        return this.codec;
+    }
 
-            this.skip();
-            final Object value= this.value();
+    /**
+     * Sets a listener which is told about each top-level value, or {@code null} to disable it.
+     * Values are reported however they are read, by {@link #parse(Class)}, {@link #readValue()} or {@link #nextToken()}.
+     */
+    public void setListener(VimsonListener listener)
+    {
+        this.listener= listener;
+        this.inDocument= false;
+    }
 
-            list.add(value);
+    public VimsonListener getListener()
+    {
+        return this.listener;
+    }
 
-            this.skip();
-            if(this.c == ',')
-            {
-                this.consume();
-                this.skip();
-            }
-            if(this.c == ']')
-            {
-                break;
-            }
+    /**
+     * Reads the next token.
+     * @return The next token, or {@code null} if the top-level value has been read.
+     * @throws EOFException If the input ends in the middle of a value.
+     */
+    public VimsonToken nextToken()
+        throws IOException
+    {
+        if(this.listener == null)
+        {
+            return this.readToken();
+        }
+
+        if(!this.inDocument && this.context.isEmpty() && !this.afterValue)
+        {
+            this.documentStarted();
+        }
+        final VimsonToken token;
+        try
+        {
+            token= this.readToken();
+        }
+        catch(IOException e)
+        {
+            this.documentFailed(e);
+            throw e;
         }
+        catch(RuntimeException e)
+        {
+            this.documentFailed(e);
+            throw e;
+        }
+        this.documentEnded();
+        return token;
+    }
 
-        this.match(']');
-        this.consume();
+    private VimsonToken readToken()
+        throws IOException
+    {
+        final VimsonToken token= this.lexToken();
 
-        return list;
+        if(this.bufferOffset + this.pos - this.documentOffset > this.documentLengthLimit)
+        {
+            throw this.documentTooLong();
+        }
+        return token;
     }
 
-    private Number numberOrFloat()
+    private VimsonToken lexToken()
         throws IOException
     {
-        final StringBuilder number= new StringBuilder();
-        int radix= 10;
+        ++this.tokenCount;
+        this.skip();
 
-        if(this.c == '+' || this.c == '-')
+        if(this.token == VimsonToken.FIELD_NAME)
         {
-            number.append(this.c);
-            this.consume();
+            this.match(':');
+            this.skip();
+            return this.valueToken();
         }
 
-        if(this.c == '0')
+        if(this.context.isEmpty())
         {
-            number.append('0');
-            this.consume();
-            if(this.c == 'x' || this.c == 'x')
+            if(this.afterValue)
             {
-                radix= 16;
-                this.consume();
+                return this.token= null;
             }
-            else
+            if(this.peek() == EOF)
             {
-                radix= 8;
+                throw new EOFException();
             }
+            return this.valueToken();
         }
 
-        while(isDigit(this.c) || isHexDigit(this.c) || isOctDigit(this.c))
+        final Context context= this.context.peek();
+        int c= this.peek();
+
+        if(this.afterValue)
         {
-            number.append(this.c);
-            if(radix == 8 && !isOctDigit(this.c))
+            if(c == ',')
             {
-                radix= 10;
+                ++this.pos;
+                this.skip();
+                c= this.peek();
+            }
+            else if(c != context.closer)
+            {
+                throw new IllegalArgumentException("Expected `,' or `" + context.closer + "'");
             }
-            this.consume();
         }
 
-        if(this.c != '.')
+        if(c == context.closer)
         {
-            return Integer.valueOf(number.toString(), radix);
+            ++this.pos;
+            return this.endContainer();
         }
-        number.append('.');
-        this.consume();
 
-        // float-type
-        radix= 10;
-        while(isDigit(this.c))
+        if(context == Context.DICTIONARY)
         {
-            number.append(this.c);
-            this.consume();
+            this.afterValue= false;
+            this.text= this.key();
+            return this.token= VimsonToken.FIELD_NAME;
         }
+        return this.valueToken();
+    }
+
+    /**
+     * Returns the token which was returned by the last {@link #nextToken()} call.
+     */
+    public VimsonToken getCurrentToken()
+    {
+        return this.token;
+    }
+
+    /**
+     * Returns the textual representation of the current token.
+     * For {@link VimsonToken#FIELD_NAME} and {@link VimsonToken#VALUE_STRING}, it is the decoded string.
+     */
+    public String getText()
+    {
+        final VimsonToken token= this.token;
 
-        if(this.c == 'e' || this.c == 'E')
+        if(token == null)
         {
-            number.append('e');
-            this.consume();
-            if(this.c == '+' || this.c == '-')
-            {
-                number.append(this.c);
-                this.consume();
-            }
+            return null;
+        }
 
-            while(isDigit(this.c))
-            {
-                number.append(this.c);
-                this.consume();
-            }
+        switch(token)
+        {
+        case FIELD_NAME:
+        case VALUE_STRING:
+            return this.text;
+        case VALUE_NUMBER:
+        case VALUE_FLOAT:
+            return this.number.toString();
+        default:
+            return token.asString();
+        }
+    }
+
+    /**
+     * Returns the value of the current {@link VimsonToken#VALUE_NUMBER} or {@link VimsonToken#VALUE_FLOAT} token.
+     * @throws IllegalStateException If the current token is not a numeric value.
+     */
+    public Number getNumberValue()
+    {
+        if(this.token != VimsonToken.VALUE_NUMBER && this.token != VimsonToken.VALUE_FLOAT)
+        {
+            throw new IllegalStateException("Current token is not a number: " + this.token);
         }
+        return this.number;
+    }
 
-        return Double.valueOf(number.toString());
+    /**
+     * Returns the nesting depth of the current position, top-level is {@code 0}.
+     */
+    public int getDepth()
+    {
+        return this.context.size();
     }
 
-    private CharSequence singleQuotedString()
+    /**
+     * Skips all children of the current container without materializing them.
+     * If the current token is {@link VimsonToken#START_DICTIONARY} or {@link VimsonToken#START_LIST},
+     * the parser is moved onto the matching end token, otherwise does nothing.
+     * Skipped contents are only scanned for quotes and brackets, not validated.
+     */
+    public VimsonParser skipChildren()
         throws IOException
     {
-        this.match('\'');
-        this.consume();
-
-        final StringBuilder buffer= new StringBuilder();
-        while(this.c != EOF)
+        if(this.token != VimsonToken.START_DICTIONARY && this.token != VimsonToken.START_LIST)
         {
-            if(this.c == '\'' && this.c2 == '\'')
-            {
-                buffer.append('\'');
-                this.consume();
-                this.consume();
-            }
-            else if(this.c == '\'')
-            {
-                break;
-            }
-            else
-            {
-                buffer.append(this.c);
-                this.consume();
-            }
+            return this;
+        }
+        if(this.listener == null)
+        {
+            this.scanChildren();
+            return this;
         }
 
-        this.match('\'');
-        this.consume();
-
-        return buffer.toString();
+        try
+        {
+            this.scanChildren();
+        }
+        catch(IOException e)
+        {
+            this.documentFailed(e);
+            throw e;
+        }
+        catch(RuntimeException e)
+        {
+            this.documentFailed(e);
+            throw e;
+        }
+        this.documentEnded();
+        return this;
     }
 
-    private CharSequence doubleQuotedString()
+    private void scanChildren()
         throws IOException
     {
-        this.match('"');
-        this.consume();
-
-        final StringBuilder buffer= new StringBuilder();
-        while(this.c != EOF)
+        int depth= 1;
+        for(;;)
         {
-            if(this.c == '\\')
+            final char[] buf= this.buffer;
+            final int end= this.end;
+            int p= this.pos;
+
+            while(p < end)
             {
-                this.consume();
-                // \... - 3 octal digits
-                // \..  - 2 octal digits
-                // \.   - 1 octal digits
-                if(isOctDigit(this.c))
-                {
-                    final StringBuilder octal= new StringBuilder(3);
-                    octal.append(this.c);
-                    this.consume();
-                    while(isOctDigit(this.c))
-                    {
-                        octal.append(this.c);
-                        this.consume();
-                    }
-                    buffer.append((char)(int)Integer.valueOf(octal.toString(), 8));
-                }
-                // \x.. - 2 hex digits
-                // \x.  - 1 hex digits
-                else if(this.c == 'x' || this.c == 'X')
-                {
-                    final StringBuilder hex= new StringBuilder(2);
-                    this.consume();
-                    while(isHexDigit(this.c))
-                    {
-                        hex.append(this.c);
-                        this.consume();
-                    }
-                    buffer.append((char)(int)Integer.valueOf(hex.toString(), 16));
-                }
-                // \\u.... - 4 hex digits
-                else if(this.c == 'u' || this.c == 'U')
+                final char c= buf[p];
+                if(c == '\'' || c == '"')
                 {
-                    final StringBuilder hex= new StringBuilder(4);
-                    this.consume();
-                    while(hex.length() < 4)
-                    {
-                        hex.append(this.c);
-                        this.consume();
-                    }
-                    buffer.append((char)(int)Integer.valueOf(hex.toString(), 16));
-                }
-                else if(this.c == 'b')
-                {
-                    this.consume();
-                    buffer.append("\b");
-                }
-                else if(this.c == 'e')
-                {
-                    this.consume();
-                    buffer.append((char)27);
-                }
-                else if(this.c == 'f')
-                {
-                    this.consume();
-                    buffer.append("\f");
-                }
-                else if(this.c == 'n')
-                {
-                    this.consume();
-                    buffer.append("\n");
+                    break;
                 }
-                else if(this.c == 'r')
+                ++p;
+                if(c == '{' || c == '[')
                 {
-                    this.consume();
-                    buffer.append("\r");
+                    ++depth;
                 }
-                else if(this.c == 't')
+                else if(c == '\n')
                 {
-                    this.consume();
-                    buffer.append("\t");
+                    ++this.lines;
+                    this.lineStart= this.bufferOffset + p;
                 }
-                else if(this.c == '"')
+                else if(c == '}' || c == ']')
                 {
-                    this.consume();
-                    buffer.append('"');
+                    if(--depth == 0)
+                    {
+                        this.pos= p;
+                        this.endContainer();
+                        return;
+                    }
                 }
-                else if(this.c == '\\')
+            }
+            this.pos= p;
+
+            if(p == end)
+            {
+                if(!this.fill())
                 {
-                    this.consume();
-                    buffer.append('\\');
+                    throw new EOFException();
                 }
-                else
+            }
+            else if(buf[p] == '\'')
+            {
+                this.skipSingleQuotedString();
+            }
+            else
+            {
+                this.skipDoubleQuotedString();
+            }
+        }
+    }
+
+    private static boolean isOctDigit(int c)
+    {
+        return c >= '0' && c <= '7';
+    }
+
+    private static boolean isDigit(int c)
+    {
+        return c >= '0' && c <= '9';
+    }
+
+    private void push(Object value)
+    {
+        if(this.scratchTop == this.scratch.length)
+        {
+            this.scratch= Arrays.copyOf(this.scratch, this.scratch.length * 2);
+        }
+        this.scratch[this.scratchTop++]= value;
+    }
+
+    private void popTo(int base)
+    {
+        Arrays.fill(this.scratch, base, this.scratchTop, null);
+        this.scratchTop= base;
+    }
+
+    static Class<?> valueType(VimsonToken token)
+    {
+        switch(token)
+        {
+        case START_DICTIONARY:
+            return Map.class;
+        case START_LIST:
+            return List.class;
+        case VALUE_STRING:
+            return String.class;
+        case VALUE_NUMBER:
+            return Number.class;
+        case VALUE_FLOAT:
+            return Double.class;
+        default:
+            throw new IllegalArgumentException("Unexpected token: " + token);
+        }
+    }
+
+    private Object readValue(VimsonToken token)
+        throws IOException
+    {
+        switch(token)
+        {
+        case START_DICTIONARY:
+        {
+            final int base= this.scratchTop;
+            while(this.nextToken() != VimsonToken.END_DICTIONARY)
+            {
+                if(this.scratchTop - base >= this.containerSizeLimit * 2L)
+                {
+                    throw this.limitExceeded("Dictionary size exceeds " + this.containerSizeLimit);
+                }
+                this.push(this.text);
+                this.push(this.readValue(this.nextToken()));
+            }
+
+            final Map<String, Object> map= this.containerFactory.createDictionary((this.scratchTop - base) / 2);
+            for(int i= base; i < this.scratchTop; i+= 2)
+            {
+                map.put((String)this.scratch[i], this.scratch[i + 1]);
+            }
+            this.popTo(base);
+            return map;
+        }
+        case START_LIST:
+        {
+            final int base= this.scratchTop;
+            VimsonToken elm;
+            while((elm= this.nextToken()) != VimsonToken.END_LIST)
+            {
+                if(this.scratchTop - base >= this.containerSizeLimit)
+                {
+                    throw this.limitExceeded("List size exceeds " + this.containerSizeLimit);
+                }
+                this.push(this.readValue(elm));
+            }
+
+            final List<Object> list= this.containerFactory.createList(this.scratchTop - base);
+            for(int i= base; i < this.scratchTop; ++i)
+            {
+                list.add(this.scratch[i]);
+            }
+            this.popTo(base);
+            return list;
+        }
+        case VALUE_STRING:
+            return this.text;
+        case VALUE_NUMBER:
+        case VALUE_FLOAT:
+            return this.number;
+        default:
+            throw new IllegalArgumentException("Unexpected token: " + token);
+        }
+    }
+
+    private VimsonToken valueToken()
+        throws IOException
+    {
+        final int c= this.peek();
+
+        if(c == '{')
+        {
+            if(this.context.size() >= this.depthLimit)
+            {
+                throw this.limitExceeded("Depth exceeds " + this.depthLimit);
+            }
+            ++this.pos;
+            this.context.push(Context.DICTIONARY);
+            this.maxDepth= Math.max(this.maxDepth, this.context.size());
+            this.afterValue= false;
+            return this.token= VimsonToken.START_DICTIONARY;
+        }
+        else if(c == '[')
+        {
+            if(this.context.size() >= this.depthLimit)
+            {
+                throw this.limitExceeded("Depth exceeds " + this.depthLimit);
+            }
+            ++this.pos;
+            this.context.push(Context.LIST);
+            this.maxDepth= Math.max(this.maxDepth, this.context.size());
+            this.afterValue= false;
+            return this.token= VimsonToken.START_LIST;
+        }
+
+        this.afterValue= true;
+        if(c == EOF)
+        {
+            throw new EOFException();
+        }
+        else if(this.skipping)
+        {
+            return this.skipScalar(c);
+        }
+        else if(c == '\'' || c == '"')
+        {
+            this.text= this.string();
+            return this.token= VimsonToken.VALUE_STRING;
+        }
+        else
+        {
+            this.number= this.numberOrFloat();
+            return this.token= (this.number instanceof Double) ? VimsonToken.VALUE_FLOAT : VimsonToken.VALUE_NUMBER;
+        }
+    }
+
+    /**
+     * Skips a string or a number without decoding it, the token has no text.
+     */
+    private VimsonToken skipScalar(int c)
+        throws IOException
+    {
+        this.text= null;
+        this.number= null;
+        if(c == '\'')
+        {
+            this.skipSingleQuotedString();
+            return this.token= VimsonToken.VALUE_STRING;
+        }
+        if(c == '"')
+        {
+            this.skipDoubleQuotedString();
+            return this.token= VimsonToken.VALUE_STRING;
+        }
+
+        for(;;)
+        {
+            final char[] buf= this.buffer;
+            final int end= this.end;
+            int p= this.pos;
+
+            while(p < end && buf[p] != ',' && buf[p] != ']' && buf[p] != '}' && buf[p] != ':' && buf[p] > ' ')
+            {
+                ++p;
+            }
+            this.pos= p;
+
+            if(p < end || !this.fill())
+            {
+                return this.token= VimsonToken.VALUE_NUMBER;
+            }
+        }
+    }
+
+    private Object project(PathFilter filter, List<Object> path, VimsonToken token)
+        throws IOException
+    {
+        if(filter.includes(path))
+        {
+            return this.readValue(token);
+        }
+        if(token == VimsonToken.START_DICTIONARY)
+        {
+            // keys and values, interleaved
+            final List<Object> entries= new ArrayList<Object>();
+            while(this.nextToken() == VimsonToken.FIELD_NAME)
+            {
+                final String key= this.text;
+
+                path.add(key);
+                final Object value= this.projectChild(filter, path);
+                path.remove(path.size() - 1);
+
+                if(value != NOTHING)
+                {
+                    if(entries.size() >= this.containerSizeLimit * 2L)
+                    {
+                        throw this.limitExceeded("Dictionary size exceeds " + this.containerSizeLimit);
+                    }
+                    entries.add(key);
+                    entries.add(value);
+                }
+            }
+            if(entries.isEmpty())
+            {
+                return NOTHING;
+            }
+
+            final Map<String, Object> map= this.containerFactory.createDictionary(entries.size() / 2);
+            for(int i= 0; i < entries.size(); i+= 2)
+            {
+                map.put((String)entries.get(i), entries.get(i + 1));
+            }
+            return map;
+        }
+        if(token == VimsonToken.START_LIST)
+        {
+            final List<Object> values= new ArrayList<Object>();
+            for(int i= 0; ; ++i)
+            {
+                path.add(i);
+                final Object value= this.projectChild(filter, path);
+                path.remove(path.size() - 1);
+
+                if(value == END)
+                {
+                    break;
+                }
+                if(value != NOTHING)
+                {
+                    if(values.size() >= this.containerSizeLimit)
+                    {
+                        throw this.limitExceeded("List size exceeds " + this.containerSizeLimit);
+                    }
+                    values.add(value);
+                }
+            }
+            if(values.isEmpty())
+            {
+                return NOTHING;
+            }
+
+            final List<Object> list= this.containerFactory.createList(values.size());
+            list.addAll(values);
+            return list;
+        }
+        return NOTHING;
+    }
+
+    /**
+     * Reads the next value in a container at {@code path}.
+     * @return The projected value, {@link #NOTHING}, or {@link #END} if the container has ended.
+     */
+    private Object projectChild(PathFilter filter, List<Object> path)
+        throws IOException
+    {
+        if(filter.includes(path) || filter.includesDescendants(path))
+        {
+            final VimsonToken token= this.nextToken();
+            return (token == VimsonToken.END_LIST) ? END : this.project(filter, path, token);
+        }
+
+        return (this.skipValue() == VimsonToken.END_LIST) ? END : NOTHING;
+    }
+
+    /**
+     * Reads the next token without decoding a scalar, and skips children of a container, for values which are dropped.
+     * @return The token which was read.
+     */
+    VimsonToken skipValue()
+        throws IOException
+    {
+        this.skipping= true;
+        final VimsonToken token;
+        try
+        {
+            token= this.nextToken();
+        }
+        finally
+        {
+            this.skipping= false;
+        }
+        this.skipChildren();
+        return token;
+    }
+
+    private VimsonToken endContainer()
+    {
+        final Context context= this.context.pop();
+
+        this.afterValue= true;
+        return this.token= context.endToken;
+    }
+
+    private String key()
+        throws IOException
+    {
+        final int c= this.peek();
+
+        if(c == EOF)
+        {
+            throw new EOFException();
+        }
+        else if(c != '\'' && c != '"')
+        {
+            throw new IllegalArgumentException();
+        }
+
+        final SymbolTable symbols= this.symbols;
+        if(symbols == null)
+        {
+            this.quotedText();
+            return this.textBuffer.toString();
+        }
+
+        if(this.partialQuote != this.bufferOffset + this.pos)
+        {
+            final String symbol= this.symbolInWindow(symbols, (char)c);
+            if(symbol != null)
+            {
+                return symbol;
+            }
+        }
+        this.quotedText();
+        return symbols.lookup(this.textBuffer);
+    }
+
+    private String string()
+        throws IOException
+    {
+        this.quotedText();
+
+        final StringBuilder text= this.textBuffer;
+        final SymbolTable symbols= this.symbols;
+        if(symbols != null && text.length() <= symbols.getMaxValueLength())
+        {
+            return symbols.lookup(text);
+        }
+        return text.toString();
+    }
+
+    /**
+     * Looks up a quoted string without escapes, which lies in the window, hashing it while scanning.
+     * @return The canonical string, or {@code null} if the string needs the slow path.
+     */
+    private String symbolInWindow(SymbolTable symbols, char quote)
+        throws IOException
+    {
+        final char[] buf= this.buffer;
+        final int end= this.end;
+        final int start= this.pos + 1;
+        int p= start;
+        int hash= 0;
+
+        char c;
+        while(p < end && (c= buf[p]) != quote && c != '\\')
+        {
+            hash= 31 * hash + c;
+            ++p;
+        }
+
+        // the slow path checks the length limit
+        if(p >= end || buf[p] != quote || p - start > this.stringLengthLimit)
+        {
+            return null;
+        }
+        // '' might be an escaped single quote
+        if(quote == '\'' && (p + 1 < end ? buf[p + 1] == '\'' : this.in != null))
+        {
+            return null;
+        }
+
+        this.pos= p + 1;
+        return symbols.lookup(buf, start, p - start, hash);
+    }
+
+    private void quotedText()
+        throws IOException
+    {
+        if(this.peek() == '\'')
+        {
+            this.singleQuotedText();
+        }
+        else
+        {
+            this.doubleQuotedText();
+        }
+    }
+
+    /**
+     * Lexes a Number or a Float, accumulating its value while scanning.
+     * Numbers are {@link Integer}, {@link Long} or {@link BigInteger} by magnitude.
+     */
+    private Number numberOrFloat()
+        throws IOException
+    {
+        final StringBuilder text= this.textBuffer;
+
+        text.setLength(0);
+        this.mantissa= 0;
+        this.overflow= false;
+
+        int c= this.peek();
+        final boolean negative= (c == '-');
+        if(c == '+' || c == '-')
+        {
+            text.append((char)c);
+            ++this.pos;
+            c= this.peek();
+        }
+        if(!isDigit(c))
+        {
+            throw new IllegalArgumentException("Unexpected character: " + (c != EOF ? String.valueOf((char)c) : "EOF"));
+        }
+
+        final int digitsStart= text.length();
+
+        // 0x.., 0o.., 0b..
+        if(c == '0' && this.ensure(2))
+        {
+            final int radix= radixOf(this.buffer[this.pos + 1]);
+            if(radix != 0)
+            {
+                this.pos+= 2;
+                if(this.scanDigits(radix) == 0)
+                {
+                    throw new IllegalArgumentException("Missing digits after a radix prefix");
+                }
+                return this.integer(negative, radix, digitsStart);
+            }
+        }
+
+        this.scanDigits(10);
+
+        if(this.peek() == '.' && this.ensure(2) && isDigit(this.buffer[this.pos + 1]))
+        {
+            return this.fraction(negative);
+        }
+
+        // a leading zero makes it octal, unless it contains 8 or 9
+        if(text.charAt(digitsStart) == '0' && isOctal(text, digitsStart))
+        {
+            this.mantissa= 0;
+            for(int i= digitsStart; i < text.length(); ++i)
+            {
+                this.accumulate(8, text.charAt(i) - '0');
+            }
+            return this.integer(negative, 8, digitsStart);
+        }
+        return this.integer(negative, 10, digitsStart);
+    }
+
+    private Number integer(boolean negative, int radix, int digitsStart)
+    {
+        if(!this.overflow)
+        {
+            final long value= negative ? -this.mantissa : this.mantissa;
+
+            if(value >= Integer.MIN_VALUE && value <= Integer.MAX_VALUE)
+            {
+                return Integer.valueOf((int)value);
+            }
+            return Long.valueOf(value);
+        }
+
+        BigInteger value= new BigInteger(this.textBuffer.substring(digitsStart), radix);
+        if(negative)
+        {
+            value= value.negate();
+        }
+        return (value.bitLength() < 64) ? (Number)Long.valueOf(value.longValue()) : value;
+    }
+
+    private Double fraction(boolean negative)
+        throws IOException
+    {
+        final StringBuilder text= this.textBuffer;
+
+        text.append('.');
+        ++this.pos;
+
+        int exponent= -this.scanDigits(10);
+
+        int c= this.peek();
+        if(c == 'e' || c == 'E')
+        {
+            text.append('e');
+            ++this.pos;
+
+            c= this.peek();
+            final boolean negativeExponent= (c == '-');
+            if(c == '+' || c == '-')
+            {
+                text.append((char)c);
+                ++this.pos;
+                c= this.peek();
+            }
+            if(!isDigit(c))
+            {
+                throw new IllegalArgumentException("Missing digits of an exponent");
+            }
+
+            int e= 0;
+            while(isDigit(c))
+            {
+                text.append((char)c);
+                if(e < 100000)
+                {
+                    e= e * 10 + (c - '0');
+                }
+                ++this.pos;
+                c= this.peek();
+            }
+            exponent+= negativeExponent ? -e : e;
+        }
+
+        if(!this.overflow && this.mantissa <= MAX_EXACT_MANTISSA && exponent >= -MAX_EXACT_POWER && exponent <= MAX_EXACT_POWER)
+        {
+            // both operands are exact, so the single rounding is correct
+            final double value= (exponent < 0) ? this.mantissa / POWERS_OF_TEN[-exponent] : this.mantissa * POWERS_OF_TEN[exponent];
+            return Double.valueOf(negative ? -value : value);
+        }
+        // the text has the sign already
+        return Double.valueOf(text.toString());
+    }
+
+    /**
+     * Scans a digit run directly over the window, accumulating it into {@code mantissa}.
+     * @return The number of digits.
+     */
+    private int scanDigits(int radix)
+        throws IOException
+    {
+        final StringBuilder text= this.textBuffer;
+        int ndigits= 0;
+
+        for(;;)
+        {
+            final char[] buf= this.buffer;
+            final int end= this.end;
+            final int start= this.pos;
+            int p= start;
+
+            while(p < end)
+            {
+                final int digit= digitOf(buf[p]);
+                if(digit < 0 || digit >= radix)
+                {
+                    break;
+                }
+                this.accumulate(radix, digit);
+                ++p;
+            }
+            text.append(buf, start, p - start);
+            ndigits+= p - start;
+            this.pos= p;
+
+            if(p < end || !this.fill())
+            {
+                return ndigits;
+            }
+        }
+    }
+
+    private void accumulate(int radix, int digit)
+    {
+        if(this.mantissa > (Long.MAX_VALUE - digit) / radix)
+        {
+            this.overflow= true;
+        }
+        else
+        {
+            this.mantissa= this.mantissa * radix + digit;
+        }
+    }
+
+    private static int radixOf(char prefix)
+    {
+        switch(prefix)
+        {
+        case 'x':
+        case 'X':
+            return 16;
+        case 'o':
+        case 'O':
+            return 8;
+        case 'b':
+        case 'B':
+            return 2;
+        default:
+            return 0;
+        }
+    }
+
+    private static int digitOf(char c)
+    {
+        if(c >= '0' && c <= '9')
+        {
+            return c - '0';
+        }
+        if(c >= 'a' && c <= 'f')
+        {
+            return c - 'a' + 10;
+        }
+        if(c >= 'A' && c <= 'F')
+        {
+            return c - 'A' + 10;
+        }
+        return -1;
+    }
+
+    private static boolean isOctal(CharSequence digits, int start)
+    {
+        for(int i= start; i < digits.length(); ++i)
+        {
+            if(!isOctDigit(digits.charAt(i)))
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void singleQuotedText()
+        throws IOException
+    {
+        final long quote= this.bufferOffset + this.pos;
+        this.match('\'');
+
+        final StringBuilder text= this.textBuffer;
+        if(!this.resume(quote))
+        {
+            text.setLength(0);
+        }
+        for(;;)
+        {
+            final char[] buf= this.buffer;
+            final int end= this.end;
+            int p= this.pos;
+
+            while(p < end && buf[p] != '\'')
+            {
+                ++p;
+            }
+            text.append(buf, this.pos, p - this.pos);
+            this.pos= p;
+            if(text.length() > this.stringLengthLimit)
+            {
+                throw this.limitExceeded("String length exceeds " + this.stringLengthLimit);
+            }
+            this.partialQuote= quote;
+            this.partialEnd= this.bufferOffset + p;
+
+            if(p == end)
+            {
+                if(!this.fill())
+                {
+                    throw new EOFException();
+                }
+                continue;
+            }
+
+            // '' is an escaped single quote
+            if(this.ensure(2) && this.buffer[this.pos + 1] == '\'')
+            {
+                text.append('\'');
+                this.pos+= 2;
+            }
+            else
+            {
+                ++this.pos;
+                this.partialQuote= -1;
+                return;
+            }
+        }
+    }
+
+    private void doubleQuotedText()
+        throws IOException
+    {
+        final long quote= this.bufferOffset + this.pos;
+        this.match('"');
+
+        final StringBuilder text= this.textBuffer;
+        if(!this.resume(quote))
+        {
+            text.setLength(0);
+        }
+        for(;;)
+        {
+            final char[] buf= this.buffer;
+            final int end= this.end;
+            int p= this.pos;
+
+            while(p < end && buf[p] != '"' && buf[p] != '\\')
+            {
+                ++p;
+            }
+            text.append(buf, this.pos, p - this.pos);
+            this.pos= p;
+            if(text.length() > this.stringLengthLimit)
+            {
+                throw this.limitExceeded("String length exceeds " + this.stringLengthLimit);
+            }
+            this.partialQuote= quote;
+            this.partialEnd= this.bufferOffset + p;
+
+            if(p == end)
+            {
+                if(!this.fill())
+                {
+                    throw new EOFException();
+                }
+                continue;
+            }
+
+            if(buf[p] == '"')
+            {
+                ++this.pos;
+                this.partialQuote= -1;
+                return;
+            }
+
+            ++this.pos;
+            this.escapeSequence(text);
+        }
+    }
+
+    /**
+     * Continues a quoted string which starts at {@code quote}, if lexing it was left off when the input ran out.
+     * Since {@code textBuffer} still holds its text, a rewound token doesn't scan the string again.
+     * @return {@code false} if the string is lexed from the beginning.
+     */
+    private boolean resume(long quote)
+    {
+        if(quote != this.partialQuote)
+        {
+            return false;
+        }
+        this.pos= (int)(this.partialEnd - this.bufferOffset);
+        return true;
+    }
+
+    private void skipSingleQuotedString()
+        throws IOException
+    {
+        this.match('\'');
+        for(;;)
+        {
+            final char[] buf= this.buffer;
+            final int end= this.end;
+            int p= this.pos;
+
+            while(p < end && buf[p] != '\'')
+            {
+                ++p;
+            }
+            this.pos= p;
+
+            if(p == end)
+            {
+                if(!this.fill())
+                {
+                    throw new EOFException();
+                }
+            }
+            else if(this.ensure(2) && this.buffer[this.pos + 1] == '\'')
+            {
+                this.pos+= 2;
+            }
+            else
+            {
+                ++this.pos;
+                return;
+            }
+        }
+    }
+
+    private void skipDoubleQuotedString()
+        throws IOException
+    {
+        this.match('"');
+        for(;;)
+        {
+            final char[] buf= this.buffer;
+            final int end= this.end;
+            int p= this.pos;
+
+            while(p < end && buf[p] != '"' && buf[p] != '\\')
+            {
+                ++p;
+            }
+            this.pos= p;
+
+            if(p == end)
+            {
+                if(!this.fill())
                 {
-                    throw new IllegalArgumentException("Cannot recognize \\" + this.c);
+                    throw new EOFException();
                 }
             }
-            else if(this.c == '"')
+            else if(buf[p] == '"')
             {
-                break;
+                ++this.pos;
+                return;
             }
             else
             {
-                buffer.append(this.c);
+                // the escaped character never closes the string
+                ++this.pos;
                 this.consume();
             }
         }
+    }
 
-        this.match('"');
-        this.consume();
+    private void escapeSequence(StringBuilder text)
+        throws IOException
+    {
+        final int c= this.peek();
 
-        return buffer.toString();
+        // \... - 3 octal digits
+        // \..  - 2 octal digits
+        // \.   - 1 octal digits
+        if(isOctDigit(c))
+        {
+            text.append((char)this.digits(8, 3));
+        }
+        // \x.. - 2 hex digits
+        // \x.  - 1 hex digits
+        else if(c == 'x' || c == 'X')
+        {
+            this.consume();
+            text.append((char)this.digits(16, 2));
+        }
+        // \\u.... - 4 hex digits
+        else if(c == 'u')
+        {
+            this.consume();
+            text.append((char)this.digits(16, 4));
+        }
+        // \\U........ - 8 hex digits
+        else if(c == 'U')
+        {
+            this.consume();
+            text.appendCodePoint(this.digits(16, 8));
+        }
+        else if(c == 'b')
+        {
+            this.consume();
+            text.append('\b');
+        }
+        else if(c == 'e')
+        {
+            this.consume();
+            text.append((char)27);
+        }
+        else if(c == 'f')
+        {
+            this.consume();
+            text.append('\f');
+        }
+        else if(c == 'n')
+        {
+            this.consume();
+            text.append('\n');
+        }
+        else if(c == 'r')
+        {
+            this.consume();
+            text.append('\r');
+        }
+        else if(c == 't')
+        {
+            this.consume();
+            text.append('\t');
+        }
+        else if(c == '"')
+        {
+            this.consume();
+            text.append('"');
+        }
+        else if(c == '\\')
+        {
+            this.consume();
+            text.append('\\');
+        }
+        else if(c == EOF)
+        {
+            throw new EOFException();
+        }
+        else
+        {
+            throw new IllegalArgumentException("Cannot recognize \\" + (char)c);
+        }
     }
 
-    private void skip()
+    private int digits(int radix, int maxDigits)
         throws IOException
     {
-        while(this.c != EOF)
+        int value= 0;
+        int ndigits= 0;
+        while(ndigits < maxDigits)
         {
-            switch(this.c)
+            final int digit= Character.digit(this.peek(), radix);
+            if(digit < 0)
             {
-            case ' ':
-            case '\t':
-            case '\r':
-                // skip
                 break;
-            case '\n':
-                if(this.c2 == '\\')
-                {
-                    // skip
-                    break;
-                }
-                else
+            }
+            value= value * radix + digit;
+            ++ndigits;
+            this.consume();
+        }
+        if(ndigits == 0)
+        {
+            throw new IllegalArgumentException();
+        }
+        return value;
+    }
+
+    private void skip()
+        throws IOException
+    {
+        for(;;)
+        {
+            final char[] buf= this.buffer;
+            final int end= this.end;
+            int p= this.pos;
+
+            while(p < end && (buf[p] == ' ' || buf[p] == '\t' || buf[p] == '\r'))
+            {
+                ++p;
+            }
+            this.pos= p;
+
+            if(p == end)
+            {
+                if(!this.fill())
                 {
                     return;
                 }
-            default:
+            }
+            else if(buf[p] != '\n' || !this.skipLineContinuation())
+            {
                 return;
             }
-            this.consume();
         }
     }
 
+    /**
+     * Skips a newline followed by a line continuation backslash, if any.
+     */
+    private boolean skipLineContinuation()
+        throws IOException
+    {
+        int n= 1;
+        for(;;)
+        {
+            if(!this.ensure(n + 1))
+            {
+                return false;
+            }
+
+            final char c= this.buffer[this.pos + n];
+            if(c == ' ' || c == '\t')
+            {
+                ++n;
+            }
+            else if(c == '\\')
+            {
+                ++this.lines;
+                this.lineStart= this.bufferOffset + this.pos + 1;
+                this.pos+= n + 1;
+                return true;
+            }
+            else
+            {
+                return false;
+            }
+        }
+    }
+
+    private int peek()
+        throws IOException
+    {
+        if(this.pos < this.end || this.fill())
+        {
+            return this.buffer[this.pos];
+        }
+        return EOF;
+    }
+
     private void consume()
         throws IOException
     {
-        if(this.c == EOF)
+        if(this.peek() == EOF)
         {
             throw new EOFException();
         }
 
-        ++this.offset;
-        this.c= this.c2;
-        this.c2= (char) this.in.read();
+        ++this.pos;
     }
 
     private void match(char expects)
+        throws IOException
     {
-        if(this.c != expects)
+        if(this.peek() != expects)
         {
             throw new IllegalArgumentException();
         }
+
+        ++this.pos;
+    }
+
+    /**
+     * Makes at least {@code n} characters available in the window.
+     */
+    private boolean ensure(int n)
+        throws IOException
+    {
+        while(this.end - this.pos < n)
+        {
+            if(n > this.buffer.length || !this.fill())
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Prepares to read the next top-level value from the same input, skipping newlines between values.
+     * @return {@code false} if the input has ended.
+     */
+    boolean nextDocument()
+        throws IOException
+    {
+        checkState(this.context.isEmpty());
+
+        this.token= null;
+        this.afterValue= false;
+        for(;;)
+        {
+            this.skip();
+
+            final int c= this.peek();
+            if(c != '\n')
+            {
+                this.documentOffset= this.bufferOffset + this.pos;
+                return c != EOF;
+            }
+            ++this.pos;
+            ++this.lines;
+            this.lineStart= this.bufferOffset + this.pos;
+        }
+    }
+
+    /**
+     * Moves a parser which reads from an array onto another value in the array, forgetting the current state.
+     */
+    void seek(int offset)
+    {
+        checkState(this.in == null && offset >= 0 && offset <= this.end);
+
+        this.pos= offset;
+        this.documentOffset= this.bufferOffset + offset;
+        this.partialQuote= -1;
+        this.token= null;
+        this.afterValue= false;
+        this.inDocument= false;
+        this.context.clear();
+    }
+
+    /**
+     * Throws if a container which has {@code size} entries already can't take one more, for decoders in this package.
+     */
+    void checkContainerSize(int size, boolean dictionary)
+    {
+        if(size >= this.containerSizeLimit)
+        {
+            throw this.limitExceeded((dictionary ? "Dictionary" : "List") + " size exceeds " + this.containerSizeLimit);
+        }
+    }
+
+    /**
+     * Tests whether only blanks are left in the input, for parsers which read a part of a document.
+     */
+    boolean atEnd()
+        throws IOException
+    {
+        this.skip();
+        return this.peek() == EOF;
+    }
+
+    /**
+     * Returns the offset of the current position from the beginning of the input.
+     */
+    long offset()
+    {
+        return this.bufferOffset + this.pos;
+    }
+
+    int tokenCount()
+    {
+        return this.tokenCount;
+    }
+
+    int maxDepth()
+    {
+        return this.maxDepth;
+    }
+
+    /**
+     * Starts reading as if the opener of a top-level list had been read, to read a part of its elements.
+     */
+    void enterList()
+    {
+        checkState(this.context.isEmpty() && this.token == null);
+
+        this.context.push(Context.LIST);
+        this.afterValue= false;
+        this.token= VimsonToken.START_LIST;
+    }
+
+    /**
+     * Saves the lexer state, so that a token which failed in the middle can be read again by {@link #resetToMark()}.
+     * Characters after the mark are kept in the window until {@link #unmark()}.
+     */
+    void mark()
+    {
+        this.mark= this.pos;
+        this.markedToken= this.token;
+        this.markedAfterValue= this.afterValue;
+    }
+
+    void resetToMark()
+    {
+        this.pos= this.mark;
+        this.token= this.markedToken;
+        this.afterValue= this.markedAfterValue;
+        this.mark= -1;
+    }
+
+    void unmark()
+    {
+        this.mark= -1;
+    }
+
+    /**
+     * Starts statistics of a document at the first token of a top-level value, however it's read.
+     */
+    private void documentStarted()
+    {
+        this.inDocument= true;
+        this.documentStart= System.nanoTime();
+        this.documentOffset= this.bufferOffset + this.pos;
+        this.tokenCount= 0;
+        this.maxDepth= this.context.size();
+    }
+
+    /**
+     * Reports the document if the last token ended the top-level value.
+     */
+    private void documentEnded()
+    {
+        if(this.inDocument && this.afterValue && this.context.isEmpty())
+        {
+            this.inDocument= false;
+            this.listener.documentParsed(this.bufferOffset + this.pos - this.documentOffset, this.tokenCount, this.maxDepth, System.nanoTime() - this.documentStart);
+        }
+    }
+
+    /**
+     * Reports the document once, even if the error passes through a few readers.
+     */
+    private void documentFailed(Exception e)
+    {
+        if(this.inDocument)
+        {
+            this.inDocument= false;
+            this.listener.documentFailed(e, this.bufferOffset + this.pos);
+        }
+    }
+
+    /**
+     * Creates an exception for a document which is longer than the limit,
+     * at the first char over the limit if it is still on the current line in the window.
+     */
+    private LimitExceededException documentTooLong()
+    {
+        final long excess= this.bufferOffset + this.pos - this.documentOffset - this.documentLengthLimit;
+
+        if(excess <= this.pos && this.bufferOffset + this.pos - excess >= this.lineStart)
+        {
+            this.pos-= (int)excess;
+        }
+        return this.limitExceeded("Document length exceeds " + this.documentLengthLimit);
+    }
+
+    /**
+     * Creates an exception at the current position.
+     * Lines are counted as line breaks are consumed, so no chars are scanned again.
+     */
+    private LimitExceededException limitExceeded(String message)
+    {
+        final long offset= this.bufferOffset + this.pos;
+
+        return new LimitExceededException(message, offset, this.lines + 1, (int)Math.min(offset - this.lineStart + 1, Integer.MAX_VALUE));
+    }
+
+    private void resetState()
+    {
+        if(this.sharedBuffer || this.buffer.length < BUFFER_SIZE)
+        {
+            // never writes into a caller's array
+            this.buffer= (this.pool != null) ? this.pool.acquireChars() : new char[BUFFER_SIZE];
+            this.sharedBuffer= false;
+        }
+        this.popTo(0);
+        this.context.clear();
+        this.token= null;
+        this.afterValue= false;
+        this.inDocument= false;
+        this.skipping= false;
+        this.text= null;
+        this.number= null;
+        this.mark= -1;
+        this.partialQuote= -1;
+        this.pos= 0;
+        this.bufferOffset= 0;
+        this.lines= 0;
+        this.lineStart= 0;
+        this.documentOffset= 0;
+    }
+
+    /**
+     * Reads the next chunk into the window, keeping unconsumed characters and the marked ones.
+     */
+    private boolean fill()
+        throws IOException
+    {
+        if(this.in == null)
+        {
+            return false;
+        }
+
+        if(this.bufferOffset + this.pos - this.documentOffset > this.documentLengthLimit)
+        {
+            // bounds the work for a long run of blanks, which yields no token
+            throw this.documentTooLong();
+        }
+
+        final int keep= (this.mark >= 0) ? this.mark : this.pos;
+        final int remaining= this.end - this.pos;
+        if(keep > 0)
+        {
+            System.arraycopy(this.buffer, keep, this.buffer, 0, this.end - keep);
+            this.bufferOffset+= keep;
+            this.pos-= keep;
+            this.end-= keep;
+            if(this.mark >= 0)
+            {
+                this.mark= 0;
+            }
+        }
+        else if(this.end == this.buffer.length)
+        {
+            // only when a marked token doesn't fit in the window
+            this.buffer= Arrays.copyOf(this.buffer, this.buffer.length * 2);
+        }
+
+        while(this.end < this.buffer.length)
+        {
+            final int n= this.in.read(this.buffer, this.end, this.buffer.length - this.end);
+            if(n < 0)
+            {
+                this.in= null;
+                break;
+            }
+            if(n > 0)
+            {
+                this.end+= n;
+                return true;
+            }
+        }
+        return this.end - this.pos > remaining;
+    }
+
+    private static enum Context
+    {
+        LIST(']', VimsonToken.END_LIST),
+        DICTIONARY('}', VimsonToken.END_DICTIONARY),
+        ;
+
+        private Context(char closer, VimsonToken endToken)
+        {
+            this.closer= closer;
+            this.endToken= endToken;
+        }
+
+        private final char closer;
+
+        private final VimsonToken endToken;
     }
 
-    private static final char EOF= (char)-1;
+    private static final int EOF= -1;
+
+    /**
+     * Results of projection, for a value which is not included and for the end of a list.
+     */
+    private static final Object NOTHING= new Object();
+
+    private static final Object END= new Object();
+
+    private static final long MAX_EXACT_MANTISSA= 1L << 53;
+
+    private static final int MAX_EXACT_POWER= 22;
+
+    private static final double[] POWERS_OF_TEN= {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+        1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20,
+        1e21, 1e22,
+    };
+
+    private static final int BUFFER_SIZE= BufferPool.BUFFER_SIZE;
+
+    private static final char[] EMPTY_BUFFER= new char[0];
+
+    private static final ObjectCodec DEFAULT_CODEC= new BeanCodec();
+
+    private char[] buffer;
+
+    /**
+     * Whether {@code buffer} is a caller's array, which is parsed in place.
+     */
+    private boolean sharedBuffer;
+
+    /**
+     * The pool which {@code buffer} is borrowed from, or {@code null}.
+     */
+    private BufferPool pool;
+
+    private final StringBuilder textBuffer= new StringBuilder();
+
+    private final Deque<Context> context= new ArrayDeque<Context>();
+
+    private VimsonToken token;
+
+    private ContainerFactory containerFactory= ContainerFactory.COMPACT;
+
+    private SymbolTable symbols= SymbolTable.getDefault();
+
+    private ObjectCodec codec= DEFAULT_CODEC;
+
+    private VimsonListener listener;
+
+    private VimsonLimits limits= VimsonLimits.DEFAULT;
+
+    /**
+     * Copies of {@code limits}, which are checked on the hot path.
+     */
+    private int depthLimit= VimsonLimits.DEFAULT.getMaxDepth();
+
+    private int stringLengthLimit= VimsonLimits.DEFAULT.getMaxStringLength();
+
+    private int containerSizeLimit= VimsonLimits.DEFAULT.getMaxContainerSize();
+
+    private long documentLengthLimit= VimsonLimits.DEFAULT.getMaxDocumentLength();
+
+    /**
+     * The number of consumed line breaks, and the offset where the last line after them starts.
+     */
+    private int lines;
+
+    private long lineStart;
+
+    /**
+     * Statistics of the current document, which are reported to {@code listener}.
+     */
+    private int tokenCount;
+
+    private int maxDepth;
+
+    private long documentStart;
+
+    /**
+     * Whether a top-level value is being read and not reported yet, only while {@code listener} is set.
+     */
+    private boolean inDocument;
+
+    /**
+     * An offset where the current document starts, the document length is measured from it.
+     */
+    private long documentOffset;
+
+    /**
+     * Elements of containers being built, they are created after their sizes are known.
+     */
+    private Object[] scratch= new Object[64];
+
+    private int scratchTop;
+
+    /**
+     * Whether a value was completed at the current level, a comma or a closer is expected next.
+     */
+    private boolean afterValue;
+
+    private String text;
+
+    /**
+     * The offset of the opening quote of a string which is being lexed, and the offset up to which
+     * {@code textBuffer} holds its text, a string which the input ran out in is resumed from there.
+     */
+    private long partialQuote= -1;
+
+    private long partialEnd;
+
+    /**
+     * Whether scalar values are skipped without decoding them.
+     */
+    private boolean skipping;
+
+    private Number number;
+
+    /**
+     * Magnitude of the number being lexed.
+     */
+    private long mantissa;
+
+    /**
+     * Whether {@code mantissa} overflowed.
+     */
+    private boolean overflow;
+
+    private Reader in;
+
+    private int pos;
+
+    private int end;
 
-    private final InputStreamReader in;
+    /**
+     * An offset of {@code buffer[0]} from the beginning of the input, which may exceed 2G chars on a mapped file.
+     */
+    private long bufferOffset;
 
-    private char c;
+    /**
+     * A position in the window which {@link #resetToMark()} rewinds to, or {@code -1}.
+     */
+    private int mark= -1;
 
-    private char c2;
+    private VimsonToken markedToken;
 
-    private int offset;
+    private boolean markedAfterValue;
 }
@@ -0,0 +1,189 @@
+package jp.michikusa.chitose.lolivimson.core;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A path in vim's subscript notation, e.g. {@code ['items'][*]['word']}.
+ * Subscripts are quoted keys, indexes, or {@code [*]} which matches any key or index.
+ */
+public final class VimsonPath
+    extends PathFilter
+{
+    /**
+     * Matches any key or index in {@link #of(Object...)}.
+     */
+    public static final Object ANY= new Object(){
+        @Override
+        public String toString()
+        {
+            return "*";
+        }
+    };
+
+    /**
+     * Compiles {@code expr}.
+     * @throws IllegalArgumentException If {@code expr} is not a sequence of subscripts.
+     */
+    public static VimsonPath compile(String expr)
+    {
+        final Object[] segments= new Object[expr.length() / 3];
+        int n= 0;
+        int p= 0;
+        try
+        {
+            while(p < expr.length())
+            {
+                if(expr.charAt(p) != '[')
+                {
+                    throw new IllegalArgumentException("Expected `[' at " + p + ": " + expr);
+                }
+                ++p;
+
+                final char c= expr.charAt(p);
+                int q;
+                if(c == '*')
+                {
+                    segments[n++]= ANY;
+                    q= p + 1;
+                }
+                else if(c == '\'' || c == '"')
+                {
+                    q= closingQuote(expr, p);
+                    segments[n++]= new VimsonParser(expr.subSequence(p, q)).parse(String.class);
+                }
+                else
+                {
+                    q= p;
+                    while(q < expr.length() && expr.charAt(q) >= '0' && expr.charAt(q) <= '9')
+                    {
+                        ++q;
+                    }
+                    segments[n++]= Integer.valueOf(expr.substring(p, q));
+                }
+
+                if(expr.charAt(q) != ']')
+                {
+                    throw new IllegalArgumentException("Expected `]' at " + q + ": " + expr);
+                }
+                p= q + 1;
+            }
+        }
+        catch(IndexOutOfBoundsException e)
+        {
+            throw new IllegalArgumentException("Unexpected end: " + expr);
+        }
+        catch(IOException e)
+        {
+            throw new IllegalArgumentException("Illegal key: " + expr, e);
+        }
+        return new VimsonPath(Arrays.copyOf(segments, n));
+    }
+
+    /**
+     * Creates a path of keys, indexes and {@link #ANY}.
+     */
+    public static VimsonPath of(Object... segments)
+    {
+        for(final Object segment : segments)
+        {
+            if(!(segment instanceof String) && !(segment instanceof Integer) && segment != ANY)
+            {
+                throw new IllegalArgumentException("Not a key nor an index: " + segment);
+            }
+        }
+        return new VimsonPath(segments.clone());
+    }
+
+    @Override
+    public boolean includes(List<?> path)
+    {
+        return path.size() == this.segments.length && this.matchesPrefix(path);
+    }
+
+    @Override
+    public boolean includesDescendants(List<?> path)
+    {
+        return path.size() < this.segments.length && this.matchesPrefix(path);
+    }
+
+    @Override
+    public boolean equals(Object obj)
+    {
+        return obj instanceof VimsonPath && Arrays.equals(this.segments, ((VimsonPath)obj).segments);
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return Arrays.hashCode(this.segments);
+    }
+
+    @Override
+    public String toString()
+    {
+        final StringBuilder buffer= new StringBuilder();
+
+        for(final Object segment : this.segments)
+        {
+            buffer.append('[');
+            if(segment instanceof String)
+            {
+                buffer.append('\'').append(((String)segment).replace("'", "''")).append('\'');
+            }
+            else
+            {
+                buffer.append(segment);
+            }
+            buffer.append(']');
+        }
+        return buffer.toString();
+    }
+
+    private VimsonPath(Object[] segments)
+    {
+        this.segments= segments;
+    }
+
+    private boolean matchesPrefix(List<?> path)
+    {
+        for(int i= 0; i < path.size(); ++i)
+        {
+            final Object segment= this.segments[i];
+            if(segment != ANY && !segment.equals(path.get(i)))
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the offset next to the closing quote of the string at {@code start}.
+     */
+    private static int closingQuote(String expr, int start)
+    {
+        final char quote= expr.charAt(start);
+
+        for(int p= start + 1; ; ++p)
+        {
+            final char c= expr.charAt(p);
+            if(c == '\\' && quote == '"')
+            {
+                ++p;
+            }
+            else if(c == quote)
+            {
+                if(quote == '\'' && p + 1 < expr.length() && expr.charAt(p + 1) == quote)
+                {
+                    ++p;
+                    continue;
+                }
+                return p + 1;
+            }
+        }
+    }
+
+    private final Object[] segments;
+}
@@ -0,0 +1,134 @@
+package jp.michikusa.chitose.lolivimson.core;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import static jp.michikusa.chitose.lolivimson.util.Preconditions.checkNotNull;
+
+/**
+ * Reads top-level values one after another from a single input, such as a channel of a vim job in {@code nl} mode.
+ * Values are separated by newlines or whitespaces, and all of them are read by the same {@link VimsonParser},
+ * so its buffers and symbol table are reused.
+ *
+ * <p>
+ * {@link #hasNext()} may block until the next value starts, {@link #next()} returns as soon as the value ends.
+ * </p>
+ */
+public class VimsonStreamReader
+    implements Closeable
+{
+    public VimsonStreamReader(InputStream in)
+    {
+        this(new InputStreamReader(checkNotNull(in), Charset.forName("UTF-8")));
+    }
+
+    public VimsonStreamReader(Reader in)
+    {
+        this(new VimsonParser(in));
+        this.in= in;
+    }
+
+    /**
+     * Creates a reader over a configured parser, it must not have read any token yet.
+     */
+    public VimsonStreamReader(VimsonParser parser)
+    {
+        this.parser= checkNotNull(parser);
+    }
+
+    /**
+     * Returns whether there is one more value, skipping newlines before it.
+     */
+    public boolean hasNext()
+        throws IOException
+    {
+        if(this.next == null)
+        {
+            this.next= this.parser.nextDocument();
+        }
+        return this.next;
+    }
+
+    /**
+     * Reads the next value into dictionaries and lists, see {@link VimsonParser#readValue()}.
+     * @throws NoSuchElementException If there is no more value.
+     */
+    public Object next()
+        throws IOException
+    {
+        this.advance();
+
+        return this.parser.readValue();
+    }
+
+    /**
+     * Reads the next value which is expected to be a {@code type}, see {@link VimsonParser#parse(Class)}.
+     * @throws NoSuchElementException If there is no more value.
+     */
+    public <T> T next(Class<T> type)
+        throws IOException
+    {
+        this.advance();
+
+        return this.parser.parse(type);
+    }
+
+    /**
+     * Reads values until {@code n} values are read or the input ends.
+     */
+    public List<Object> readAll(int n)
+        throws IOException
+    {
+        final List<Object> values= new ArrayList<Object>(Math.min(n, 64));
+
+        while(values.size() < n && this.hasNext())
+        {
+            values.add(this.next());
+        }
+        return values;
+    }
+
+    /**
+     * Returns the underlying parser, which is positioned at the last token of the last value.
+     */
+    public VimsonParser getParser()
+    {
+        return this.parser;
+    }
+
+    @Override
+    public void close()
+        throws IOException
+    {
+        if(this.in != null)
+        {
+            this.in.close();
+        }
+    }
+
+    private void advance()
+        throws IOException
+    {
+        if(!this.hasNext())
+        {
+            throw new NoSuchElementException();
+        }
+        this.next= null;
+    }
+
+    private final VimsonParser parser;
+
+    /**
+     * Whether the next value exists, or {@code null} if not looked ahead yet.
+     */
+    private Boolean next;
+
+    private Reader in;
+}
@@ -0,0 +1,41 @@
+package jp.michikusa.chitose.lolivimson.core;
+
+/**
+ * Tokens which {@link VimsonParser#nextToken()} returns.
+ */
+public enum VimsonToken
+{
+    START_DICTIONARY("{"),
+    END_DICTIONARY("}"),
+    START_LIST("["),
+    END_LIST("]"),
+    FIELD_NAME(null),
+    VALUE_STRING(null),
+    VALUE_NUMBER(null),
+    VALUE_FLOAT(null),
+    /**
+     * Returned by {@link NonBlockingVimsonParser#nextToken()} when the fed input ends in the middle of a token.
+     */
+    NEED_MORE_INPUT(null),
+    ;
+
+    private VimsonToken(String representation)
+    {
+        this.representation= representation;
+    }
+
+    /**
+     * Returns the fixed textual representation, or {@code null} if the token carries a value.
+     */
+    public String asString()
+    {
+        return this.representation;
+    }
+
+    public boolean isScalarValue()
+    {
+        return this == VALUE_STRING || this == VALUE_NUMBER || this == VALUE_FLOAT;
+    }
+
+    private final String representation;
+}
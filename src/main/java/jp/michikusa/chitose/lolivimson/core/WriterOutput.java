@@ -0,0 +1,130 @@
+package jp.michikusa.chitose.lolivimson.core;
+
+import java.io.IOException;
+import java.io.Writer;
+
+import static jp.michikusa.chitose.lolivimson.util.Preconditions.checkNotNull;
+
+/**
+ * Buffers chars and writes them to a {@link Writer} in chunks.
+ */
+class WriterOutput
+    extends VimsonOutput
+{
+    public WriterOutput(Writer out)
+    {
+        this(out, new char[BUFFER_SIZE]);
+    }
+
+    public WriterOutput(Writer out, char[] buffer)
+    {
+        this.out= checkNotNull(out);
+        this.buffer= checkNotNull(buffer);
+    }
+
+    /**
+     * Discards buffered chars, and writes to {@code out} from now on.
+     */
+    public void reset(Writer out)
+    {
+        this.tail= 0;
+        this.out= checkNotNull(out);
+    }
+
+    @Override
+    public void write(char c)
+        throws IOException
+    {
+        if(this.tail >= this.buffer.length)
+        {
+            this.drain();
+        }
+        this.buffer[this.tail++]= c;
+    }
+
+    @Override
+    public void write(CharSequence s, int start, int end)
+        throws IOException
+    {
+        while(start < end)
+        {
+            if(this.tail >= this.buffer.length)
+            {
+                this.drain();
+            }
+
+            final int n= Math.min(end - start, this.buffer.length - this.tail);
+            if(s instanceof String)
+            {
+                ((String)s).getChars(start, start + n, this.buffer, this.tail);
+            }
+            else
+            {
+                for(int i= 0; i < n; ++i)
+                {
+                    this.buffer[this.tail + i]= s.charAt(start + i);
+                }
+            }
+            this.tail+= n;
+            start+= n;
+        }
+    }
+
+    @Override
+    public void write(char[] c, int offset, int length)
+        throws IOException
+    {
+        if(length > this.buffer.length - this.tail)
+        {
+            this.drain();
+            if(length > this.buffer.length)
+            {
+                this.out.write(c, offset, length);
+                return;
+            }
+        }
+        System.arraycopy(c, offset, this.buffer, this.tail, length);
+        this.tail+= length;
+    }
+
+    @Override
+    public void drain()
+        throws IOException
+    {
+        if(this.tail > 0)
+        {
+            this.out.write(this.buffer, 0, this.tail);
+            this.tail= 0;
+        }
+    }
+
+    @Override
+    public void release(BufferPool pool)
+    {
+        pool.releaseChars(this.buffer);
+    }
+
+    @Override
+    public void flush()
+        throws IOException
+    {
+        this.drain();
+        this.out.flush();
+    }
+
+    @Override
+    public void close()
+        throws IOException
+    {
+        this.flush();
+        this.out.close();
+    }
+
+    private static final int BUFFER_SIZE= 4096;
+
+    private Writer out;
+
+    private final char[] buffer;
+
+    private int tail;
+}
@@ -0,0 +1,258 @@
+package jp.michikusa.chitose.lolivimson.util;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * A compact {@link Map} which stores keys and values in a single array, and preserves insertion order.
+ * Lookup is a linear scan, so this is meant for small maps, such as decoded vim dictionaries.
+ */
+public class ArrayMap<K, V>
+    extends AbstractMap<K, V>
+{
+    public ArrayMap()
+    {
+        this(4);
+    }
+
+    public ArrayMap(int capacity)
+    {
+        if(capacity < 0)
+        {
+            throw new IllegalArgumentException();
+        }
+        this.table= new Object[capacity * 2];
+    }
+
+    @Override
+    public int size()
+    {
+        return this.size;
+    }
+
+    @Override
+    public boolean containsKey(Object key)
+    {
+        return this.indexOf(key) >= 0;
+    }
+
+    @Override
+    public V get(Object key)
+    {
+        final int i= this.indexOf(key);
+
+        return (i >= 0) ? this.valueAt(i) : null;
+    }
+
+    @Override
+    public V put(K key, V value)
+    {
+        final int i= this.indexOf(key);
+
+        if(i >= 0)
+        {
+            final V old= this.valueAt(i);
+            this.table[i + 1]= value;
+            return old;
+        }
+
+        final int n= this.size * 2;
+        if(n == this.table.length)
+        {
+            final Object[] table= new Object[Math.max(8, n * 2)];
+            System.arraycopy(this.table, 0, table, 0, n);
+            this.table= table;
+        }
+        this.table[n]= key;
+        this.table[n + 1]= value;
+        ++this.size;
+        ++this.modCount;
+        return null;
+    }
+
+    @Override
+    public V remove(Object key)
+    {
+        final int i= this.indexOf(key);
+
+        if(i < 0)
+        {
+            return null;
+        }
+
+        final V old= this.valueAt(i);
+        this.removeAt(i);
+        return old;
+    }
+
+    @Override
+    public void clear()
+    {
+        for(int i= 0; i < this.size * 2; ++i)
+        {
+            this.table[i]= null;
+        }
+        this.size= 0;
+        ++this.modCount;
+    }
+
+    @Override
+    public Set<Map.Entry<K, V>> entrySet()
+    {
+        return new EntrySet();
+    }
+
+    private int indexOf(Object key)
+    {
+        final Object[] table= this.table;
+        final int n= this.size * 2;
+
+        // identity first, keys are often canonicalized
+        for(int i= 0; i < n; i+= 2)
+        {
+            if(table[i] == key)
+            {
+                return i;
+            }
+        }
+        if(key != null)
+        {
+            for(int i= 0; i < n; i+= 2)
+            {
+                if(key.equals(table[i]))
+                {
+                    return i;
+                }
+            }
+        }
+        return -1;
+    }
+
+    @SuppressWarnings("unchecked")
+    private K keyAt(int i)
+    {
+        return (K)this.table[i];
+    }
+
+    @SuppressWarnings("unchecked")
+    private V valueAt(int i)
+    {
+        return (V)this.table[i + 1];
+    }
+
+    private void removeAt(int i)
+    {
+        final int n= this.size * 2;
+
+        System.arraycopy(this.table, i + 2, this.table, i, n - i - 2);
+        this.table[n - 2]= null;
+        this.table[n - 1]= null;
+        --this.size;
+        ++this.modCount;
+    }
+
+    private final class EntrySet
+        extends AbstractSet<Map.Entry<K, V>>
+    {
+        @Override
+        public int size()
+        {
+            return ArrayMap.this.size;
+        }
+
+        @Override
+        public Iterator<Map.Entry<K, V>> iterator()
+        {
+            return new EntryIterator();
+        }
+
+        @Override
+        public void clear()
+        {
+            ArrayMap.this.clear();
+        }
+    }
+
+    private final class EntryIterator
+        implements Iterator<Map.Entry<K, V>>
+    {
+        @Override
+        public boolean hasNext()
+        {
+            return this.next < ArrayMap.this.size * 2;
+        }
+
+        @Override
+        public Map.Entry<K, V> next()
+        {
+            if(this.expectedModCount != ArrayMap.this.modCount)
+            {
+                throw new ConcurrentModificationException();
+            }
+            if(!this.hasNext())
+            {
+                throw new NoSuchElementException();
+            }
+
+            final int i= this.next;
+            this.last= i;
+            this.next+= 2;
+            return new Entry(i);
+        }
+
+        @Override
+        public void remove()
+        {
+            if(this.last < 0)
+            {
+                throw new IllegalStateException();
+            }
+            if(this.expectedModCount != ArrayMap.this.modCount)
+            {
+                throw new ConcurrentModificationException();
+            }
+
+            ArrayMap.this.removeAt(this.last);
+            this.next= this.last;
+            this.last= -1;
+            this.expectedModCount= ArrayMap.this.modCount;
+        }
+
+        private int next= 0;
+
+        private int last= -1;
+
+        private int expectedModCount= ArrayMap.this.modCount;
+    }
+
+    @SuppressWarnings("serial")
+    private final class Entry
+        extends AbstractMap.SimpleEntry<K, V>
+    {
+        public Entry(int index)
+        {
+            super(ArrayMap.this.keyAt(index), ArrayMap.this.valueAt(index));
+            this.index= index;
+        }
+
+        @Override
+        public V setValue(V value)
+        {
+            ArrayMap.this.table[this.index + 1]= value;
+            return super.setValue(value);
+        }
+
+        private final int index;
+    }
+
+    private Object[] table;
+
+    private int size;
+
+    private int modCount;
+}
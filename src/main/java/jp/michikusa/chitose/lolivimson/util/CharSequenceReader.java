@@ -0,0 +1,119 @@
+package jp.michikusa.chitose.lolivimson.util;
+
+import java.io.Reader;
+import java.nio.CharBuffer;
+
+import static jp.michikusa.chitose.lolivimson.util.Preconditions.checkNotNull;
+
+/**
+ * A unsynchronized {@link Reader} over a {@link CharSequence}.
+ * Well-known implementations are copied by bulk, others are copied by {@link CharSequence#charAt(int)}.
+ */
+public class CharSequenceReader
+    extends Reader
+{
+    public CharSequenceReader(CharSequence seq)
+    {
+        this(seq, 0, checkNotNull(seq).length());
+    }
+
+    /**
+     * Creates a reader over {@code seq} from {@code start} (inclusive) to {@code end} (exclusive), without copying.
+     */
+    public CharSequenceReader(CharSequence seq, int start, int end)
+    {
+        this.seq= checkNotNull(seq);
+        if(start < 0 || start > end || end > seq.length())
+        {
+            throw new IndexOutOfBoundsException();
+        }
+        this.pos= start;
+        this.end= end;
+    }
+
+    @Override
+    public int read(char[] cbuf, int off, int len)
+    {
+        final CharSequence seq= this.seq;
+        final int length= this.end;
+
+        if(this.pos >= length)
+        {
+            return -1;
+        }
+
+        final int n= Math.min(len, length - this.pos);
+        final int end= this.pos + n;
+
+        getChars(seq, this.pos, end, cbuf, off);
+        this.pos= end;
+        return n;
+    }
+
+    /**
+     * Copies chars of {@code seq} into {@code dst}, same as {@link String#getChars(int, int, char[], int)}.
+     */
+    public static void getChars(CharSequence seq, int begin, int end, char[] dst, int dstBegin)
+    {
+        if(seq instanceof String)
+        {
+            ((String)seq).getChars(begin, end, dst, dstBegin);
+        }
+        else if(seq instanceof StringBuilder)
+        {
+            ((StringBuilder)seq).getChars(begin, end, dst, dstBegin);
+        }
+        else if(seq instanceof StringBuffer)
+        {
+            ((StringBuffer)seq).getChars(begin, end, dst, dstBegin);
+        }
+        else if(seq instanceof CharBuffer)
+        {
+            final CharBuffer buf= ((CharBuffer)seq).duplicate();
+            buf.position(buf.position() + begin);
+            buf.get(dst, dstBegin, end - begin);
+        }
+        else
+        {
+            for(int i= begin; i < end; ++i)
+            {
+                dst[dstBegin++]= seq.charAt(i);
+            }
+        }
+    }
+
+    @Override
+    public int read()
+    {
+        if(this.pos >= this.end)
+        {
+            return -1;
+        }
+        return this.seq.charAt(this.pos++);
+    }
+
+    @Override
+    public long skip(long n)
+    {
+        final int skipped= (int)Math.max(0, Math.min(n, this.end - this.pos));
+        this.pos+= skipped;
+        return skipped;
+    }
+
+    @Override
+    public boolean ready()
+    {
+        return true;
+    }
+
+    @Override
+    public void close()
+    {
+    }
+
+    private final CharSequence seq;
+
+    private final int end;
+
+    private int pos;
+}
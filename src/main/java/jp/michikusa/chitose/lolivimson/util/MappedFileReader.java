@@ -0,0 +1,205 @@
+package jp.michikusa.chitose.lolivimson.util;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import static jp.michikusa.chitose.lolivimson.util.Preconditions.checkNotNull;
+
+/**
+ * A unsynchronized {@link Reader} which decodes UTF-8 directly from a memory-mapped file.
+ * The file is mapped in segments and never copied onto the heap, except into the caller's buffer.
+ * ASCII runs are widened byte by byte, malformed sequences are replaced by {@code U+FFFD}.
+ * The channel may be closed after construction, mappings stay valid until they are collected.
+ */
+public class MappedFileReader
+    extends Reader
+{
+    public MappedFileReader(FileChannel channel)
+        throws IOException
+    {
+        this(channel, 0, checkNotNull(channel).size());
+    }
+
+    public MappedFileReader(FileChannel channel, long position, long size)
+        throws IOException
+    {
+        this.channel= checkNotNull(channel);
+        if(position < 0 || size < 0)
+        {
+            throw new IllegalArgumentException();
+        }
+        this.position= position;
+        this.limit= position + size;
+        this.map();
+    }
+
+    @Override
+    public int read(char[] cbuf, int off, int len)
+        throws IOException
+    {
+        if(len == 0)
+        {
+            return 0;
+        }
+
+        int n= 0;
+        if(this.pendingLowSurrogate != 0)
+        {
+            cbuf[off + n++]= this.pendingLowSurrogate;
+            this.pendingLowSurrogate= 0;
+        }
+
+        while(n < len)
+        {
+            MappedByteBuffer segment= this.segment;
+            if(segment.remaining() < 4 && this.position + segment.position() + segment.remaining() < this.limit)
+            {
+                // a sequence may cross the end of the segment
+                this.map();
+                segment= this.segment;
+            }
+            if(!segment.hasRemaining())
+            {
+                break;
+            }
+
+            // ASCII fast path
+            final int run= Math.min(len - n, segment.remaining());
+            int i= 0;
+            while(i < run)
+            {
+                final byte b= segment.get(segment.position() + i);
+                if(b < 0)
+                {
+                    break;
+                }
+                cbuf[off + n + i]= (char)b;
+                ++i;
+            }
+            segment.position(segment.position() + i);
+            n+= i;
+
+            if(n < len && segment.hasRemaining() && segment.get(segment.position()) < 0)
+            {
+                final int c= this.decode(segment);
+                if(c > Character.MAX_VALUE)
+                {
+                    cbuf[off + n++]= (char)(((c - 0x10000) >>> 10) + Character.MIN_HIGH_SURROGATE);
+                    final char low= (char)(((c - 0x10000) & 0x3ff) + Character.MIN_LOW_SURROGATE);
+                    if(n < len)
+                    {
+                        cbuf[off + n++]= low;
+                    }
+                    else
+                    {
+                        this.pendingLowSurrogate= low;
+                    }
+                }
+                else
+                {
+                    cbuf[off + n++]= (char)c;
+                }
+            }
+        }
+        return (n > 0) ? n : -1;
+    }
+
+    @Override
+    public boolean ready()
+    {
+        return true;
+    }
+
+    @Override
+    public void close()
+    {
+    }
+
+    /**
+     * Decodes a multi-byte sequence, the segment has at least 4 bytes or all of the rest.
+     */
+    private int decode(MappedByteBuffer segment)
+    {
+        final int b0= segment.get() & 0xff;
+        final int length;
+        int c;
+
+        if((b0 & 0xe0) == 0xc0 && b0 >= 0xc2)
+        {
+            length= 1;
+            c= b0 & 0x1f;
+        }
+        else if((b0 & 0xf0) == 0xe0)
+        {
+            length= 2;
+            c= b0 & 0x0f;
+        }
+        else if((b0 & 0xf8) == 0xf0 && b0 <= 0xf4)
+        {
+            length= 3;
+            c= b0 & 0x07;
+        }
+        else
+        {
+            return REPLACEMENT;
+        }
+
+        for(int i= 0; i < length; ++i)
+        {
+            if(!segment.hasRemaining())
+            {
+                return REPLACEMENT;
+            }
+            final int b= segment.get(segment.position()) & 0xff;
+            if((b & 0xc0) != 0x80)
+            {
+                // leaves the byte for the next character
+                return REPLACEMENT;
+            }
+            segment.get();
+            c= (c << 6) | (b & 0x3f);
+        }
+
+        if((length == 2 && c < 0x800) || (length == 3 && (c < 0x10000 || c > Character.MAX_CODE_POINT)))
+        {
+            return REPLACEMENT;
+        }
+        if(c >= Character.MIN_SURROGATE && c <= Character.MAX_SURROGATE)
+        {
+            return REPLACEMENT;
+        }
+        return c;
+    }
+
+    /**
+     * Maps the next segment, starting at the current read position.
+     */
+    private void map()
+        throws IOException
+    {
+        if(this.segment != null)
+        {
+            this.position+= this.segment.position();
+        }
+
+        final long size= Math.min(SEGMENT_SIZE, this.limit - this.position);
+        this.segment= this.channel.map(FileChannel.MapMode.READ_ONLY, this.position, size);
+    }
+
+    private static final int REPLACEMENT= 0xfffd;
+
+    private static final long SEGMENT_SIZE= 1L << 30;
+
+    private final FileChannel channel;
+
+    private final long limit;
+
+    /** The file position where the current segment starts. */
+    private long position;
+
+    private MappedByteBuffer segment;
+
+    private char pendingLowSurrogate;
+}
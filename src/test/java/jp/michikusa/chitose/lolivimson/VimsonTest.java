@@ -1,5 +1,6 @@
 package jp.michikusa.chitose.lolivimson;
 
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.LinkedHashMap;
@@ -100,6 +101,15 @@ public class VimsonTest
         assertEquals("{'a':{},'b':{'A':{},'B':'hoge',},}", Vimson.encode(m).toString());
     }
 
+    @Test
+    public void encodeAppend()
+    {
+        final StringBuilder out= new StringBuilder("let g:x= ");
+
+        assertEquals(out, Vimson.encode(out, Collections.singletonList("a")));
+        assertEquals("let g:x= ['a',]", out.toString());
+    }
+
     @Test(expected= NullPointerException.class)
     public void encodePassNull()
     {
@@ -109,8 +119,16 @@ public class VimsonTest
     @Test
     public void decode()
     {
-        // TODO: implements
-        // Vimson.decode("");
+        assertEquals("あいう", Vimson.decode(String.class, "'あいう'"));
+        assertEquals(Collections.singletonMap("a", Arrays.asList(1, 2)), Vimson.decode(Map.class, new StringBuilder("{'a':[1,2]}")));
+        assertEquals(3, Vimson.decode(Object.class, "3"));
+    }
+
+    @Test(expected= TypeMismatchException.class)
+    public void decodeMismatchFailsEarly()
+    {
+        // the broken remainder is never read
+        Vimson.decode(List.class, "{'a': <broken>");
     }
 }
 
@@ -0,0 +1,201 @@
+package jp.michikusa.chitose.lolivimson.codegen;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import jp.michikusa.chitose.lolivimson.TypeMismatchException;
+import jp.michikusa.chitose.lolivimson.VimsonException;
+import jp.michikusa.chitose.lolivimson.core.BeanCodec;
+import jp.michikusa.chitose.lolivimson.core.ObjectCodec;
+import jp.michikusa.chitose.lolivimson.core.VimsonGenerator;
+import jp.michikusa.chitose.lolivimson.core.VimsonParser;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+public class CodecProcessorTest
+{
+    @GenerateCodec
+    public static class Position
+    {
+        public int line;
+
+        public double col;
+
+        public transient int ignored= 1;
+    }
+
+    @GenerateCodec
+    public static class Item
+    {
+        public String getWord()
+        {
+            return this.word;
+        }
+
+        public void setWord(String word)
+        {
+            this.word= word;
+        }
+
+        public boolean isIcase()
+        {
+            return this.icase;
+        }
+
+        public void setIcase(boolean icase)
+        {
+            this.icase= icase;
+        }
+
+        public Kind kind= Kind.FUNCTION;
+
+        public Position position;
+
+        public List<String> tags;
+
+        public Long priority;
+
+        public Map<String, Object> userData;
+
+        private String word;
+
+        private boolean icase;
+    }
+
+    @GenerateCodec
+    public static class Flags
+    {
+        public boolean on;
+
+        public char mark;
+
+        public byte small;
+    }
+
+    @GenerateCodec
+    public static class Group
+    {
+        public List<Long> ids;
+
+        public List<Position> positions;
+
+        public Map<String, ?> extra;
+    }
+
+    public static enum Kind
+    {
+        FUNCTION,
+        VARIABLE,
+    }
+
+    @Test
+    public void writeSameAsBeanCodec()
+        throws IOException
+    {
+        final Item item= new Item();
+        item.setWord("main");
+        item.setIcase(true);
+        item.position= new Position();
+        item.position.line= 3;
+        item.position.col= 1.5;
+        item.tags= Arrays.asList("a", "b");
+
+        assertEquals(write(new BeanCodec(), item), write(CodecProcessorTest_ItemCodec.INSTANCE, item));
+        assertEquals("{'kind':'FUNCTION','position':{'line':3,'col':1.5,},'tags':['a','b',],'word':'main','icase':1,}", write(CodecProcessorTest_ItemCodec.INSTANCE, item));
+    }
+
+    @Test
+    public void read()
+        throws IOException
+    {
+        final VimsonParser parser= new VimsonParser("{'word':'main','icase':1,'kind':'VARIABLE','position':{'line':3,'col':1.5},'tags':['a','b'],'priority':10,'unknown':{'x':[1]}}");
+        final Item item= CodecProcessorTest_ItemCodec.INSTANCE.readValue(parser);
+
+        assertEquals("main", item.getWord());
+        assertEquals(true, item.isIcase());
+        assertEquals(Kind.VARIABLE, item.kind);
+        assertEquals(3, item.position.line);
+        assertEquals(1.5, item.position.col, 0.0);
+        assertEquals(Arrays.asList("a", "b"), item.tags);
+        assertEquals(Long.valueOf(10), item.priority);
+        assertNull(item.userData);
+        assertNull(parser.nextToken());
+    }
+
+    @Test
+    public void readChecksScalars()
+        throws IOException
+    {
+        final Flags flags= CodecProcessorTest_FlagsCodec.INSTANCE.readValue(new VimsonParser("{'on':0.5,'mark':'x','small':100.0}"));
+
+        assertEquals(true, flags.on);
+        assertEquals('x', flags.mark);
+        assertEquals(100, flags.small);
+
+        for(final String vimson : new String[]{"{'mark':'xy'}", "{'mark':''}", "{'mark':1}", "{'small':300}", "{'small':1.5}", "{'on':'yes'}", "{'small':[1]}"})
+        {
+            try
+            {
+                CodecProcessorTest_FlagsCodec.INSTANCE.readValue(new VimsonParser(vimson));
+                fail(vimson);
+            }
+            catch(TypeMismatchException e)
+            {
+            }
+        }
+    }
+
+    @Test
+    public void readTypedContainers()
+        throws IOException
+    {
+        final Group group= CodecProcessorTest_GroupCodec.INSTANCE.readValue(new VimsonParser("{'ids':[1,2],'positions':[{'line':3,'col':1.5}],'extra':{'a':[1]}}"));
+
+        assertEquals(Arrays.asList(1L, 2L), group.ids);
+        assertEquals(3, group.positions.get(0).line);
+        assertEquals(1.5, group.positions.get(0).col, 0.0);
+        assertEquals(Collections.singletonMap("a", Arrays.asList(1)), group.extra);
+    }
+
+    @Test(expected= VimsonException.class)
+    public void readUnknownConstant()
+        throws IOException
+    {
+        CodecProcessorTest_ItemCodec.INSTANCE.readValue(new VimsonParser("{'kind':'CLASS'}"));
+    }
+
+    @Test
+    public void roundTrip()
+        throws IOException
+    {
+        final Item item= new Item();
+        item.setWord("main");
+        item.position= new Position();
+        item.position.line= -1;
+
+        final String vimson= write(CodecProcessorTest_ItemCodec.INSTANCE, item);
+        final Item read= CodecProcessorTest_ItemCodec.INSTANCE.readValue(new VimsonParser(vimson));
+
+        assertEquals(vimson, write(CodecProcessorTest_ItemCodec.INSTANCE, read));
+    }
+
+    private static String write(ObjectCodec codec, Object value)
+        throws IOException
+    {
+        final StringBuilder out= new StringBuilder();
+        final VimsonGenerator g= new VimsonGenerator(out);
+
+        g.setObjectCodec(codec);
+        g.writeObject(value);
+        g.flush();
+
+        return out.toString();
+    }
+}
@@ -0,0 +1,300 @@
+package jp.michikusa.chitose.lolivimson.core;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import jp.michikusa.chitose.lolivimson.LimitExceededException;
+import jp.michikusa.chitose.lolivimson.TypeMismatchException;
+import jp.michikusa.chitose.lolivimson.UnsupportedTypeException;
+import jp.michikusa.chitose.lolivimson.VimsonException;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class BeanCodecTest
+{
+    public static class Position
+    {
+        public int line;
+
+        public double col;
+
+        public transient int ignored= 1;
+
+        public static int IGNORED= 2;
+    }
+
+    public static class Item
+    {
+        public String getWord()
+        {
+            return this.word;
+        }
+
+        public boolean isIcase()
+        {
+            return true;
+        }
+
+        public Position getPosition()
+        {
+            return this.position;
+        }
+
+        public List<String> getTags()
+        {
+            return Arrays.asList("a", "b");
+        }
+
+        public String getMenu()
+        {
+            return null;
+        }
+
+        public Kind getKind()
+        {
+            return Kind.FUNCTION;
+        }
+
+        private String word= "main";
+
+        private final Position position= new Position();
+    }
+
+    public static class Candidate
+    {
+        public Position getPosition()
+        {
+            return this.position;
+        }
+
+        public void setPosition(Position position)
+        {
+            this.position= position;
+        }
+
+        public String word;
+
+        public Kind kind;
+
+        public int[] lines;
+
+        public Map<String, List<Long>> scores;
+
+        private Position position;
+    }
+
+    public static enum Kind
+    {
+        FUNCTION,
+    }
+
+    @Test
+    public void writeBean()
+        throws IOException
+    {
+        final Item item= new Item();
+        item.position.line= 3;
+        item.position.col= 1.5;
+
+        assertEquals("{'word':'main','position':{'line':3,'col':1.5,},'icase':1,'kind':'FUNCTION','tags':['a','b',],}", write(item));
+    }
+
+    @Test
+    public void writeArray()
+        throws IOException
+    {
+        assertEquals("[1,2,]", write(new int[]{1, 2}));
+        assertEquals("[{'line':0,'col':0.0,},]", write(new Position[]{new Position()}));
+    }
+
+    @Test(expected= UnsupportedTypeException.class)
+    public void writeNoProperties()
+        throws IOException
+    {
+        write(new Object());
+    }
+
+    @Test
+    public void writeParallel()
+        throws IOException
+    {
+        final List<Object> items= new ArrayList<Object>();
+        final Map<String, Object> dictionary= new LinkedHashMap<String, Object>();
+        for(int i= 0; i < 1000; ++i)
+        {
+            final Item item= new Item();
+            item.position.line= i;
+            items.add(item);
+            dictionary.put("key" + i, Arrays.asList(i, "あ" + i, new int[]{i, i}));
+        }
+        final Object value= Arrays.asList(items, dictionary, items.toArray());
+
+        final ExecutorService executor= Executors.newFixedThreadPool(4);
+        try
+        {
+            assertEquals(write(value, new BeanCodec()), write(value, new ParallelBeanCodec(executor, 10)));
+        }
+        finally
+        {
+            executor.shutdown();
+        }
+    }
+
+    @Test(timeout= 10000)
+    public void writeParallelInWorker()
+        throws Exception
+    {
+        final List<Object> items= new ArrayList<Object>();
+        for(int i= 0; i < 1000; ++i)
+        {
+            items.add(Arrays.asList(i, "あ" + i));
+        }
+
+        // the only worker waits for chunks which are queued behind itself
+        final ExecutorService executor= Executors.newSingleThreadExecutor();
+        try
+        {
+            final ParallelBeanCodec codec= new ParallelBeanCodec(executor, 10);
+            final Future<String> written= executor.submit(new Callable<String>(){
+                @Override
+                public String call()
+                    throws IOException
+                {
+                    return write(items, codec);
+                }
+            });
+
+            assertEquals(write(items), written.get());
+        }
+        finally
+        {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void readBean()
+        throws IOException
+    {
+        final Candidate candidate= read("{'word': 'main', 'unknown': {'a': [1, {}]}, 'kind': 'FUNCTION',\n"
+                + "\\ 'position': {'line': 3, 'col': 1.5}, 'lines': [1, 2], 'scores': {'a': [3]}}", Candidate.class);
+
+        assertEquals("main", candidate.word);
+        assertEquals(Kind.FUNCTION, candidate.kind);
+        assertEquals(3, candidate.getPosition().line);
+        assertEquals(1.5, candidate.getPosition().col, 0.0);
+        assertArrayEquals(new int[]{1, 2}, candidate.lines);
+        assertEquals(Collections.singletonMap("a", Arrays.asList(3L)), candidate.scores);
+    }
+
+    @Test
+    public void readSkipsUnknown()
+        throws IOException
+    {
+        // skipped strings are not decoded, so they are not limited either
+        final VimsonParser parser= new VimsonParser("{'x': 'long string', 'word': 'main', 'y': 12345678}");
+        parser.setLimits(VimsonLimits.DEFAULT.withMaxStringLength(5));
+
+        assertEquals("main", parser.parse(Candidate.class).word);
+    }
+
+    @Test
+    public void readGenerics()
+        throws IOException
+    {
+        final List<Position> positions= new VimsonParser("[{'line': 1}, {'line': 2}]").parse(new TypeReference<List<Position>>(){});
+        assertEquals(2, positions.size());
+        assertEquals(2, positions.get(1).line);
+
+        final Map<String, Set<Kind>> kinds= new VimsonParser("{'a': ['FUNCTION', 'FUNCTION']}").parse(new TypeReference<Map<String, Set<Kind>>>(){});
+        assertEquals(Collections.singletonMap("a", Collections.singleton(Kind.FUNCTION)), kinds);
+
+        assertEquals(Long.valueOf(3), read("3", long.class));
+        assertEquals(Character.valueOf('x'), read("'x'", char.class));
+        assertEquals(new BigDecimal("0.5"), read("0.5", BigDecimal.class));
+        assertArrayEquals(new String[]{"a", "b"}, read("['a', 'b']", String[].class));
+    }
+
+    @Test(expected= TypeMismatchException.class)
+    public void readMismatch()
+        throws IOException
+    {
+        new VimsonParser("[{'line': 1}, 2]").parse(new TypeReference<List<Position>>(){});
+    }
+
+    @Test
+    public void readNarrowing()
+        throws IOException
+    {
+        assertEquals(Integer.valueOf(2), read("2.0", int.class));
+        assertEquals(Byte.valueOf((byte)-128), read("-128", byte.class));
+        for(final String expr : new String[]{"1099511627776", "1.9", "128"})
+        {
+            try
+            {
+                read(expr, expr.equals("128") ? byte.class : int.class);
+                fail(expr);
+            }
+            catch(TypeMismatchException e)
+            {
+                // expected
+            }
+        }
+    }
+
+    @Test(expected= LimitExceededException.class)
+    public void readLimits()
+        throws IOException
+    {
+        final VimsonParser parser= new VimsonParser("[1, 2, 3, 4, 5, 6, 7, 8, 9, 10]");
+        parser.setLimits(VimsonLimits.DEFAULT.withMaxContainerSize(2));
+
+        parser.parse(new TypeReference<ArrayList<Integer>>(){});
+    }
+
+    @Test(expected= VimsonException.class)
+    public void readUnknownConstant()
+        throws IOException
+    {
+        read("'VARIABLE'", Kind.class);
+    }
+
+    static <T> T read(String expr, Class<T> type)
+        throws IOException
+    {
+        return new VimsonParser(expr).parse(type);
+    }
+
+    static String write(Object value)
+        throws IOException
+    {
+        return write(value, new BeanCodec());
+    }
+
+    static String write(Object value, BeanCodec codec)
+        throws IOException
+    {
+        final StringBuilder out= new StringBuilder();
+        final VimsonGenerator vgen= new VimsonGenerator(out);
+
+        vgen.setObjectCodec(codec);
+        vgen.writeObject(value);
+
+        return out.toString();
+    }
+}
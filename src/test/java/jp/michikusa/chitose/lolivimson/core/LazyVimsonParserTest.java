@@ -0,0 +1,95 @@
+package jp.michikusa.chitose.lolivimson.core;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class LazyVimsonParserTest
+{
+    private static final String EXPR= "{'words': [{'word': 'it''s', 'kind': 'f'}, {'word': \"a\\tb\", 'rank': -1.5e3}], "
+        + "'it''s': 1, \"a\\u3042\": 0x10, 'nested': {'x': [[], {}]},\n  \\ 'big': 12345678901234567890}";
+
+    @Test
+    public void sameAsEager()
+        throws IOException
+    {
+        assertEquals(new VimsonParser(EXPR).parse(Map.class), new LazyVimsonParser().parse(EXPR));
+        assertEquals(new VimsonParser(EXPR).parse(Map.class).hashCode(), new LazyVimsonParser().parse(EXPR).hashCode());
+    }
+
+    @Test
+    public void get()
+        throws IOException
+    {
+        final Map<?, ?> value= (Map<?, ?>)new LazyVimsonParser().parse(EXPR);
+
+        assertEquals(5, value.size());
+        assertEquals(1, value.get("it's"));
+        assertEquals(16, value.get("aあ"));
+        assertTrue(value.containsKey("big"));
+        assertFalse(value.containsKey("bi"));
+        assertFalse(value.containsKey("it'"));
+        assertNull(value.get("missing"));
+
+        final List<?> words= (List<?>)value.get("words");
+        assertSame(words, value.get("words"));
+        assertEquals(2, words.size());
+        assertEquals("a\tb", ((Map<?, ?>)words.get(1)).get("word"));
+        assertEquals(-1500.0, ((Map<?, ?>)words.get(1)).get("rank"));
+        assertEquals(Arrays.asList(Arrays.asList(), new HashMap<Object, Object>()), ((Map<?, ?>)value.get("nested")).get("x"));
+    }
+
+    @Test
+    public void scalar()
+        throws IOException
+    {
+        assertEquals("text", new LazyVimsonParser().parse(" 'text' "));
+        assertEquals(42, new LazyVimsonParser().parse("42"));
+    }
+
+    @Test(expected= EOFException.class)
+    public void unclosed()
+        throws IOException
+    {
+        new LazyVimsonParser().parse("{'a': [1, 2]");
+    }
+
+    @Test(expected= IllegalArgumentException.class)
+    public void mismatched()
+        throws IOException
+    {
+        new LazyVimsonParser().parse("{'a': [1, 2}]");
+    }
+
+    @Test
+    public void separators()
+        throws IOException
+    {
+        assertEquals(Arrays.asList(1, 2), new LazyVimsonParser().parse("[1 , 2 ,]"));
+
+        for(final String expr : new String[]{"{'a' 'b'}", "[1 2]", "[1,,,2]", "{'a'::'b'}", "[,]", "{'a', 'b'}", "{'a':}"})
+        {
+            try
+            {
+                new LazyVimsonParser().parse(expr);
+                fail(expr);
+            }
+            catch(IllegalArgumentException e)
+            {
+                // same as VimsonParser
+            }
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package jp.michikusa.chitose.lolivimson.core;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class NonBlockingVimsonParserTest
+{
+    private static final String EXPR= "{'a':[1, 2.5, \"s\\t\\u3042\", 0x1F, 'it''s'], 'ключ' : {'😀': 'あいう'},\n  \\ 'c': [12345678901234567890, -3]}";
+
+    @Test
+    public void feedByBytes()
+        throws IOException
+    {
+        final List<String> expected= blockingTokens(EXPR);
+        final byte[] bytes= EXPR.getBytes(Charset.forName("UTF-8"));
+
+        for(final int chunk : new int[]{1, 2, 3, 7, bytes.length})
+        {
+            final NonBlockingVimsonParser parser= new NonBlockingVimsonParser();
+            final List<String> actual= new ArrayList<String>();
+
+            for(int off= 0; off < bytes.length; off+= chunk)
+            {
+                parser.feedInput(bytes, off, Math.min(chunk, bytes.length - off));
+                VimsonToken token;
+                while((token= parser.nextToken()) != VimsonToken.NEED_MORE_INPUT && token != null)
+                {
+                    actual.add(describe(token, parser.getText()));
+                }
+            }
+            parser.endOfInput();
+            assertEquals(null, parser.nextToken());
+
+            assertEquals("chunk=" + chunk, expected, actual);
+        }
+    }
+
+    @Test
+    public void longStringInPieces()
+        throws IOException
+    {
+        final StringBuilder value= new StringBuilder();
+        final StringBuilder expr= new StringBuilder("{'");
+        for(int i= 0; i < 20000; ++i)
+        {
+            value.append("it's あ\t");
+            expr.append("it''s あ\t");
+        }
+        expr.append("': \"").append(value.toString().replace("\t", "\\t").replace("'", "\\u0027")).append("\"}");
+
+        final NonBlockingVimsonParser parser= new NonBlockingVimsonParser();
+        final byte[] bytes= expr.toString().getBytes(Charset.forName("UTF-8"));
+        final List<String> actual= new ArrayList<String>();
+        for(int off= 0; off < bytes.length; off+= 5)
+        {
+            parser.feedInput(bytes, off, Math.min(5, bytes.length - off));
+            VimsonToken token;
+            while((token= parser.nextToken()) != VimsonToken.NEED_MORE_INPUT && token != null)
+            {
+                actual.add(describe(token, parser.getText()));
+            }
+        }
+
+        assertEquals(blockingTokens(expr.toString()), actual);
+        assertEquals(describe(VimsonToken.VALUE_STRING, value.toString()), actual.get(2));
+    }
+
+    @Test
+    public void numberAtEnd()
+        throws IOException
+    {
+        final NonBlockingVimsonParser parser= new NonBlockingVimsonParser();
+
+        parser.feedInput(new byte[]{'4', '2'}, 0, 2);
+        assertEquals(VimsonToken.NEED_MORE_INPUT, parser.nextToken());
+        parser.feedInput(new byte[]{'0'}, 0, 1);
+        assertEquals(VimsonToken.NEED_MORE_INPUT, parser.nextToken());
+        parser.endOfInput();
+        assertEquals(VimsonToken.VALUE_NUMBER, parser.nextToken());
+        assertEquals(420, parser.getNumberValue());
+    }
+
+    @Test
+    public void skipChildren()
+        throws IOException
+    {
+        final NonBlockingVimsonParser parser= new NonBlockingVimsonParser();
+        final byte[] bytes= "[{'x': [']']}, 1]".getBytes(Charset.forName("UTF-8"));
+
+        parser.feedInput(bytes, 0, 8);
+        assertEquals(VimsonToken.START_LIST, parser.nextToken());
+        assertEquals(VimsonToken.START_DICTIONARY, parser.nextToken());
+        assertFalse(parser.skipChildren());
+        assertEquals(VimsonToken.START_DICTIONARY, parser.getCurrentToken());
+
+        parser.feedInput(bytes, 8, bytes.length - 8);
+        assertTrue(parser.skipChildren());
+        assertEquals(VimsonToken.END_DICTIONARY, parser.getCurrentToken());
+        assertEquals(VimsonToken.VALUE_NUMBER, parser.nextToken());
+        assertEquals(VimsonToken.END_LIST, parser.nextToken());
+    }
+
+    @Test
+    public void longString()
+        throws IOException
+    {
+        final StringBuilder value= new StringBuilder();
+        for(int i= 0; i < 20000; ++i)
+        {
+            value.append((char)('a' + i % 26));
+        }
+        final byte[] bytes= ("['" + value + "']").getBytes(Charset.forName("UTF-8"));
+        final NonBlockingVimsonParser parser= new NonBlockingVimsonParser();
+
+        assertEquals(VimsonToken.NEED_MORE_INPUT, parser.nextToken());
+        for(int off= 0; off < bytes.length; off+= 1000)
+        {
+            parser.feedInput(bytes, off, Math.min(1000, bytes.length - off));
+            if(parser.getCurrentToken() == null)
+            {
+                assertEquals(VimsonToken.START_LIST, parser.nextToken());
+            }
+            if(off + 1000 < bytes.length)
+            {
+                assertEquals(VimsonToken.NEED_MORE_INPUT, parser.nextToken());
+            }
+        }
+        assertEquals(VimsonToken.VALUE_STRING, parser.nextToken());
+        assertEquals(value.toString(), parser.getText());
+        assertEquals(VimsonToken.END_LIST, parser.nextToken());
+    }
+
+    private static List<String> blockingTokens(String expr)
+        throws IOException
+    {
+        final VimsonParser parser= new VimsonParser(expr);
+        final List<String> tokens= new ArrayList<String>();
+
+        VimsonToken token;
+        while((token= parser.nextToken()) != null)
+        {
+            tokens.add(describe(token, parser.getText()));
+        }
+        return tokens;
+    }
+
+    private static String describe(VimsonToken token, String text)
+    {
+        return token + ":" + text;
+    }
+}
@@ -0,0 +1,192 @@
+package jp.michikusa.chitose.lolivimson.core;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import jp.michikusa.chitose.lolivimson.LimitExceededException;
+import jp.michikusa.chitose.lolivimson.TypeMismatchException;
+
+import org.junit.After;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class ParallelVimsonParserTest
+{
+    private final ExecutorService executor= Executors.newFixedThreadPool(4);
+
+    @After
+    public void shutdown()
+    {
+        this.executor.shutdown();
+    }
+
+    @Test
+    public void parseList()
+        throws IOException
+    {
+        final String expr= largeList();
+        final List<?> expected= new VimsonParser(expr).parse(List.class);
+        final ParallelVimsonParser parser= new ParallelVimsonParser(this.executor, 10);
+
+        assertEquals(expected, parser.parseList(expr));
+        assertEquals(expected, parser.parseList(expr.toCharArray()));
+        assertEquals(expected, parser.parseList(new StringBuilder(expr)));
+    }
+
+    @Test
+    public void parseMappedFile()
+        throws IOException
+    {
+        final String expr= largeList();
+        final File file= File.createTempFile("lolivimson", ".vim");
+        try
+        {
+            final FileOutputStream out= new FileOutputStream(file);
+            try
+            {
+                out.write(expr.getBytes(Charset.forName("UTF-8")));
+            }
+            finally
+            {
+                out.close();
+            }
+
+            final RandomAccessFile in= new RandomAccessFile(file, "r");
+            try
+            {
+                assertEquals(new VimsonParser(expr).parse(List.class), new ParallelVimsonParser(this.executor, 10).parseList(in.getChannel()));
+            }
+            finally
+            {
+                in.close();
+            }
+        }
+        finally
+        {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void smallList()
+        throws IOException
+    {
+        final ParallelVimsonParser parser= new ParallelVimsonParser(this.executor);
+
+        assertEquals(Collections.emptyList(), parser.parseList(" [ ] "));
+        assertEquals(Arrays.asList(1, "a,]", Arrays.asList(2)), parser.parseList("[1, 'a,]', [2],]"));
+    }
+
+    @Test(expected= TypeMismatchException.class)
+    public void notList()
+        throws IOException
+    {
+        new ParallelVimsonParser(this.executor).parseList("{'a': 1}");
+    }
+
+    @Test
+    public void malformed()
+        throws IOException
+    {
+        final ParallelVimsonParser parser= new ParallelVimsonParser(this.executor, 1);
+
+        for(final String expr : new String[]{"[1 2]", "[1, 2 3]", "[1,,2]", "[,]"})
+        {
+            try
+            {
+                parser.parseList(expr);
+                fail(expr);
+            }
+            catch(IllegalArgumentException e)
+            {
+                // same as VimsonParser
+            }
+        }
+    }
+
+    @Test
+    public void limits()
+        throws IOException
+    {
+        final String expr= largeList();
+        final ParallelVimsonParser parser= new ParallelVimsonParser(this.executor, 10);
+
+        parser.setLimits(VimsonLimits.DEFAULT.withMaxContainerSize(1000));
+        try
+        {
+            parser.parseList(expr);
+            fail();
+        }
+        catch(LimitExceededException e)
+        {
+            assertEquals(1001, e.getLine());
+        }
+
+        parser.setLimits(VimsonLimits.DEFAULT.withMaxStringLength(3));
+        try
+        {
+            parser.parseList(expr);
+            fail();
+        }
+        catch(LimitExceededException e)
+        {
+            // by a parser of a chunk
+        }
+
+        parser.setLimits(VimsonLimits.DEFAULT.withMaxDocumentLength(expr.length() - 1));
+        try
+        {
+            parser.parseList(expr);
+            fail();
+        }
+        catch(LimitExceededException e)
+        {
+            assertEquals(expr.length() - 1, e.getOffset());
+        }
+    }
+
+    @Test
+    public void listener()
+        throws IOException
+    {
+        final VimsonMetrics metrics= new VimsonMetrics();
+        final ParallelVimsonParser parser= new ParallelVimsonParser(this.executor, 10);
+        parser.setListener(metrics);
+
+        final String expr= largeList();
+        parser.parseList(expr);
+        assertEquals(1, metrics.getDocumentsParsed());
+        assertEquals(expr.length(), metrics.getCharsParsed());
+        assertEquals(3, metrics.getMaxDepth());
+
+        try
+        {
+            parser.parseList("[1, 2 3]");
+            fail();
+        }
+        catch(IllegalArgumentException e)
+        {
+            assertEquals(1, metrics.getErrors());
+        }
+    }
+
+    private static String largeList()
+    {
+        final StringBuilder expr= new StringBuilder("[");
+        for(int i= 0; i < 3000; ++i)
+        {
+            expr.append("{'word': 'it''s [").append(i).append("', \"menu\": \"\\\"],\", 'kind': ['あ', ").append(i).append(", 1.5]},\n  \\ ");
+        }
+        return expr.append("]").toString();
+    }
+}
@@ -0,0 +1,152 @@
+package jp.michikusa.chitose.lolivimson.core;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class VimsonFactoryTest
+{
+    @Test
+    public void createParser()
+        throws Exception
+    {
+        final VimsonFactory factory= new VimsonFactory();
+
+        final VimsonParser parser= factory.createParser("{'a': [1, 2]}");
+        assertEquals(Collections.singletonMap("a", Arrays.asList(1, 2)), parser.parse(Map.class));
+        parser.close();
+
+        final VimsonParser stream= factory.createParser(new ByteArrayInputStream("['あ']".getBytes("UTF-8")));
+        assertEquals(Arrays.asList("あ"), stream.parse(List.class));
+        stream.close();
+    }
+
+    @Test
+    public void resetParser()
+        throws Exception
+    {
+        final VimsonParser parser= new VimsonFactory().createParser("[1, [2");
+
+        parser.nextToken();
+        parser.nextToken();
+        assertEquals(Arrays.asList(3), parser.reset("[3]").parse(List.class));
+        assertEquals("x", parser.reset(new StringReader("'x'")).parse(String.class));
+
+        // reused after closing, and with an input larger than the window
+        parser.close();
+        final StringBuilder large= new StringBuilder("[");
+        for(int i= 0; i < 5000; ++i)
+        {
+            large.append(i).append(',');
+        }
+        large.append(']');
+        assertEquals(5000, parser.reset(large).parse(List.class).size());
+        assertNull(parser.nextToken());
+
+        // never writes into a caller's array
+        final char[] chars= "'abc'".toCharArray();
+        final VimsonParser inPlace= new VimsonParser(chars);
+        assertEquals(Arrays.asList(1), inPlace.reset("[1]").parse(List.class));
+        assertEquals("'abc'", new String(chars));
+    }
+
+    @Test
+    public void createGenerator()
+        throws Exception
+    {
+        final VimsonFactory factory= new VimsonFactory();
+
+        final ByteArrayOutputStream bytes= new ByteArrayOutputStream();
+        final VimsonGenerator generator= factory.createGenerator(bytes);
+        generator.writeObject(Collections.singletonMap("a", 1));
+        generator.flush();
+        assertEquals("{'a':1,}", bytes.toString("UTF-8"));
+
+        final ByteArrayOutputStream next= new ByteArrayOutputStream();
+        generator.writeStartList();
+        generator.reset(next).writeString("あ");
+        generator.close();
+        assertEquals("'あ'", next.toString("UTF-8"));
+
+        final StringWriter writer= new StringWriter();
+        final VimsonGenerator chars= factory.createGenerator(writer);
+        chars.writeNumber(1);
+        chars.close();
+        assertEquals("1", writer.toString());
+
+        final StringBuilder builder= new StringBuilder();
+        final VimsonGenerator appender= factory.createGenerator(new StringBuilder());
+        appender.reset(builder).writeNumber(2);
+        assertEquals("2", builder.toString());
+    }
+
+    @Test(expected= IllegalStateException.class)
+    public void resetAfterClose()
+        throws Exception
+    {
+        final VimsonGenerator generator= new VimsonFactory().createGenerator(new ByteArrayOutputStream());
+
+        generator.close();
+        generator.reset(new ByteArrayOutputStream());
+    }
+
+    @Test
+    public void concurrentUse()
+        throws Exception
+    {
+        final VimsonFactory factory= new VimsonFactory(2);
+        final ExecutorService executor= Executors.newFixedThreadPool(8);
+        try
+        {
+            final List<Future<String>> results= new ArrayList<Future<String>>();
+            for(int i= 0; i < 200; ++i)
+            {
+                final int n= i;
+                results.add(executor.submit(new Callable<String>(){
+                    @Override
+                    public String call()
+                        throws Exception
+                    {
+                        final ByteArrayOutputStream out= new ByteArrayOutputStream();
+                        final VimsonGenerator generator= factory.createGenerator(out);
+                        generator.writeObject(Arrays.asList(n, "n" + n));
+                        generator.close();
+
+                        final VimsonParser parser= factory.createParser(new ByteArrayInputStream(out.toByteArray()));
+                        try
+                        {
+                            return parser.parse(List.class).toString();
+                        }
+                        finally
+                        {
+                            parser.close();
+                        }
+                    }
+                }));
+            }
+            for(int i= 0; i < results.size(); ++i)
+            {
+                assertEquals("[" + i + ", n" + i + "]", results.get(i).get());
+            }
+        }
+        finally
+        {
+            executor.shutdown();
+        }
+    }
+}
@@ -2,12 +2,23 @@ package jp.michikusa.chitose.lolivimson.core;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Pipe;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.util.Random;
+
+import jp.michikusa.chitose.lolivimson.VimsonException;
 import jp.michikusa.chitose.lolivimson.core.VimsonGenerator;
 
 import org.junit.Test;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 public class VimsonGeneratorTest
 {
@@ -23,6 +34,107 @@ public class VimsonGeneratorTest
         assertEquals("'hello'", out.toString());
     }
 
+    @Test
+    public void writeStringEscaped()
+        throws IOException
+    {
+        assertEquals("\"it's\"", quote("it's"));
+        assertEquals("'say \"hi\"'", quote("say \"hi\""));
+        assertEquals("\"it''s \\\\\"", quote("it''s \\"));
+        assertEquals("'''\"'", quote("'\""));
+        assertEquals("\"a\\nb\\tc\\x01'\"", quote("a\nb\tc\u0001'"));
+        assertEquals("\"\\e\\\"\"", quote("\u001b\""));
+        assertEquals("''", quote(""));
+
+        final String[] values= {"it's", "a\\b", "'\n\"", "\r\f\b", "\u0000\u001f", "あ'い", "''\\"};
+        for(final String value : values)
+        {
+            assertEquals(value, new VimsonParser(quote(value)).parse(String.class));
+        }
+    }
+
+    @Test
+    public void writeFieldNameEscaped()
+        throws IOException
+    {
+        final StringBuilder out= new StringBuilder();
+        final VimsonGenerator vson= new VimsonGenerator(out);
+
+        vson.writeStartDictionary();
+        vson.writeNumberField("it's", 1);
+        vson.writeNumberField(new SerializedName("a\nb"), 2);
+        vson.writeEndDictionary();
+
+        assertEquals("{\"it's\":1,\"a\\nb\":2,}", out.toString());
+    }
+
+    @Test
+    public void writeNumbers()
+        throws IOException
+    {
+        final StringBuilder out= new StringBuilder();
+        final VimsonGenerator vson= new VimsonGenerator(out);
+
+        vson.writeStartList();
+        vson.writeNumber(0);
+        vson.writeNumber(-42);
+        vson.writeNumber((byte)-128);
+        vson.writeNumber(Long.MIN_VALUE);
+        vson.writeNumber(Long.MAX_VALUE);
+        vson.writeEndList();
+
+        assertEquals("[0,-42,-128,-9223372036854775808,9223372036854775807,]", out.toString());
+    }
+
+    @Test
+    public void writeFloats()
+        throws IOException
+    {
+        assertEquals("0.1", formatFloat(0.1));
+        assertEquals("0.1", formatFloat(0.1f));
+        assertEquals("-1.5", formatFloat(-1.5));
+        assertEquals("100.0", formatFloat(100.0));
+        assertEquals("1234567.0", formatFloat(1234567.0));
+        assertEquals("1.0e10", formatFloat(1e10));
+        assertEquals("1.25e7", formatFloat(1.25e7));
+        assertEquals("0.001", formatFloat(0.001));
+        assertEquals("1.0e-4", formatFloat(1e-4));
+        assertEquals("-2.5e-5", formatFloat(-2.5e-5));
+        assertEquals("0.0", formatFloat(0.0));
+        assertEquals("-0.0", formatFloat(-0.0));
+        assertEquals("1.7976931348623157e308", formatFloat(Double.MAX_VALUE));
+        assertEquals("4.9e-324", formatFloat(Double.MIN_VALUE));
+
+        final Random random= new Random(0);
+        for(int i= 0; i < 10000; ++i)
+        {
+            final double d= Double.longBitsToDouble(random.nextLong());
+            if(!Double.isNaN(d) && !Double.isInfinite(d))
+            {
+                assertEquals(d, Double.parseDouble(formatFloat(d)), 0);
+            }
+            final double small= random.nextInt(1000000) / 1000.0;
+            assertEquals(Double.toString(small), formatFloat(small));
+
+            final float f= random.nextFloat() * 1000;
+            assertEquals(f, Float.parseFloat(formatFloat(f)), 0);
+        }
+    }
+
+    @Test(expected= VimsonException.class)
+    public void writeNaN()
+        throws IOException
+    {
+        new VimsonGenerator(new StringWriter()).writeFloat(Double.NaN);
+    }
+
+    @Test(expected= VimsonException.class)
+    public void writeInfinity()
+        throws IOException
+    {
+        new VimsonGenerator(new StringWriter()).writeFloat(Float.NEGATIVE_INFINITY);
+    }
+
     @Test
     public void writeRaw()
         throws IOException
@@ -219,6 +331,135 @@ public class VimsonGeneratorTest
         assertEquals("['hoge',[0,],]", out.toString());
     }
 
+    @Test
+    public void writeNonAscii()
+        throws IOException
+    {
+        final String value= "あé😀a";
+        {
+            final ByteArrayOutputStream out= new ByteArrayOutputStream();
+            final VimsonGenerator vson= new VimsonGenerator(out, Charset.forName("UTF-8"));
+
+            vson.writeString(value);
+
+            assertEquals("'" + value + "'", out.toString("UTF-8"));
+        }
+        {
+            final ByteArrayOutputStream out= new ByteArrayOutputStream();
+            final VimsonGenerator vson= new VimsonGenerator(out, Charset.forName("UTF-16BE"));
+
+            vson.writeString(value);
+
+            assertEquals("'" + value + "'", out.toString("UTF-16BE"));
+        }
+    }
+
+    @Test
+    public void writeNonBmpEncoded()
+        throws IOException
+    {
+        final StringWriter expected= new StringWriter();
+        write(new VimsonGenerator(expected), CharBuffer.wrap("x😀\n\"y"));
+
+        for(final String charset : new String[]{"UTF-16BE", "Shift_JIS", "UTF-8"})
+        {
+            final ByteArrayOutputStream out= new ByteArrayOutputStream();
+            final CharBuffer value= CharBuffer.wrap("x😀\n\"y");
+
+            write(new VimsonGenerator(out, Charset.forName(charset)), value);
+
+            assertEquals(1, value.position());
+            if(charset.equals("Shift_JIS"))
+            {
+                // a pair is replaced as a whole
+                assertEquals(expected.toString().replace("😀", "?"), out.toString(charset));
+            }
+            else
+            {
+                assertEquals(expected.toString(), out.toString(charset));
+            }
+        }
+    }
+
+    private static void write(VimsonGenerator vson, CharBuffer value)
+        throws IOException
+    {
+        // from the second char, the escaper passes sub-ranges of it
+        value.get();
+
+        vson.writeStartDictionary();
+        vson.writeNumberField(new SerializedName("k😀"), 1);
+        vson.writeStringField("v", value);
+        vson.writeEndDictionary();
+        vson.flush();
+    }
+
+    @Test
+    public void writeLargeList()
+        throws IOException
+    {
+        final ByteArrayOutputStream out= new ByteArrayOutputStream();
+        final VimsonGenerator vson= new VimsonGenerator(out, Charset.forName("UTF-8"));
+        final StringBuilder expects= new StringBuilder("[");
+
+        vson.writeStartList();
+        for(int i= 0; i < 10000; ++i)
+        {
+            vson.writeString("あ" + i);
+            expects.append("'あ").append(i).append("',");
+        }
+        vson.writeEndList();
+        expects.append("]");
+
+        assertEquals(expects.toString(), out.toString("UTF-8"));
+    }
+
+    @Test
+    public void bufferedUntilFlush()
+        throws IOException
+    {
+        final ByteArrayOutputStream out= new ByteArrayOutputStream();
+        final VimsonGenerator vson= new VimsonGenerator(out);
+
+        vson.writeStartList();
+        vson.writeNumber(1);
+
+        assertEquals("", out.toString());
+
+        vson.flush();
+
+        assertEquals("[1,", out.toString());
+    }
+
+    @Test
+    public void writeToAppendable()
+        throws IOException
+    {
+        {
+            final StringBuilder out= new StringBuilder("x");
+            final VimsonGenerator vson= new VimsonGenerator(out);
+
+            vson.writeStartList();
+            vson.writeString("あ");
+            vson.writeNumber(1);
+            vson.writeEndList();
+
+            assertEquals("x['あ',1,]", out.toString());
+        }
+        {
+            final StringWriter out= new StringWriter();
+            final VimsonGenerator vson= new VimsonGenerator(out);
+
+            vson.writeStartList();
+            vson.writeString("あ");
+            vson.writeNumber(1);
+            vson.writeEndList();
+            vson.flush();
+
+            assertEquals("['あ',1,]", out.toString());
+        }
+    }
+
     @Test
     public void writeObject()
         throws IOException
@@ -244,4 +485,155 @@ public class VimsonGeneratorTest
 
         assertEquals("{'text':'hello',}", out.toString());
     }
+
+    @Test
+    public void writeToChannel()
+        throws IOException
+    {
+        final StringBuilder expected= new StringBuilder("[");
+        for(int i= 0; i < 5000; ++i)
+        {
+            expected.append("'あ").append(i).append("',");
+        }
+        expected.append("]");
+
+        for(final boolean direct : new boolean[]{false, true})
+        {
+            final ByteArrayOutputStream bytes= new ByteArrayOutputStream();
+            final VimsonGenerator vson= new VimsonGenerator(new TricklingChannel(bytes), null, direct);
+
+            vson.writeStartList();
+            for(int i= 0; i < 5000; ++i)
+            {
+                vson.writeString("あ" + i);
+            }
+            vson.writeEndList();
+            vson.close();
+
+            assertEquals(expected.toString(), new String(bytes.toByteArray(), Charset.forName("UTF-8")));
+        }
+    }
+
+    @Test
+    public void writeToNonBlockingChannel()
+        throws IOException
+    {
+        final StringBuilder expected= new StringBuilder("[");
+        for(int i= 0; i < 50000; ++i)
+        {
+            expected.append("'あ").append(i).append("',");
+        }
+        expected.append("]");
+
+        for(final boolean direct : new boolean[]{false, true})
+        {
+            final Pipe pipe= Pipe.open();
+            pipe.sink().configureBlocking(false);
+            final VimsonGenerator vson= new VimsonGenerator(pipe.sink(), null, direct);
+
+            // never blocks, though nobody reads the pipe yet
+            vson.writeStartList();
+            for(int i= 0; i < 50000; ++i)
+            {
+                vson.writeString("あ" + i);
+            }
+            vson.writeEndList();
+            vson.flush();
+            assertTrue(vson.hasPendingOutput());
+
+            final ByteArrayOutputStream bytes= new ByteArrayOutputStream();
+            final ByteBuffer buffer= ByteBuffer.allocate(8192);
+            while(!vson.tryFlush())
+            {
+                read(pipe.source(), buffer, bytes);
+            }
+            assertFalse(vson.hasPendingOutput());
+            vson.close();
+            while(read(pipe.source(), buffer, bytes) >= 0)
+            {
+            }
+            pipe.source().close();
+
+            assertEquals(expected.toString(), new String(bytes.toByteArray(), Charset.forName("UTF-8")));
+        }
+    }
+
+    private static int read(ReadableByteChannel in, ByteBuffer buffer, ByteArrayOutputStream out)
+        throws IOException
+    {
+        buffer.clear();
+        final int n= in.read(buffer);
+        out.write(buffer.array(), 0, buffer.position());
+        return n;
+    }
+
+    /**
+     * A channel which accepts a few bytes at most, or nothing, like a congested non-blocking socket.
+     */
+    private static class TricklingChannel
+        implements WritableByteChannel
+    {
+        public TricklingChannel(ByteArrayOutputStream out)
+        {
+            this.out= out;
+        }
+
+        @Override
+        public int write(ByteBuffer src)
+        {
+            if(++this.calls % 3 == 0)
+            {
+                return 0;
+            }
+
+            final int n= Math.min(src.remaining(), 1000);
+            for(int i= 0; i < n; ++i)
+            {
+                this.out.write(src.get());
+            }
+            return n;
+        }
+
+        @Override
+        public boolean isOpen()
+        {
+            return true;
+        }
+
+        @Override
+        public void close()
+        {
+        }
+
+        private final ByteArrayOutputStream out;
+
+        private int calls;
+    }
+
+    private static String quote(String value)
+        throws IOException
+    {
+        final StringBuilder out= new StringBuilder();
+
+        new VimsonGenerator(out).writeString(value);
+        return out.toString();
+    }
+
+    private static String formatFloat(double value)
+        throws IOException
+    {
+        final StringBuilder out= new StringBuilder();
+
+        new VimsonGenerator(out).writeFloat(value);
+        return out.toString();
+    }
+
+    private static String formatFloat(float value)
+        throws IOException
+    {
+        final StringBuilder out= new StringBuilder();
+
+        new VimsonGenerator(out).writeFloat(value);
+        return out.toString();
+    }
 }
@@ -0,0 +1,156 @@
+package jp.michikusa.chitose.lolivimson.core;
+
+import java.io.EOFException;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class VimsonMetricsTest
+{
+    @Test
+    public void parse()
+        throws Exception
+    {
+        final VimsonMetrics metrics= new VimsonMetrics();
+        final VimsonParser parser= new VimsonParser("{'a': [1, [2]]} ");
+        parser.setListener(metrics);
+
+        assertEquals(Collections.singletonMap("a", Arrays.asList(1, Arrays.asList(2))), parser.parse(Map.class));
+        assertEquals(1, metrics.getDocumentsParsed());
+        assertEquals(15, metrics.getCharsParsed());
+        // {, key, [, 1, [, 2, ], ], }
+        assertEquals(9, metrics.getTokensParsed());
+        assertEquals(3, metrics.getMaxDepth());
+        assertEquals(0, metrics.getErrors());
+
+        final VimsonParser broken= new VimsonParser("[1, 2}");
+        broken.setListener(metrics);
+        try
+        {
+            broken.parse(List.class);
+            fail();
+        }
+        catch(IllegalArgumentException e)
+        {
+            assertEquals(1, metrics.getErrors());
+        }
+    }
+
+    @Test
+    public void streamAndTokens()
+        throws Exception
+    {
+        final VimsonMetrics metrics= new VimsonMetrics();
+        final VimsonParser parser= new VimsonParser("[1]\n{'a': 2}\n'x'\n[3,");
+        parser.setListener(metrics);
+        final VimsonStreamReader reader= new VimsonStreamReader(parser);
+
+        assertEquals(Arrays.asList(1), reader.next());
+        assertEquals(Collections.singletonMap("a", 2), reader.next());
+        assertEquals("x", reader.next());
+        assertEquals(3, metrics.getDocumentsParsed());
+        assertEquals(3 + 4 + 1, metrics.getTokensParsed());
+        try
+        {
+            reader.next();
+            fail();
+        }
+        catch(EOFException e)
+        {
+            assertEquals(1, metrics.getErrors());
+        }
+
+        final VimsonParser tokens= new VimsonParser("{'a': [1, 2], 'b': {}}");
+        tokens.setListener(metrics);
+        assertEquals(VimsonToken.START_DICTIONARY, tokens.nextToken());
+        assertEquals(VimsonToken.FIELD_NAME, tokens.nextToken());
+        assertEquals(VimsonToken.START_LIST, tokens.nextToken());
+        tokens.skipChildren();
+        assertEquals(3, metrics.getDocumentsParsed());
+        while(tokens.nextToken() != null)
+        {
+        }
+        assertEquals(4, metrics.getDocumentsParsed());
+        assertEquals(1, metrics.getErrors());
+    }
+
+    @Test
+    public void generate()
+        throws Exception
+    {
+        final VimsonMetrics metrics= new VimsonMetrics();
+        final StringBuilder out= new StringBuilder();
+        final VimsonGenerator generator= new VimsonGenerator(out);
+        generator.setObjectCodec(new BeanCodec());
+        generator.setListener(metrics);
+
+        generator.writeObject(Collections.singletonMap("a", Arrays.asList(1, 2)));
+        generator.writeNumber(10);
+
+        assertEquals("{'a':[1,2,],}10", out.toString());
+        assertEquals(2, metrics.getDocumentsGenerated());
+        assertEquals(out.length(), metrics.getCharsGenerated());
+        assertEquals(2, metrics.getMaxDepth());
+
+        generator.setListener(null);
+        generator.writeNumber(1);
+        assertEquals(2, metrics.getDocumentsGenerated());
+    }
+
+    @Test
+    public void outliers()
+        throws Exception
+    {
+        final VimsonMetrics metrics= new VimsonMetrics();
+        metrics.setLargeChars(10);
+
+        final VimsonFactory factory= new VimsonFactory();
+        factory.setListener(metrics);
+        factory.createParser("[1]").parse(List.class);
+        assertEquals(0, metrics.getOutliers());
+        assertNull(metrics.getLastOutlier());
+
+        factory.createParser("[1, 2, 3, 4]").parse(List.class);
+        assertEquals(1, metrics.getOutliers());
+        assertEquals("parse: 12 chars, depth 1, ", metrics.getLastOutlier().replaceAll("[0-9]+ us$", ""));
+
+        metrics.reset();
+        assertEquals(0, metrics.getDocumentsParsed());
+    }
+
+    @Test
+    public void register()
+        throws Exception
+    {
+        final VimsonMetrics metrics= new VimsonMetrics();
+        final ObjectName name= metrics.register("jp.michikusa.chitose.lolivimson:type=VimsonMetrics,name=test");
+        final MBeanServer server= ManagementFactory.getPlatformMBeanServer();
+        try
+        {
+            final VimsonParser parser= new VimsonParser("'x'");
+            parser.setListener(metrics);
+            parser.parse(String.class);
+
+            assertEquals(1L, server.getAttribute(name, "DocumentsParsed"));
+            assertNotNull(server.getAttribute(name, "SlowNanos"));
+            assertTrue(server.isRegistered(name));
+        }
+        finally
+        {
+            server.unregisterMBean(name);
+        }
+    }
+}
@@ -2,14 +2,31 @@ package jp.michikusa.chitose.lolivimson.core;
 
 import java.io.ByteArrayInputStream;
 import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.nio.charset.Charset;
+import java.io.RandomAccessFile;
+import java.io.StringReader;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
+import jp.michikusa.chitose.lolivimson.LimitExceededException;
+import jp.michikusa.chitose.lolivimson.util.ArrayMap;
+
 import org.junit.Test;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 public class VimsonParserTest
 {
@@ -63,6 +80,52 @@ public class VimsonParserTest
         assertEquals(+0.003e-3, parse("+0.003e-3"));
     }
 
+    @Test
+    public void numberRadix()
+        throws Exception
+    {
+        assertEquals(0x1f, parse("0X1F"));
+        assertEquals(-0x10, parse("-0x10"));
+        assertEquals(5, parse("0b101"));
+        assertEquals(5, parse("0B101"));
+        assertEquals(15, parse("0o17"));
+        assertEquals(15, parse("017"));
+        assertEquals(0, parse("0"));
+        assertEquals(19, parse("019"));
+    }
+
+    @Test
+    public void numberMagnitude()
+        throws Exception
+    {
+        assertEquals(Integer.MAX_VALUE, parse("2147483647"));
+        assertEquals(Integer.MIN_VALUE, parse("-2147483648"));
+        assertEquals(2147483648L, parse("2147483648"));
+        assertEquals(Long.MAX_VALUE, parse("9223372036854775807"));
+        assertEquals(Long.MIN_VALUE, parse("-9223372036854775808"));
+        assertEquals(new BigInteger("9223372036854775808"), parse("9223372036854775808"));
+        assertEquals(new BigInteger("-ffffffffffffffffff", 16), parse("-0xffffffffffffffffff"));
+    }
+
+    @Test
+    public void floatPrecision()
+        throws Exception
+    {
+        assertEquals(0.1, parse("0.1"));
+        assertEquals(1.0e10, parse("1.0e10"));
+        assertEquals(1.5E-7, parse("1.5E-7"));
+        assertEquals(Double.MAX_VALUE, parse("1.7976931348623157e308"));
+        assertEquals(Double.MIN_VALUE, parse("4.9e-324"));
+        assertEquals(123456789.123456789, parse("123456789.123456789"));
+        assertEquals(0.30000000000000004, parse("0.30000000000000004"));
+        assertEquals(-1.5, parse("-1.5"));
+        // negatives which miss the exact path
+        assertEquals(-1.0e30, parse("-1.0e30"));
+        assertEquals(Arrays.asList(-1.0e-30), parse("[-1.0e-30]"));
+        assertEquals(-123456789012345678.5, parse("-123456789012345678.5"));
+        assertEquals(-Double.MAX_VALUE, parse("-1.7976931348623157e308"));
+    }
+
     @Test
     public void dictionary()
         throws Exception
@@ -83,6 +146,286 @@ public class VimsonParserTest
     {
     }
 
+    @Test
+    public void sources()
+        throws Exception
+    {
+        final String expr= "{'Y':['hoge',\"fuga\"]}";
+        final Object expects= parse(expr);
+
+        assertEquals(expects, new VimsonParser(new StringReader(expr)).parse());
+        assertEquals(expects, new VimsonParser(expr).parse());
+        assertEquals(expects, new VimsonParser(new StringBuilder(expr)).parse());
+        assertEquals(expects, new VimsonParser(expr.toCharArray()).parse());
+        assertEquals(expects, new VimsonParser(("xx" + expr + "xx").toCharArray(), 2, expr.length()).parse());
+    }
+
+    @Test
+    public void longString()
+        throws Exception
+    {
+        final StringBuilder expects= new StringBuilder();
+        for(int i= 0; i < 20000; ++i)
+        {
+            expects.append((char)('a' + i % 26));
+            if(i % 1000 == 0)
+            {
+                expects.append('\'');
+            }
+        }
+
+        assertEquals(expects.toString(), parse("'" + expects.toString().replace("'", "''") + "'"));
+        assertEquals(expects.toString(), parse("  \"" + expects + "\""));
+    }
+
+    @Test
+    public void lineContinuation()
+        throws Exception
+    {
+        assertEquals(1, ((List<?>)parse("[\n  \\ 1,\n\\]")).get(0));
+    }
+
+    @Test
+    public void tokens()
+        throws Exception
+    {
+        final VimsonParser parser= new VimsonParser("{'a':[1, 2.5, \"s\"], 'b' : {},}");
+
+        assertEquals(VimsonToken.START_DICTIONARY, parser.nextToken());
+        assertEquals(VimsonToken.FIELD_NAME, parser.nextToken());
+        assertEquals("a", parser.getText());
+        assertEquals(VimsonToken.START_LIST, parser.nextToken());
+        assertEquals(2, parser.getDepth());
+        assertEquals(VimsonToken.VALUE_NUMBER, parser.nextToken());
+        assertEquals(1, parser.getNumberValue());
+        assertEquals(VimsonToken.VALUE_FLOAT, parser.nextToken());
+        assertEquals(2.5, parser.getNumberValue());
+        assertEquals(VimsonToken.VALUE_STRING, parser.nextToken());
+        assertEquals("s", parser.getText());
+        assertEquals(VimsonToken.END_LIST, parser.nextToken());
+        assertEquals(VimsonToken.FIELD_NAME, parser.nextToken());
+        assertEquals("b", parser.getText());
+        assertEquals(VimsonToken.START_DICTIONARY, parser.nextToken());
+        assertEquals(VimsonToken.END_DICTIONARY, parser.nextToken());
+        assertEquals(VimsonToken.END_DICTIONARY, parser.nextToken());
+        assertEquals(0, parser.getDepth());
+        assertNull(parser.nextToken());
+    }
+
+    @Test
+    public void skipChildren()
+        throws Exception
+    {
+        final VimsonParser parser= new VimsonParser("{'skip':[{'x':']'}, \"]\\\"\", '''['], 'keep':1}");
+
+        assertEquals(VimsonToken.START_DICTIONARY, parser.nextToken());
+        assertEquals(VimsonToken.FIELD_NAME, parser.nextToken());
+        assertEquals(VimsonToken.START_LIST, parser.nextToken());
+        assertEquals(VimsonToken.END_LIST, parser.skipChildren().getCurrentToken());
+        assertEquals(VimsonToken.FIELD_NAME, parser.nextToken());
+        assertEquals("keep", parser.getText());
+        assertEquals(VimsonToken.VALUE_NUMBER, parser.nextToken());
+        assertEquals(VimsonToken.END_DICTIONARY, parser.nextToken());
+    }
+
+    @Test(expected= IllegalArgumentException.class)
+    public void missingComma()
+        throws Exception
+    {
+        parse("[1 2]");
+    }
+
+    @Test
+    public void containerFactory()
+        throws Exception
+    {
+        {
+            final VimsonParser parser= new VimsonParser("{'b':[1,2],'a':{}}");
+            final Map<?, ?> value= parser.parse(Map.class);
+
+            assertEquals(ArrayMap.class, value.getClass());
+            assertEquals(Arrays.asList("b", "a"), new ArrayList<Object>(value.keySet()));
+            assertEquals(ArrayList.class, value.get("b").getClass());
+        }
+        {
+            final VimsonParser parser= new VimsonParser("{'1':1,'2':2,'3':3,'4':4,'5':5,'6':6,'7':7,'8':8,'9':9}");
+            final Map<?, ?> value= parser.parse(Map.class);
+
+            assertEquals(HashMap.class, value.getClass());
+            assertEquals(9, value.size());
+        }
+        {
+            final VimsonParser parser= new VimsonParser("{'1':1,'2':2,'3':3,'4':4,'5':5,'6':6,'7':7,'8':8,'9':9}");
+            parser.setContainerFactory(ContainerFactory.ORDERED);
+            final Map<?, ?> value= parser.parse(Map.class);
+
+            assertEquals(LinkedHashMap.class, value.getClass());
+            assertEquals("1", value.keySet().iterator().next());
+        }
+    }
+
+    @Test
+    public void symbolTable()
+        throws Exception
+    {
+        final List<?> value= (List<?>)parse("[{'key':'v', \"key\": 1}, {'key':'v'}]");
+        final Map<?, ?> first= (Map<?, ?>)value.get(0);
+        final Map<?, ?> second= (Map<?, ?>)value.get(1);
+
+        assertSame(first.keySet().iterator().next(), second.keySet().iterator().next());
+        assertEquals(1, first.size());
+
+        final SymbolTable symbols= new SymbolTable(16, 4);
+        final VimsonParser parser= new VimsonParser("[{'a''b':'val'}, {'a''b':'val'}]");
+        parser.setSymbolTable(symbols);
+
+        final List<?> values= parser.parse(List.class);
+        assertEquals("a'b", ((Map<?, ?>)values.get(0)).keySet().iterator().next());
+        assertSame(((Map<?, ?>)values.get(0)).get("a'b"), ((Map<?, ?>)values.get(1)).get("a'b"));
+    }
+
+    @Test
+    public void mappedFile()
+        throws Exception
+    {
+        final File file= File.createTempFile("lolivimson", ".vim");
+        try
+        {
+            final FileOutputStream out= new FileOutputStream(file);
+            try
+            {
+                out.write("{'名前': ['値', 1]}".getBytes(Charset.forName("UTF-8")));
+            }
+            finally
+            {
+                out.close();
+            }
+
+            final RandomAccessFile in= new RandomAccessFile(file, "r");
+            final VimsonParser parser;
+            try
+            {
+                parser= new VimsonParser(in.getChannel());
+            }
+            finally
+            {
+                in.close();
+            }
+            assertEquals(Collections.singletonMap("名前", Arrays.asList("値", 1)), parser.parse(Map.class));
+        }
+        finally
+        {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void parseWithPathFilter()
+        throws Exception
+    {
+        final String expr= "{'kind': 'x', 'items': [{'word': 'a', 'menu': \"m\\\"\", 'abbr': [1, '}']}, {'abbr': 0x1F, 'word': 'b'}, {}], 'size': 1.5e3}";
+
+        final Map<String, Object> items= new LinkedHashMap<String, Object>();
+        items.put("items", Arrays.asList(Collections.singletonMap("word", "a"), Collections.singletonMap("word", "b")));
+        assertEquals(items, new VimsonParser(expr).parse(VimsonPath.compile("['items'][*]['word']")));
+
+        final Map<String, Object> expected= new LinkedHashMap<String, Object>();
+        expected.put("kind", "x");
+        expected.put("size", 1.5e3);
+        assertEquals(expected, new VimsonParser(expr).parse(PathFilter.anyOf(VimsonPath.of("kind"), VimsonPath.of("size"))));
+
+        assertEquals(Collections.singletonMap("items", Arrays.asList(Collections.singletonMap("abbr", 31))),
+                new VimsonParser(expr).parse(VimsonPath.compile("['items'][1]['abbr']")));
+        assertNull(new VimsonParser(expr).parse(VimsonPath.of("missing")));
+        assertEquals(parse(expr), new VimsonParser(expr).parse(VimsonPath.of()));
+    }
+
+    @Test
+    public void parseWithPathFilterSkipsToTheEnd()
+        throws Exception
+    {
+        final VimsonParser parser= new VimsonParser(new StringReader("[[1, 'a'], -2, [3]]\n'next'"));
+
+        assertEquals(Arrays.asList(Arrays.asList(3)), parser.parse(VimsonPath.of(2)));
+        assertNull(parser.nextToken());
+        assertEquals(true, parser.nextDocument());
+        assertEquals("next", parser.readValue());
+    }
+
+    @Test
+    public void limits()
+        throws Exception
+    {
+        final StringBuilder deep= new StringBuilder();
+        for(int i= 0; i < 100000; ++i)
+        {
+            deep.append('[');
+        }
+        try
+        {
+            new VimsonParser(deep).parse(List.class);
+            fail();
+        }
+        catch(LimitExceededException e)
+        {
+            assertEquals(VimsonLimits.DEFAULT_MAX_DEPTH, e.getOffset());
+            assertEquals(1, e.getLine());
+            assertEquals(VimsonLimits.DEFAULT_MAX_DEPTH + 1, e.getColumn());
+        }
+
+        final VimsonParser strings= new VimsonParser("{\n\\ 'key': 'short',\n\\ 'k': 'long string'}");
+        strings.setLimits(VimsonLimits.DEFAULT.withMaxStringLength(5));
+        try
+        {
+            strings.parse(Map.class);
+            fail();
+        }
+        catch(LimitExceededException e)
+        {
+            assertEquals(3, e.getLine());
+            assertEquals(20, e.getColumn());
+        }
+
+        final VimsonParser lists= new VimsonParser("[[1, 2], [1, 2, 3]]");
+        lists.setLimits(VimsonLimits.UNLIMITED.withMaxContainerSize(2));
+        try
+        {
+            lists.parse(List.class);
+            fail();
+        }
+        catch(LimitExceededException e)
+        {
+            assertEquals(17, e.getOffset());
+        }
+
+        final StringBuilder large= new StringBuilder("[\n");
+        for(int i= 0; i < 10000; ++i)
+        {
+            large.append("\\ 'a',\n");
+        }
+        large.append("\\ ]");
+        final VimsonParser document= new VimsonParser(new StringReader(large.toString()));
+        document.setLimits(VimsonLimits.DEFAULT.withMaxDocumentLength(20000));
+        try
+        {
+            document.parse(List.class);
+            fail();
+        }
+        catch(LimitExceededException e)
+        {
+            // reported at the token which crosses the limit
+            final int offset= (int)e.getOffset();
+            final String head= large.substring(0, offset);
+            assertTrue(offset >= 20000 && offset < 20000 + 8);
+            assertEquals(head.split("\n", -1).length, e.getLine());
+            assertEquals(offset - head.lastIndexOf('\n'), e.getColumn());
+        }
+
+        final VimsonParser unlimited= new VimsonParser(large);
+        unlimited.setLimits(VimsonLimits.UNLIMITED);
+        assertEquals(10000, unlimited.parse(List.class).size());
+    }
+
     static Object parse(String expr)
         throws IOException
     {
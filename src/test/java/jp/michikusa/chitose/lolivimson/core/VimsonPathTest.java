@@ -0,0 +1,47 @@
+package jp.michikusa.chitose.lolivimson.core;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class VimsonPathTest
+{
+    @Test
+    public void compile()
+    {
+        assertEquals(VimsonPath.of("items", VimsonPath.ANY, "word"), VimsonPath.compile("['items'][*]['word']"));
+        assertEquals(VimsonPath.of("it's", 0, "a\"b"), VimsonPath.compile("['it''s'][0][\"a\\\"b\"]"));
+        assertEquals(VimsonPath.of(), VimsonPath.compile(""));
+        assertEquals("['it''s'][*][10]", VimsonPath.of("it's", VimsonPath.ANY, 10).toString());
+    }
+
+    @Test(expected= IllegalArgumentException.class)
+    public void compileUnclosed()
+    {
+        VimsonPath.compile("['items'");
+    }
+
+    @Test(expected= IllegalArgumentException.class)
+    public void compileWithoutBrackets()
+    {
+        VimsonPath.compile("items.word");
+    }
+
+    @Test
+    public void matches()
+    {
+        final VimsonPath path= VimsonPath.compile("['items'][*]['word']");
+
+        assertTrue(path.includes(Arrays.asList("items", 3, "word")));
+        assertFalse(path.includes(Arrays.asList("items", 3)));
+        assertFalse(path.includes(Arrays.asList("items", 3, "menu")));
+        assertTrue(path.includesDescendants(Arrays.asList("items", 3)));
+        assertTrue(path.includesDescendants(Arrays.<Object>asList()));
+        assertFalse(path.includesDescendants(Arrays.asList("kind")));
+        assertFalse(path.includesDescendants(Arrays.asList("items", 3, "word")));
+    }
+}
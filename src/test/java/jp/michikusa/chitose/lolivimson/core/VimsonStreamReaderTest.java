@@ -0,0 +1,86 @@
+package jp.michikusa.chitose.lolivimson.core;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class VimsonStreamReaderTest
+{
+    @Test
+    public void next()
+        throws IOException
+    {
+        final VimsonStreamReader reader= new VimsonStreamReader(new StringReader("[1, 'a']\n{'k': 2}\n\n'text'\n42\n"));
+
+        assertTrue(reader.hasNext());
+        assertEquals(Arrays.asList(1, "a"), reader.next());
+        assertEquals(Collections.singletonMap("k", 2), reader.next(Map.class));
+        assertEquals("text", reader.next());
+        assertTrue(reader.hasNext());
+        assertTrue(reader.hasNext());
+        assertEquals(42, reader.next());
+        assertFalse(reader.hasNext());
+    }
+
+    @Test
+    public void limitsEachDocument()
+        throws IOException
+    {
+        final StringBuilder in= new StringBuilder();
+        for(int i= 0; i < 2000; ++i)
+        {
+            in.append("[1,2,3]\n");
+        }
+        final VimsonParser parser= new VimsonParser(new StringReader(in.toString()));
+        parser.setLimits(VimsonLimits.DEFAULT.withMaxDocumentLength(100));
+
+        final VimsonStreamReader reader= new VimsonStreamReader(parser);
+        int n= 0;
+        while(reader.hasNext())
+        {
+            assertEquals(Arrays.asList(1, 2, 3), reader.next());
+            ++n;
+        }
+        assertEquals(2000, n);
+    }
+
+    @Test(expected= NoSuchElementException.class)
+    public void noMoreValue()
+        throws IOException
+    {
+        final VimsonStreamReader reader= new VimsonStreamReader(new StringReader("1\n"));
+
+        reader.next();
+        reader.next();
+    }
+
+    @Test
+    public void readAll()
+        throws IOException
+    {
+        final StringBuilder input= new StringBuilder();
+        for(int i= 0; i < 5000; ++i)
+        {
+            input.append("{'id': ").append(i).append(", 'method': 'complete'}\n");
+        }
+        final VimsonStreamReader reader= new VimsonStreamReader(new StringReader(input.toString()));
+
+        final List<Object> first= reader.readAll(3000);
+        final List<Object> rest= reader.readAll(3000);
+
+        assertEquals(3000, first.size());
+        assertEquals(2000, rest.size());
+        assertEquals(4999, ((Map<?, ?>)rest.get(1999)).get("id"));
+        assertFalse(reader.hasNext());
+    }
+}
@@ -0,0 +1,68 @@
+package jp.michikusa.chitose.lolivimson.util;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ArrayMapTest
+{
+    @Test
+    public void putAndGet()
+    {
+        final Map<String, Integer> m= new ArrayMap<String, Integer>(0);
+
+        for(int i= 0; i < 20; ++i)
+        {
+            assertNull(m.put("k" + i, i));
+        }
+        assertEquals(Integer.valueOf(3), m.put("k3", 33));
+
+        assertEquals(20, m.size());
+        assertEquals(Integer.valueOf(33), m.get("k3"));
+        assertEquals(Integer.valueOf(19), m.get(new String("k19")));
+        assertNull(m.get("none"));
+        assertTrue(m.containsKey("k0"));
+    }
+
+    @Test
+    public void remove()
+    {
+        final Map<String, Integer> m= new ArrayMap<String, Integer>();
+
+        m.put("a", 1);
+        m.put("b", 2);
+        m.put("c", 3);
+
+        assertEquals(Integer.valueOf(2), m.remove("b"));
+        assertFalse(m.containsKey("b"));
+        assertEquals("{a=1, c=3}", m.toString());
+
+        final Iterator<Map.Entry<String, Integer>> it= m.entrySet().iterator();
+        it.next();
+        it.remove();
+        assertEquals("{c=3}", m.toString());
+    }
+
+    @Test
+    public void equality()
+    {
+        final Map<String, Integer> m= new ArrayMap<String, Integer>();
+        final Map<String, Integer> h= new HashMap<String, Integer>();
+
+        m.put("a", 1);
+        m.put("b", null);
+        h.put("b", null);
+        h.put("a", 1);
+
+        assertEquals(h, m);
+        assertEquals(m, h);
+        assertEquals(h.hashCode(), m.hashCode());
+    }
+}
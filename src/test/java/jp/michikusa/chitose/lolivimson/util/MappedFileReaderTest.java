@@ -0,0 +1,79 @@
+package jp.michikusa.chitose.lolivimson.util;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class MappedFileReaderTest
+{
+    @Test
+    public void decode()
+        throws IOException
+    {
+        final String text= "ascii, é, あ, 😀.";
+
+        assertEquals(text, read(text.getBytes("UTF-8"), 1));
+        assertEquals(text, read(text.getBytes("UTF-8"), 3));
+        assertEquals(text, read(text.getBytes("UTF-8"), 1024));
+    }
+
+    @Test
+    public void malformed()
+        throws IOException
+    {
+        assertEquals("a�b�", read(new byte[]{'a', (byte)0xe3, 'b', (byte)0xc3}, 16));
+        assertEquals("��", read(new byte[]{(byte)0xc0, (byte)0x80}, 16));
+    }
+
+    @Test
+    public void empty()
+        throws IOException
+    {
+        assertEquals("", read(new byte[0], 16));
+    }
+
+    private static String read(byte[] content, int chunk)
+        throws IOException
+    {
+        final File file= File.createTempFile("lolivimson", ".vim");
+        try
+        {
+            final FileOutputStream out= new FileOutputStream(file);
+            try
+            {
+                out.write(content);
+            }
+            finally
+            {
+                out.close();
+            }
+
+            final RandomAccessFile in= new RandomAccessFile(file, "r");
+            try
+            {
+                final MappedFileReader reader= new MappedFileReader(in.getChannel());
+                final StringBuilder text= new StringBuilder();
+                final char[] buf= new char[chunk];
+                int n;
+                while((n= reader.read(buf, 0, buf.length)) != -1)
+                {
+                    text.append(buf, 0, n);
+                }
+                return text.toString();
+            }
+            finally
+            {
+                in.close();
+            }
+        }
+        finally
+        {
+            file.delete();
+        }
+    }
+}